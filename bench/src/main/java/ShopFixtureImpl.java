@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Random;
+import pizzashop.bench.ShopFixture;
+
+public class ShopFixtureImpl
+	implements ShopFixture
+{
+	private static final int baskets = 64;
+
+	private Database db;
+	private Random random = new Random(3313);
+
+	private ArrayList<Crust> crusts = new ArrayList<Crust>();
+	private ArrayList<Sauce> sauces = new ArrayList<Sauce>();
+	private ArrayList<Cheese> cheeses = new ArrayList<Cheese>();
+	private ArrayList<Topping> toppings = new ArrayList<Topping>();
+	private ArrayList<Pizza> menu = new ArrayList<Pizza>();
+	private ArrayList<Customer> customers = new ArrayList<Customer>();
+	private ArrayList<Order> orders = new ArrayList<Order>();
+
+	private Pizza.Size[] sizes;
+
+	public void open(String path, int menu_size, int customer_count, int history)
+		throws Exception
+	{
+		db = new Database(path, 2, Database.Profile.PRODUCTION);
+		db.open();
+
+		sizes = db.lookupAllSizes().toArray(new Pizza.Size[0]);
+
+		buildIngredients();
+
+		for (Crust crust: crusts) {
+			db.insertCrust(crust);
+		}
+
+		for (Sauce sauce: sauces) {
+			db.insertSauce(sauce);
+		}
+
+		for (Cheese cheese: cheeses) {
+			db.insertCheese(cheese);
+		}
+
+		for (Topping topping: toppings) {
+			db.insertTopping(topping);
+		}
+
+		for (int i = 0; i < menu_size; i++) {
+			Pizza pizza = randomPizza(i);
+
+			db.insertPizza(pizza);
+			menu.add(pizza);
+		}
+
+		for (int i = 0; i < customer_count; i++) {
+			Address address = new Address(0, i + " Main St", null, "Marietta", "GA", "30060");
+			Card card = new Card(0,
+			                     String.format("4000-0000-%04d-%04d", i / 10000, i % 10000),
+			                     "Customer " + i,
+			                     Card.Type.CREDIT,
+			                     "12/30",
+			                     address);
+			Customer customer = new Customer(0,
+			                                 "Customer " + i,
+			                                 "customer" + i + "@example.com",
+			                                 "password" + i,
+			                                 "(770) 555 - 0100",
+			                                 null,
+			                                 address,
+			                                 card);
+
+			db.insertCustomer(customer);
+			customers.add(customer);
+
+			for (int j = 0; j < history; j++) {
+				db.insertOrder(randomOrder(customer, 1 + random.nextInt(3)));
+			}
+		}
+	}
+
+	public void build(int menu_size, int basket_size)
+	{
+		buildIngredients();
+
+		for (int i = 0; i < menu_size; i++) {
+			menu.add(randomPizza(i));
+		}
+
+		Customer customer = new Customer();
+
+		for (int i = 0; i < baskets; i++) {
+			orders.add(randomOrder(customer, basket_size));
+		}
+	}
+
+	public void close()
+	{
+		if (db != null) {
+			db.close();
+			db = null;
+		}
+	}
+
+	public int insertOrder(int n)
+	{
+		Order order = randomOrder(customers.get(n % customers.size()), 2);
+
+		db.insertOrder(order);
+
+		return order.getID();
+	}
+
+	public int lookupAllPizzas()
+	{
+		return db.lookupAllPizzas().size();
+	}
+
+	public int lookupOrdersByCustomer(int n)
+	{
+		return db.lookupOrdersByCustomer(customers.get(n % customers.size())).size();
+	}
+
+	public int loginCustomer(int n)
+	{
+		Customer customer = customers.get(n % customers.size());
+
+		try {
+			return db.loginCustomer(customer.getEmail(), customer.getPassword()).getID();
+
+		} catch (InvalidLoginException e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	public long pizzaCost(int n)
+	{
+		return menu.get(n % menu.size()).getCost(sizes[n % sizes.length]);
+	}
+
+	public long orderTotal(int n)
+	{
+		return orders.get(n % orders.size()).getTotalCost();
+	}
+
+	private void buildIngredients()
+	{
+		for (int i = 0; i < 4; i++) {
+			crusts.add(new Crust(0, "crust " + i, 500 + i * 50, 700 + i * 50, 900 + i * 50));
+			sauces.add(new Sauce(0, "sauce " + i, 50, 75, 100));
+		}
+
+		for (int i = 0; i < 8; i++) {
+			cheeses.add(new Cheese(0, "cheese " + i, 100, 150, 200));
+		}
+
+		for (int i = 0; i < 24; i++) {
+			toppings.add(new Topping(0, "topping " + i, 25 + i, 50 + i, 75 + i));
+		}
+	}
+
+	private Pizza randomPizza(int n)
+	{
+		ArrayList<Cheese> pizza_cheeses = new ArrayList<Cheese>();
+		ArrayList<Topping> pizza_toppings = new ArrayList<Topping>();
+
+		int cheese_count = 1 + random.nextInt(2);
+		int topping_count = random.nextInt(5);
+		int first_cheese = random.nextInt(cheeses.size());
+		int first_topping = random.nextInt(toppings.size());
+
+		for (int i = 0; i < cheese_count; i++) {
+			pizza_cheeses.add(cheeses.get((first_cheese + i) % cheeses.size()));
+		}
+
+		for (int i = 0; i < topping_count; i++) {
+			pizza_toppings.add(toppings.get((first_topping + i) % toppings.size()));
+		}
+
+		return new Pizza(0,
+		                 "pizza " + n,
+		                 crusts.get(random.nextInt(crusts.size())),
+		                 sauces.get(random.nextInt(sauces.size())),
+		                 pizza_cheeses,
+		                 pizza_toppings);
+	}
+
+	/* Lines use distinct pizzas, since (order, pizza, size) is a key. */
+	private Order randomOrder(Customer customer, int lines)
+	{
+		Order order = new Order(0,
+		                        customer,
+		                        customer.getAddress(),
+		                        customer.getActiveCard(),
+		                        null,
+		                        new ArrayList<OrderLine>());
+		int first = random.nextInt(menu.size());
+
+		for (int i = 0; i < lines; i++) {
+			order.getLines().add(new OrderLine(menu.get((first + i) % menu.size()),
+			                                   sizes[random.nextInt(sizes.length)],
+			                                   1 + random.nextInt(3),
+			                                   0));
+		}
+
+		return order;
+	}
+}
@@ -0,0 +1,39 @@
+package pizzashop.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Same command line as JMH's own Main, except results are written as
+ * JSON to jmh-result.json unless -rf or -rff say otherwise.
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args)
+		throws Exception
+	{
+		CommandLineOptions cmd = new CommandLineOptions(args);
+
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+
+		Options opts = new OptionsBuilder()
+			.parent(cmd)
+			.resultFormat(cmd.getResultFormat().orElse(ResultFormatType.JSON))
+			.result(cmd.getResult().orElse("jmh-result.json"))
+			.build();
+
+		Runner runner = new Runner(opts);
+
+		if (cmd.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package pizzashop.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Database hot paths against a generated SQLite file. The dataset size
+ * is set with -p menu_size=..., -p customers=... and -p history=...
+ * (past orders per customer).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark
+{
+	@Param({"20", "2000"})
+	public int menu_size;
+
+	@Param({"100"})
+	public int customers;
+
+	@Param({"20"})
+	public int history;
+
+	private File dir;
+	private ShopFixture shop;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup()
+		throws Exception
+	{
+		dir = Files.createTempDirectory("pizzashop-bench").toFile();
+
+		shop = ShopFixture.create();
+		shop.open(new File(dir, "bench.db").getPath(), menu_size, customers, history);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown()
+	{
+		shop.close();
+
+		for (File file: dir.listFiles()) {
+			file.delete();
+		}
+
+		dir.delete();
+	}
+
+	@Benchmark
+	public int insertOrder()
+	{
+		return shop.insertOrder(next++);
+	}
+
+	@Benchmark
+	public int lookupAllPizzas()
+	{
+		return shop.lookupAllPizzas();
+	}
+
+	@Benchmark
+	public int lookupOrdersByCustomer()
+	{
+		return shop.lookupOrdersByCustomer(next++);
+	}
+
+	@Benchmark
+	public int loginCustomer()
+	{
+		return shop.loginCustomer(next++);
+	}
+}
@@ -0,0 +1,54 @@
+package pizzashop.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Pizza.getCost and Order.getTotalCost over an in-memory menu. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark
+{
+	@Param({"20", "20000"})
+	public int menu_size;
+
+	@Param({"10", "1000"})
+	public int basket_size;
+
+	private ShopFixture shop;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup()
+		throws Exception
+	{
+		shop = ShopFixture.create();
+		shop.build(menu_size, basket_size);
+	}
+
+	@Benchmark
+	public long pizzaCost()
+	{
+		return shop.pizzaCost(next++);
+	}
+
+	@Benchmark
+	public long orderTotal()
+	{
+		return shop.orderTotal(next++);
+	}
+}
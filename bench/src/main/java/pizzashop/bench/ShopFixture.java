@@ -0,0 +1,35 @@
+package pizzashop.bench;
+
+/*
+ * JMH refuses to generate benchmarks in the default package, and the
+ * shop's classes can't be imported from any other package, so the
+ * benchmarks drive the shop through this interface. The implementation
+ * is ShopFixtureImpl in the default package, loaded by name.
+ */
+public interface ShopFixture
+{
+	/*
+	 * Creates a database at path holding menu_size pizzas and the given
+	 * number of customers, each with history past orders.
+	 */
+	void open(String path, int menu_size, int customers, int history)
+		throws Exception;
+
+	/* Builds a menu and basket_size line baskets in memory only. */
+	void build(int menu_size, int basket_size);
+
+	void close();
+
+	int insertOrder(int n);
+	int lookupAllPizzas();
+	int lookupOrdersByCustomer(int n);
+	int loginCustomer(int n);
+	long pizzaCost(int n);
+	long orderTotal(int n);
+
+	static ShopFixture create()
+		throws ReflectiveOperationException
+	{
+		return (ShopFixture) Class.forName("ShopFixtureImpl").getDeclaredConstructor().newInstance();
+	}
+}
@@ -0,0 +1,179 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+class AddressTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    address (address_id    INTEGER PRIMARY KEY," +
+		"             address_line1 TEXT NOT NULL," +
+		"             address_line2 TEXT," +
+		"             address_city  TEXT NOT NULL," +
+		"             address_state TEXT NOT NULL CHECK (address_state LIKE '__')," +
+		"             address_zip   TEXT NOT NULL CHECK (address_zip LIKE '_____')" +
+		"    );";
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    address (address_line1," +
+		"             address_line2," +
+		"             address_city," +
+		"             address_state," +
+		"             address_zip)" +
+		"    VALUES (?, ?, ?, ?, ?);";
+
+	public static final String query_str =
+		"SELECT address_id," +
+		"       address_line1," +
+		"       address_line2," +
+		"       address_city," +
+		"       address_state," +
+		"       address_zip" +
+		"    FROM address" +
+		"    WHERE address_id = ?";
+
+	/* Completed with Database.placeholders for each batch. */
+	private static final String query_batch_str =
+		"SELECT address_id," +
+		"       address_line1," +
+		"       address_line2," +
+		"       address_city," +
+		"       address_state," +
+		"       address_zip" +
+		"    FROM address" +
+		"    WHERE address_id IN ";
+
+	private DatabaseConnection db;
+
+	public AddressTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/* Part of SchemaManager's first step. */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.close();
+	}
+
+	public void insert(Address address)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+
+		insert_stmt.setString(1, address.getLine1());
+		insert_stmt.setString(2, address.getLine2());
+		insert_stmt.setString(3, address.getCity());
+		insert_stmt.setString(4, address.getState());
+		insert_stmt.setString(5, address.getZip());
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		address.setID(Database.generatedKey(insert_stmt));
+	}
+
+	public Address query(int address_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Address> cache = db.getAddressCache();
+		Address cached = cache.get(address_id);
+
+		if (cached != null) {
+			return copy(cached);
+		}
+
+		long stamp = cache.stamp();
+
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		query_stmt.setInt(1, address_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+
+		Address address = new Address(rset);
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		cache.put(address_id, copy(address), weigh(address), stamp);
+
+		return address;
+	}
+
+	/*
+	 * Looks up several addresses at once: those in the cache are copied
+	 * from it and the rest are read with one IN (...) query per
+	 * Database.batch_size IDs.
+	 */
+	public HashMap<Integer, Address> queryBatch(Collection<Integer> address_ids)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Address> cache = db.getAddressCache();
+		HashMap<Integer, Address> found = new HashMap<Integer, Address>();
+		ArrayList<Integer> missing = new ArrayList<Integer>();
+
+		for (int id: address_ids) {
+			Address cached = cache.get(id);
+
+			if (cached != null) {
+				found.put(id, copy(cached));
+			} else {
+				missing.add(id);
+			}
+		}
+
+		long stamp = cache.stamp();
+
+		for (int i = 0; i < missing.size(); i += Database.batch_size) {
+			List<Integer> ids = missing.subList(i, Math.min(missing.size(), i + Database.batch_size));
+			PreparedStatement stmt = Database.prepareBatch(db.getConnection(), query_batch_str, ids);
+			ResultSet rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				Address address = new Address(rset);
+
+				cache.put(address.getID(), copy(address), weigh(address), stamp);
+				found.put(address.getID(), address);
+			}
+
+			stmt.close();
+		}
+
+		return found;
+	}
+
+	private static Address copy(Address address)
+	{
+		return new Address(address.getID(),
+		                   address.getLine1(),
+		                   address.getLine2(),
+		                   address.getCity(),
+		                   address.getState(),
+		                   address.getZip());
+	}
+
+	private static long weigh(Address address)
+	{
+		return 48 + ObjectCache.weigh(address.getLine1())
+		          + ObjectCache.weigh(address.getLine2())
+		          + ObjectCache.weigh(address.getCity())
+		          + ObjectCache.weigh(address.getState())
+		          + ObjectCache.weigh(address.getZip());
+	}
+}
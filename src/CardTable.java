@@ -0,0 +1,206 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+class CardTable
+{
+	public static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    card (card_id              INTEGER  PRIMARY KEY," +
+		"          card_number          TEXT     NOT NULL CHECK (card_number LIKE '____-____-____-____')," +
+		"          card_name            TEXT     NOT NULL," +
+		"          card_type            TEXT     NOT NULL CHECK (card_type IN ('debit', 'credit'))," +
+		"          card_expiration_date TEXT     NOT NULL CHECK (card_expiration_date LIKE '__/__')," +
+		"          card_address         INTEGER  NOT NULL REFERENCES address(address_id)" +
+		"    );";
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    card (card_number," +
+		"          card_name," +
+		"          card_type," +
+		"          card_expiration_date," +
+		"          card_address)" +
+		"    VALUES (?, ?, ?, ?, ?);";
+
+	private static final String query_str =
+		"SELECT card_id," +
+		"       card_number," +
+		"       card_name," +
+		"       card_type," +
+		"       card_expiration_date," +
+		"       card_address" +
+		"    FROM card" +
+		"    WHERE card_id = ?;";
+
+	/* Completed with Database.placeholders for each batch. */
+	private static final String query_batch_str =
+		"SELECT card_id," +
+		"       card_number," +
+		"       card_name," +
+		"       card_type," +
+		"       card_expiration_date," +
+		"       card_address" +
+		"    FROM card" +
+		"    WHERE card_id IN ";
+
+	private DatabaseConnection db;
+	private AddressTable address_table;
+
+	public CardTable(DatabaseConnection db)
+	{
+		this.db = db;
+		address_table = db.getAddressTable();
+	}
+
+	/* Part of SchemaManager's first step. */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.close();
+	}
+
+	public void insert(Card card)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+
+		insert_stmt.setString(1, card.getNumber());
+		insert_stmt.setString(2, card.getName());
+		insert_stmt.setString(3, card.getTypeStr());
+		insert_stmt.setString(4, card.getExpirationDate());
+		insert_stmt.setInt(5, card.getAddress().getID());
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		card.setID(Database.generatedKey(insert_stmt));
+	}
+
+	/*
+	 * The cache holds cards whose address is just an ID; the address
+	 * itself comes from the address table (and its cache).
+	 */
+	public Card query(int card_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Card> cache = db.getCardCache();
+		Card cached = cache.get(card_id);
+
+		if (cached != null) {
+			return copy(cached, address_table.query(cached.getAddress().getID()));
+		}
+
+		long stamp = cache.stamp();
+
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		Card card = new Card();
+
+		query_stmt.setInt(1, card_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+
+		card.setID(rset.getInt(1));
+		card.setNumber(rset.getString(2));
+		card.setName(rset.getString(3));
+		card.setType(rset.getString(4));
+		card.setExpirationDate(rset.getString(5));
+
+		int address_id = rset.getInt(6);
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		Address stub = new Address();
+		stub.setID(address_id);
+
+		cache.put(card_id, copy(card, stub), weigh(card), stamp);
+
+		card.setAddress(address_table.query(address_id));
+
+		return card;
+	}
+
+	/*
+	 * Looks up several cards at once, like AddressTable.queryBatch. As in
+	 * the cache, each card's address is a stub carrying only its ID.
+	 */
+	public HashMap<Integer, Card> queryBatch(Collection<Integer> card_ids)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Card> cache = db.getCardCache();
+		HashMap<Integer, Card> found = new HashMap<Integer, Card>();
+		ArrayList<Integer> missing = new ArrayList<Integer>();
+
+		for (int id: card_ids) {
+			Card cached = cache.get(id);
+
+			if (cached != null) {
+				found.put(id, copy(cached, cached.getAddress()));
+			} else {
+				missing.add(id);
+			}
+		}
+
+		long stamp = cache.stamp();
+
+		for (int i = 0; i < missing.size(); i += Database.batch_size) {
+			List<Integer> ids = missing.subList(i, Math.min(missing.size(), i + Database.batch_size));
+			PreparedStatement stmt = Database.prepareBatch(db.getConnection(), query_batch_str, ids);
+			ResultSet rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				Card card = new Card();
+
+				card.setID(rset.getInt(1));
+				card.setNumber(rset.getString(2));
+				card.setName(rset.getString(3));
+				card.setType(rset.getString(4));
+				card.setExpirationDate(rset.getString(5));
+
+				Address stub = new Address();
+				stub.setID(rset.getInt(6));
+				card.setAddress(stub);
+
+				cache.put(card.getID(), copy(card, stub), weigh(card), stamp);
+				found.put(card.getID(), card);
+			}
+
+			stmt.close();
+		}
+
+		return found;
+	}
+
+	private static Card copy(Card card, Address address)
+	{
+		return new Card(card.getID(),
+		                card.getNumber(),
+		                card.getName(),
+		                card.getType(),
+		                card.getExpirationDate(),
+		                address);
+	}
+
+	private static long weigh(Card card)
+	{
+		return 48 + ObjectCache.weigh(card.getNumber())
+		          + ObjectCache.weigh(card.getName())
+		          + ObjectCache.weigh(card.getExpirationDate())
+		          + 48;
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Background thread used by the production profile. Automatic
+ * checkpoints are turned off on the writer so commits never pay for
+ * them; this thread checkpoints instead, once the WAL has grown.
+ */
+class Checkpointer
+	extends Thread
+{
+	private static final long interval_ms = 1000;
+
+	private Database db;
+
+	public Checkpointer(Database db)
+	{
+		super("database-checkpointer");
+		setDaemon(true);
+
+		this.db = db;
+	}
+
+	public void run()
+	{
+		while (!isInterrupted()) {
+			try {
+				sleep(interval_ms);
+
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			db.checkpoint();
+		}
+	}
+}
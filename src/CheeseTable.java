@@ -0,0 +1,96 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+class CheeseTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    cheese (cheese_id INTEGER PRIMARY KEY" +
+		"                REFERENCES ingredient(ingredient_id)" +
+		"    );";
+
+	private static final String view_schema =
+		"CREATE VIEW IF NOT EXISTS" +
+		"    cheese_view (cheese_id," +
+		"                 cheese_name," +
+		"                 cheese_small_cost," +
+		"                 cheese_medium_cost," +
+		"                 cheese_large_cost)" +
+		"    AS SELECT cheese_id," +
+		"              ingredient_name," +
+		"              ingredient_small_cost," +
+		"              ingredient_medium_cost," +
+		"              ingredient_large_cost" +
+		"           FROM cheese LEFT JOIN ingredient ON cheese_id = ingredient_id;";
+
+	/* This table's value of ingredient.ingredient_kind. */
+	static final String kind = "cheese";
+
+	private static final String query_all_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient_kind = '" + kind + "'" +
+		"    ORDER BY ingredient.ingredient_id;";
+
+	private DatabaseConnection db;
+
+	public CheeseTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second folds this table into
+	 * ingredient.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.execute(view_schema);
+		stmt.close();
+	}
+
+	public void insert(Cheese cheese)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		db.getIngredientTable().insert(cheese, kind);
+	}
+
+	public ArrayList<Cheese> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+
+		ArrayList<Cheese> list = new ArrayList<Cheese>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+		Cheese cheese = null;
+
+		while (rset.next()) {
+			if (cheese == null || cheese.getID() != rset.getInt(1)) {
+				cheese = new Cheese(rset);
+				list.add(cheese);
+			}
+
+			IngredientTable.readCost(db, cheese, rset);
+		}
+
+		rset.close();
+
+		return list;
+	}
+}
@@ -0,0 +1,12 @@
+/* A customer's ID and stored password hash, as read for a login. */
+class Credential
+{
+	int customer_id;
+	String hash;
+
+	Credential(int customer_id, String hash)
+	{
+		this.customer_id = customer_id;
+		this.hash = hash;
+	}
+}
@@ -0,0 +1,140 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+class CrustTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    crust (crust_id INTEGER PRIMARY KEY" +
+		"               REFERENCES ingredient(ingredient_id)" +
+		"    );";
+
+	private static final String view_schema =
+		"CREATE VIEW IF NOT EXISTS" +
+		"    crust_view (crust_id," +
+		"                crust_name," +
+		"                crust_small_cost," +
+		"                crust_medium_cost," +
+		"                crust_large_cost)" +
+		"    AS SELECT crust_id," +
+		"              ingredient_name," +
+		"              ingredient_small_cost," +
+		"              ingredient_medium_cost," +
+		"              ingredient_large_cost" +
+		"           FROM crust LEFT JOIN ingredient" +
+		"                    ON crust_id = ingredient_id;";
+
+	/*
+	 * Crusts are the rows of ingredient with this ingredient_kind, so
+	 * listing them reads the ingredient_by_kind index and, for each crust,
+	 * its run of ingredient_cost.
+	 */
+	static final String kind = "crust";
+
+	private static final String query_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient.ingredient_id = ?" +
+		"      AND ingredient_kind = '" + kind + "';";
+
+	private static final String query_all_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient_kind = '" + kind + "'" +
+		"    ORDER BY ingredient.ingredient_id;";
+
+	private DatabaseConnection db;
+
+	public CrustTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second folds this table into
+	 * ingredient.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.execute(view_schema);
+		stmt.close();
+	}
+
+	public void insert(Crust crust)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		db.getIngredientTable().insert(crust, kind);
+	}
+
+	public Crust query(int crust_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		query_stmt.setInt(1, crust_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+		Crust crust = null;
+
+		while (rset.next()) {
+			if (crust == null) {
+				crust = new Crust(rset);
+			}
+
+			IngredientTable.readCost(db, crust, rset);
+		}
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		if (crust == null) {
+			throw new SQLException("No crust with ID " + crust_id);
+		}
+
+		return crust;
+	}
+
+	public ArrayList<Crust> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+
+		ArrayList<Crust> list = new ArrayList<Crust>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+		Crust crust = null;
+
+		while (rset.next()) {
+			if (crust == null || crust.getID() != rset.getInt(1)) {
+				crust = new Crust(rset);
+				list.add(crust);
+			}
+
+			IngredientTable.readCost(db, crust, rset);
+		}
+
+		rset.close();
+
+		return list;
+	}
+}
@@ -0,0 +1,319 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+class CustomerTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    customer (customer_id INTEGER PRIMARY KEY," +
+		"              customer_name        TEXT           NOT NULL," +
+		"              customer_email       TEXT    UNIQUE NOT NULL CHECK (customer_email LIKE '%@%.%')," +
+		"              customer_password    TEXT           NOT NULL," +
+		"              customer_phone       TEXT           NOT NULL CHECK (customer_phone LIKE '(___) ___ - ____')," +
+		"              customer_notes       TEXT," +
+		"              customer_address     INTEGER        NOT NULL REFERENCES address(address_id)," +
+		"              customer_card        INTEGER                 REFERENCES card(card_id)" +
+		"    );";
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    customer (customer_name," +
+		"              customer_email," +
+		"              customer_password," +
+		"              customer_phone," +
+		"              customer_notes," +
+		"              customer_address," +
+		"              customer_card)" +
+		"    VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+	public static final String update_str =
+		"UPDATE customer" +
+		"    SET customer_name = ?," +
+		"        customer_email = ?," +
+		"        customer_password = coalesce(?, customer_password)," +
+		"        customer_phone = ?," +
+		"        customer_notes = ?," +
+		"        customer_address = ?," +
+		"        customer_card = ?" +
+		"    WHERE customer_id = ?;";
+
+	/*
+	 * The password hash stays in the table, so loaded customers have a
+	 * null password. Only a password set since then is written back.
+	 */
+	public static final String query_str =
+		"SELECT customer_id," +
+		"       customer_name," +
+		"       customer_email," +
+		"       customer_phone," +
+		"       customer_notes," +
+		"       customer_address," +
+		"       customer_card" +
+		"    FROM customer" +
+		"    WHERE customer_id = ?;";
+
+	/* Login reads only what it needs to check the password. */
+	private static final String query_credential_str =
+		"SELECT customer_id," +
+		"       customer_password" +
+		"    FROM customer" +
+		"    WHERE customer_email = ?;";
+
+	private static final String update_password_str =
+		"UPDATE customer" +
+		"    SET customer_password = ?" +
+		"    WHERE customer_id = ?;";
+
+	/* Completed with Database.placeholders for each batch. */
+	private static final String query_batch_str =
+		"SELECT customer_id," +
+		"       customer_name," +
+		"       customer_email," +
+		"       customer_phone," +
+		"       customer_notes," +
+		"       customer_address," +
+		"       customer_card" +
+		"    FROM customer" +
+		"    WHERE customer_id IN ";
+
+	private DatabaseConnection db;
+	private AddressTable address_table;
+	private CardTable card_table;
+
+	public CustomerTable(DatabaseConnection db)
+	{
+		this.db = db;
+		address_table = db.getAddressTable();
+		card_table = db.getCardTable();
+	}
+
+	/* Part of SchemaManager's first step. */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.close();
+	}
+
+	/*
+	 * password_hash is the customer's password as encoded by
+	 * PasswordHasher; the plain password never reaches the table. On
+	 * update, a null password_hash leaves the stored one as it is.
+	 */
+	public void insert(Customer customer, String password_hash)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+
+		insert_stmt.setString(1, customer.getName());
+		insert_stmt.setString(2, customer.getEmail());
+		insert_stmt.setString(3, password_hash);
+		insert_stmt.setString(4, customer.getPhone());
+		insert_stmt.setString(5, customer.getNotes());
+		insert_stmt.setInt(6, customer.getAddress().getID());
+		insert_stmt.setInt(7, customer.getActiveCard().getID());
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		customer.setID(Database.generatedKey(insert_stmt));
+	}
+
+	public void update(Customer customer, String password_hash)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement update_stmt = db.prepare(update_str);
+
+		update_stmt.setString(1, customer.getName());
+		update_stmt.setString(2, customer.getEmail());
+		update_stmt.setString(3, password_hash);
+		update_stmt.setString(4, customer.getPhone());
+		update_stmt.setString(5, customer.getNotes());
+		update_stmt.setInt(6, customer.getAddress().getID());
+		update_stmt.setInt(7, customer.getActiveCard().getID());
+		update_stmt.setInt(8, customer.getID());
+
+		update_stmt.executeUpdate();
+		update_stmt.clearParameters();
+	}
+
+	/*
+	 * Like CardTable, the cache holds customers whose address and card
+	 * are just IDs.
+	 */
+	public Customer query(int customer_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Customer> cache = db.getCustomerCache();
+		Customer cached = cache.get(customer_id);
+
+		if (cached != null) {
+			return copy(cached,
+			            address_table.query(cached.getAddress().getID()),
+			            card_table.query(cached.getActiveCard().getID()));
+		}
+
+		long stamp = cache.stamp();
+
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		Customer customer = new Customer();
+
+		query_stmt.setInt(1, customer_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+
+		customer.setID(rset.getInt(1));
+		customer.setName(rset.getString(2));
+		customer.setEmail(rset.getString(3));
+		customer.setPassword(null);
+		customer.setPhone(rset.getString(4));
+		customer.setNotes(rset.getString(5));
+
+		int address_id = rset.getInt(6);
+		int card_id = rset.getInt(7);
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		Address address_stub = new Address();
+		address_stub.setID(address_id);
+
+		Card card_stub = new Card();
+		card_stub.setID(card_id);
+
+		cache.put(customer_id, copy(customer, address_stub, card_stub), weigh(customer), stamp);
+
+		customer.setAddress(address_table.query(address_id));
+		customer.setActiveCard(card_table.query(card_id));
+
+		return customer;
+	}
+
+	/* Returns null if no customer has this email. */
+	public Credential queryCredential(String customer_email)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_credential_stmt = db.prepare(query_credential_str);
+
+		Credential credential = null;
+
+		query_credential_stmt.setString(1, customer_email);
+
+		ResultSet rset = query_credential_stmt.executeQuery();
+
+		if (rset.next()) {
+			credential = new Credential(rset.getInt(1), rset.getString(2));
+		}
+
+		rset.close();
+		query_credential_stmt.clearParameters();
+
+		return credential;
+	}
+
+	public void updatePassword(int customer_id, String password_hash)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement update_password_stmt = db.prepare(update_password_str);
+
+		update_password_stmt.setString(1, password_hash);
+		update_password_stmt.setInt(2, customer_id);
+
+		update_password_stmt.executeUpdate();
+		update_password_stmt.clearParameters();
+	}
+
+	/*
+	 * Looks up several customers at once, like AddressTable.queryBatch.
+	 * As in the cache, addresses and cards are stubs carrying only IDs.
+	 */
+	public HashMap<Integer, Customer> queryBatch(Collection<Integer> customer_ids)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ObjectCache<Customer> cache = db.getCustomerCache();
+		HashMap<Integer, Customer> found = new HashMap<Integer, Customer>();
+		ArrayList<Integer> missing = new ArrayList<Integer>();
+
+		for (int id: customer_ids) {
+			Customer cached = cache.get(id);
+
+			if (cached != null) {
+				found.put(id, copy(cached, cached.getAddress(), cached.getActiveCard()));
+			} else {
+				missing.add(id);
+			}
+		}
+
+		long stamp = cache.stamp();
+
+		for (int i = 0; i < missing.size(); i += Database.batch_size) {
+			List<Integer> ids = missing.subList(i, Math.min(missing.size(), i + Database.batch_size));
+			PreparedStatement stmt = Database.prepareBatch(db.getConnection(), query_batch_str, ids);
+			ResultSet rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				Customer customer = new Customer();
+
+				customer.setID(rset.getInt(1));
+				customer.setName(rset.getString(2));
+				customer.setEmail(rset.getString(3));
+				customer.setPassword(null);
+				customer.setPhone(rset.getString(4));
+				customer.setNotes(rset.getString(5));
+
+				Address address_stub = new Address();
+				address_stub.setID(rset.getInt(6));
+				customer.setAddress(address_stub);
+
+				Card card_stub = new Card();
+				card_stub.setID(rset.getInt(7));
+				customer.setActiveCard(card_stub);
+
+				cache.put(customer.getID(), copy(customer, address_stub, card_stub), weigh(customer), stamp);
+				found.put(customer.getID(), customer);
+			}
+
+			stmt.close();
+		}
+
+		return found;
+	}
+
+	private static Customer copy(Customer customer, Address address, Card card)
+	{
+		return new Customer(customer.getID(),
+		                    customer.getName(),
+		                    customer.getEmail(),
+		                    customer.getPassword(),
+		                    customer.getPhone(),
+		                    customer.getNotes(),
+		                    address,
+		                    card);
+	}
+
+	private static long weigh(Customer customer)
+	{
+		return 56 + ObjectCache.weigh(customer.getName())
+		          + ObjectCache.weigh(customer.getEmail())
+		          + ObjectCache.weigh(customer.getPhone())
+		          + ObjectCache.weigh(customer.getNotes())
+		          + 96;
+	}
+}
@@ -1,1703 +1,1999 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.time.Instant;
-import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
 import java.sql.Statement;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Date;
-import org.sqlite.SQLiteErrorCode;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.sqlite.SQLiteConfig;
 
-class IngredientTable
+public class Database
 {
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    ingredient (ingredient_id          INTEGER PRIMARY KEY," +
-		"                ingredient_name        TEXT    UNIQUE NOT NULL," +
-		"                ingredient_small_cost  REAL           NOT NULL," +
-		"                ingredient_medium_cost REAL           NOT NULL," +
-		"                ingredient_large_cost  REAL           NOT NULL," +
-		"                CONSTRAINT ingredient_check_cost" +
-		"                    CHECK (ingredient_small_cost <= ingredient_medium_cost" +
-		"                    AND    ingredient_medium_cost <= ingredient_large_cost)" +
-		"    );";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    ingredient (ingredient_name," +
-		"                ingredient_small_cost," +
-		"                ingredient_medium_cost," +
-		"                ingredient_large_cost)" +
-		"    VALUES (?, ?, ?, ?);";
-
-	private static final String update_str =
-		"UPDATE ingredient" +
-		"    SET ingredient_name = ?," +
-		"        ingredient_small_cost = ?," +
-		"        ingredient_medium_cost = ?," +
-		"        ingredient_large_cost = ?" +
-		"    WHERE ingredient_id = ?;";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement update_stmt;
-
-	public IngredientTable(Database db)
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * DEFAULT leaves SQLite's settings alone. PRODUCTION switches to WAL
+	 * with synchronous=NORMAL, a larger page cache, memory mapped I/O and
+	 * in-memory temp tables, and checkpoints from a background thread.
+	 * The profile used by new Database(path) is read from the
+	 * pizzashop.db.profile system property.
+	 */
+	public enum Profile
 	{
-		this.db = db;
+		DEFAULT,
+		PRODUCTION
+	}
 
-		Connection conn = db.getConnection();
+	/* Page cache in KiB and mmap size in bytes for the production profile. */
+	private static final int cache_size = Integer.getInteger("pizzashop.db.cache_size", 64 * 1024);
+	private static final long mmap_size = Long.getLong("pizzashop.db.mmap_size", 256L * 1024 * 1024);
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
+	/* WAL sizes at which the checkpointer runs a PASSIVE or TRUNCATE checkpoint. */
+	private static final long passive_checkpoint_size = 4L * 1024 * 1024;
+	private static final long truncate_checkpoint_size = 64L * 1024 * 1024;
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		update_stmt = conn.prepareStatement(update_str);
-	}
+	/* Orders committed per transaction by importOrders. */
+	private static final int import_batch = Integer.getInteger("pizzashop.db.import_batch", 50000);
 
-	public void insert(Ingredient ingredient)
-		throws SQLException,
-		       SQLTimeoutException
+	/* IDs bound to one IN (...) list when loading references in a batch. */
+	static final int batch_size = 500;
+
+	/*
+	 * How lookupOrdersByCustomer loads each order's customer, address,
+	 * card and pizzas. EAGER reads them all before returning. LAZY
+	 * returns stand-ins that read their own row when first used, and
+	 * BATCH stand-ins read every not yet loaded row of their kind from
+	 * the same lookup at once, so a list screen touching every order
+	 * costs one query per kind.
+	 */
+	public enum Fetch
 	{
-		insert_stmt.setString(1, ingredient.getName());
-		insert_stmt.setDouble(2, ingredient.getSmallCost());
-		insert_stmt.setDouble(3, ingredient.getMediumCost());
-		insert_stmt.setDouble(4, ingredient.getLargeCost());
+		EAGER,
+		LAZY,
+		BATCH
+	}
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+	private String path;
+	private int reader_count;
+	private Profile profile;
+	private Checkpointer checkpointer;
+	private OrderCommitter committer;
+	private boolean closing;
+
+	/*
+	 * All writes go through the writer connection while holding
+	 * write_lock. Reads take a connection from the reader pool, or share
+	 * the writer (under the same lock) when no readers were requested.
+	 */
+	private DatabaseConnection writer;
+	private ReentrantLock write_lock = new ReentrantLock();
+	private ArrayBlockingQueue<DatabaseConnection> readers;
+
+	/*
+	 * Objects given an ID inside the current transaction. If the
+	 * transaction is rolled back their rows are gone, so their IDs are
+	 * reset to 0 to let the caller retry with the same objects.
+	 */
+	private ArrayList<Object> inserted;
+
+	private volatile IngredientCatalog catalog;
+	private volatile MenuIndex menu;
+
+	/* This file's sizes, indexed by size ID; see reloadSizes. */
+	private volatile Pizza.Size[] sizes = Pizza.Size.builtIn();
+	private volatile NameIndex ingredient_names;
+
+	/*
+	 * Addresses, cards and customers share one memory budget, in bytes,
+	 * taken from the pizzashop.db.object_cache_size system property.
+	 */
+	private static final long object_cache_size = Long.getLong("pizzashop.db.object_cache_size", 16L * 1024 * 1024);
+
+	private ObjectCache<Address> address_cache = new ObjectCache<Address>(object_cache_size / 4);
+	private ObjectCache<Card> card_cache = new ObjectCache<Card>(object_cache_size / 4);
+	private ObjectCache<Customer> customer_cache = new ObjectCache<Customer>(object_cache_size / 2);
+
+	/* Password hashes computed at once by loginCustomer, and by importOrders. */
+	private static final int hash_threads =
+		Integer.getInteger("pizzashop.auth.hash_threads",
+		                   Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+	private static final String dummy_hash = PasswordHasher.encode("");
+
+	private Semaphore hash_permits = new Semaphore(hash_threads, true);
+	private LoginFailureCache login_failures = new LoginFailureCache();
+
+	/*
+	 * Timings and statement counts go to metrics. The default registry is
+	 * also published over JMX while the database is open, unless the
+	 * pizzashop.metrics.jmx system property is false.
+	 */
+	private static final boolean jmx = !"false".equals(System.getProperty("pizzashop.metrics.jmx"));
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private volatile MetricsRegistry metrics = new DatabaseMetrics();
+	private ObjectName mbean_name;
+
+	/* Null unless pizzashop.db.slow_query_ms is set; see SlowQueryLog. */
+	private SlowQueryLog slow_log = SlowQueryLog.fromProperties();
 
-		ingredient.setID(db.lastInsertRowID());
-	}
+	private IngredientTable ingredient_table;
+	private CrustTable crust_table;
+	private SauceTable sauce_table;
+	private CheeseTable cheese_table;
+	private ToppingTable topping_table;
+	private SizeTable size_table;
+	private PizzaTable pizza_table;
+	private AddressTable address_table;
+	private CardTable card_table;
+	private CustomerTable customer_table;
+	private OrdersTable orders_table;
 
-	public void update(Ingredient ingredient)
-		throws SQLException,
-		       SQLTimeoutException
+	public Database(String path)
 	{
-		update_stmt.setInt(1, ingredient.getID());
-		update_stmt.setString(2, ingredient.getName());
-		update_stmt.setDouble(3, ingredient.getSmallCost());
-		update_stmt.setDouble(4, ingredient.getMediumCost());
-		update_stmt.setDouble(5, ingredient.getLargeCost());
-
-		update_stmt.executeUpdate();
-		update_stmt.clearParameters();
+		this(path, 0);
 	}
-}
 
-class CrustTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    crust (crust_id INTEGER PRIMARY KEY" +
-		"               REFERENCES ingredient(ingredient_id)" +
-		"    );";
-
-	private static final String view_schema =
-		"CREATE VIEW IF NOT EXISTS" +
-		"    crust_view (crust_id," +
-		"                crust_name," +
-		"                crust_small_cost," +
-		"                crust_medium_cost," +
-		"                crust_large_cost)" +
-		"    AS SELECT crust_id," +
-		"              ingredient_name," +
-		"              ingredient_small_cost," +
-		"              ingredient_medium_cost," +
-		"              ingredient_large_cost" +
-		"           FROM crust LEFT JOIN ingredient" +
-		"                    ON crust_id = ingredient_id;";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    crust (crust_id)" +
-		"    SELECT ingredient_id" +
-		"        FROM ingredient" +
-		"        WHERE ingredient_name = ?;";
-
-	private static final String query_str =
-		"SELECT crust_id," +
-		"       crust_name," +
-		"       crust_small_cost," +
-		"       crust_medium_cost," +
-		"       crust_large_cost" +
-		"    FROM crust_view" +
-		"    WHERE crust_id = ?;";
-
-	private static final String query_all_str =
-		"SELECT crust_id," +
-		"       crust_name," +
-		"       crust_small_cost," +
-		"       crust_medium_cost," +
-		"       crust_large_cost" +
-		"    FROM crust_view;";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_stmt;
-	private PreparedStatement query_all_stmt;
-
-	public CrustTable(Database db)
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * With reader_count > 0 the database is opened in WAL mode with that
+	 * many read-only connections, so lookups from several threads run in
+	 * parallel with each other and with the writer. Each in-memory
+	 * connection is a database of its own, so an in-memory path takes no
+	 * readers.
+	 */
+	public Database(String path, int reader_count)
 	{
-		this.db = db;
-
-		Connection conn = db.getConnection();
+		this(path, reader_count, defaultProfile());
+	}
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
-		stmt.execute(view_schema);
+	public Database(String path, int reader_count, Profile profile)
+	{
+		if (reader_count > 0 && isMemory(path)) {
+			throw new IllegalArgumentException("An in-memory database cannot have reader connections.");
+		}
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_stmt = conn.prepareStatement(query_str);
-		query_all_stmt = conn.prepareStatement(query_all_str);
+		this.path = path;
+		this.reader_count = reader_count;
+		this.profile = profile;
 	}
 
-	public void insert(Crust crust)
-		throws SQLException,
-		       SQLTimeoutException
+	public static Profile defaultProfile()
 	{
-		insert_stmt.setString(1, crust.getName());
+		String name = System.getProperty("pizzashop.db.profile", "default");
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		if (name.compareToIgnoreCase("production") == 0) {
+			return Profile.PRODUCTION;
+		} else {
+			return Profile.DEFAULT;
+		}
 	}
 
-	public Crust query(int crust_id)
-		throws SQLException,
-		       SQLTimeoutException
+	public Profile getProfile() { return profile; }
+	public int getReaderCount() { return reader_count; }
+	public MetricsRegistry getMetricsRegistry() { return metrics; }
+
+	/* Call before open, so the registry sees the caches. */
+	public void setMetricsRegistry(MetricsRegistry metrics) { this.metrics = metrics; }
+
+	public Connection getConnection() { return writer.getConnection(); }
+	public IngredientTable getIngredientTable() { return ingredient_table; }
+	public CrustTable getCrustTable() { return crust_table; }
+	public SauceTable getSauceTable() { return sauce_table; }
+	public CheeseTable getCheeseTable() { return cheese_table; }
+	public ToppingTable getToppingTable() { return topping_table; }
+	public SizeTable getSizeTable() { return size_table; }
+	public PizzaTable getPizzaTable() { return pizza_table; }
+	public AddressTable getAddressTable() { return address_table; }
+	public CardTable getCardTable() { return card_table; }
+	public CustomerTable getCustomerTable() { return customer_table; }
+	public OrdersTable getOrdersTable() { return orders_table; }
+	public ObjectCache<Address> getAddressCache() { return address_cache; }
+	public ObjectCache<Card> getCardCache() { return card_cache; }
+	public ObjectCache<Customer> getCustomerCache() { return customer_cache; }
+
+	public void open()
 	{
-		query_stmt.setInt(1, crust_id);
+		synchronized (this) {
+			closing = false;
+		}
+
+		try {
+			Connection conn = connect(false);
+
+			if (reader_count > 0 || profile == Profile.PRODUCTION) {
+				Statement stmt = conn.createStatement();
+				stmt.execute("PRAGMA journal_mode = WAL;");
+				stmt.close();
+			}
+
+			/*
+			 * Automatic checkpoints are only turned off when the
+			 * checkpointer will run in their place, which needs the WAL
+			 * file's path to watch its size.
+			 */
+			boolean checkpointing = profile == Profile.PRODUCTION && walFile() != null;
+
+			if (checkpointing) {
+				Statement stmt = conn.createStatement();
+				stmt.execute("PRAGMA wal_autocheckpoint = 0;");
+				stmt.close();
+			}
+
+			SchemaManager.upgrade(conn);
+
+			writer = new DatabaseConnection(this, conn);
+
+			ingredient_table = writer.getIngredientTable();
+			crust_table = writer.getCrustTable();
+			sauce_table = writer.getSauceTable();
+			cheese_table = writer.getCheeseTable();
+			topping_table = writer.getToppingTable();
+			size_table = writer.getSizeTable();
+			pizza_table = writer.getPizzaTable();
+			address_table = writer.getAddressTable();
+			card_table = writer.getCardTable();
+			customer_table = writer.getCustomerTable();
+			orders_table = writer.getOrdersTable();
+
+			if (slow_log != null) {
+				slow_log.checkAll(conn,
+				                  IngredientTable.class,
+				                  CrustTable.class,
+				                  SauceTable.class,
+				                  CheeseTable.class,
+				                  ToppingTable.class,
+				                  SizeTable.class,
+				                  PizzaTable.class,
+				                  AddressTable.class,
+				                  CardTable.class,
+				                  CustomerTable.class,
+				                  OrdersTable.class);
+			}
 
-		ResultSet rset = query_stmt.executeQuery();
+			reloadSizes(writer);
+			catalog = IngredientCatalog.load(writer);
+			ingredient_names = catalog.names();
+			menu = MenuIndex.load(writer);
 
-		Crust crust = new Crust(rset);
+			if (reader_count > 0) {
+				readers = new ArrayBlockingQueue<DatabaseConnection>(reader_count);
 
-		query_stmt.clearParameters();
+				for (int i = 0; i < reader_count; i++) {
+					readers.add(new DatabaseConnection(this, connect(true)));
+				}
+			}
 
-		return crust;
+			if (checkpointing) {
+				checkpointer = new Checkpointer(this);
+				checkpointer.start();
+			}
+
+			metrics.registerCache("address", address_cache);
+			metrics.registerCache("card", card_cache);
+			metrics.registerCache("customer", customer_cache);
+
+			registerMBean();
+
+		} catch (SQLException e) {
+			System.err.println("Failed while initializing the database.");
+			System.err.println(e);
+			System.err.println("Tell Patrick to fix his code.");
+			System.exit(1);
+		}
 	}
 
-	public ArrayList<Crust> queryAll()
-		throws SQLException,
-		       SQLTimeoutException
+	public void close()
 	{
-		ArrayList<Crust> list = new ArrayList<Crust>();
+		synchronized (this) {
+			closing = true;
+
+			if (committer != null) {
+				committer.shutdown();
+				committer = null;
+			}
+		}
 
-		ResultSet rset = query_all_stmt.executeQuery();
+		if (checkpointer != null) {
+			checkpointer.interrupt();
 
-		while (rset.next()) {
-			list.add(new Crust(rset));
+			try {
+				checkpointer.join();
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			checkpointer = null;
 		}
 
-		return list;
-	}
-}
+		orders_table = null;
+		customer_table = null;
+		card_table = null;
+		address_table = null;
+		pizza_table = null;
+		size_table = null;
+		topping_table = null;
+		cheese_table = null;
+		sauce_table = null;
+		crust_table = null;
+		ingredient_table = null;
 
-class SauceTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    sauce (sauce_id INTEGER PRIMARY KEY" +
-		"               REFERENCES ingredient(ingredient_id)" +
-		"    );";
-
-	private static final String view_schema =
-		"CREATE VIEW IF NOT EXISTS" +
-		"    sauce_view (sauce_id," +
-		"                sauce_name," +
-		"                sauce_small_cost," +
-		"                sauce_medium_cost," +
-		"                sauce_large_cost)" +
-		"    AS SELECT sauce_id," +
-		"              ingredient_name," +
-		"              ingredient_small_cost," +
-		"              ingredient_medium_cost," +
-		"              ingredient_large_cost" +
-		"           FROM sauce LEFT JOIN ingredient ON sauce_id = ingredient_id;";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    sauce (sauce_id)" +
-		"    SELECT ingredient_id" +
-		"        FROM ingredient" +
-		"        WHERE ingredient_name = ?;";
-
-	private static final String query_str =
-		"SELECT sauce_id," +
-		"       sauce_name," +
-		"       sauce_small_cost," +
-		"       sauce_medium_cost," +
-		"       sauce_large_cost" +
-		"    FROM sauce_view" +
-		"    WHERE sauce_id = ?;";
-
-	private static final String query_all_str =
-		"SELECT sauce_id," +
-		"       sauce_name," +
-		"       sauce_small_cost," +
-		"       sauce_medium_cost," +
-		"       sauce_large_cost" +
-		"    FROM sauce_view;";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_stmt;
-	private PreparedStatement query_all_stmt;
-
-	public SauceTable(Database db)
-		throws SQLException,
-		       SQLTimeoutException
-	{
-		this.db = db;
+		try {
+			if (readers != null) {
+				for (DatabaseConnection reader: readers) {
+					reader.close();
+				}
+			}
 
-		Connection conn = db.getConnection();
+			writer.close();
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
-		stmt.execute(view_schema);
+		} catch (SQLException e) {
+			System.err.println("Failed while closing the database.");
+			System.err.println(e);
+		}
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_stmt = conn.prepareStatement(query_str);
-		query_all_stmt = conn.prepareStatement(query_all_str);
-	}
+		readers = null;
+		writer = null;
+		menu = null;
+		ingredient_names = null;
+		catalog = null;
 
-	public void insert(Sauce sauce)
-		throws SQLException,
-		       SQLTimeoutException
-	{
-		insert_stmt.setString(1, sauce.getName());
+		address_cache.clear();
+		card_cache.clear();
+		customer_cache.clear();
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		unregisterMBean();
 	}
 
-	public Sauce query(int sauce_id)
-		throws SQLException,
-		       SQLTimeoutException
+	private void registerMBean()
 	{
-		query_stmt.setInt(1, sauce_id);
-
-		ResultSet rset = query_stmt.executeQuery();
+		if (!jmx || !(metrics instanceof DatabaseMetricsMXBean)) {
+			return;
+		}
 
-		Sauce sauce = new Sauce(rset);
+		try {
+			mbean_name = new ObjectName("pizzashop:type=Database" +
+			                            ",path=" + ObjectName.quote(path) +
+			                            ",instance=" + instances.incrementAndGet());
 
-		query_stmt.clearParameters();
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, mbean_name);
 
-		return sauce;
+		} catch (JMException e) {
+			System.err.println("Failed while registering database metrics with JMX.");
+			System.err.println(e);
+			mbean_name = null;
+		}
 	}
 
-	public ArrayList<Sauce> queryAll()
-		throws SQLException,
-		       SQLTimeoutException
+	private void unregisterMBean()
 	{
-		ArrayList<Sauce> list = new ArrayList<Sauce>();
+		if (mbean_name == null) {
+			return;
+		}
 
-		ResultSet rset = query_all_stmt.executeQuery();
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean_name);
 
-		while (rset.next()) {
-			list.add(new Sauce(rset));
+		} catch (JMException e) {
+			System.err.println("Failed while unregistering database metrics from JMX.");
+			System.err.println(e);
 		}
 
-		return list;
+		mbean_name = null;
 	}
-}
 
-class CheeseTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    cheese (cheese_id INTEGER PRIMARY KEY" +
-		"                REFERENCES ingredient(ingredient_id)" +
-		"    );";
-
-	private static final String view_schema =
-		"CREATE VIEW IF NOT EXISTS" +
-		"    cheese_view (cheese_id," +
-		"                 cheese_name," +
-		"                 cheese_small_cost," +
-		"                 cheese_medium_cost," +
-		"                 cheese_large_cost)" +
-		"    AS SELECT cheese_id," +
-		"              ingredient_name," +
-		"              ingredient_small_cost," +
-		"              ingredient_medium_cost," +
-		"              ingredient_large_cost" +
-		"           FROM cheese LEFT JOIN ingredient ON cheese_id = ingredient_id;";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    cheese (cheese_id)" +
-		"    SELECT ingredient_id" +
-		"        FROM ingredient" +
-		"        WHERE ingredient_name = ?;";
-
-	private static final String query_all_str =
-		"SELECT cheese_id," +
-		"       cheese_name," +
-		"       cheese_small_cost," +
-		"       cheese_medium_cost," +
-		"       cheese_large_cost" +
-		"    FROM cheese_view;";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_all_stmt;
-
-	public CheeseTable(Database db)
+	IngredientCatalog getCatalog() { return catalog; }
+
+	Pizza.Size[] getSizes() { return sizes; }
+
+	/*
+	 * Rereads the size table. Sizes already loaded keep their objects, and
+	 * the first three must be the built-in sizes.
+	 */
+	void reloadSizes(DatabaseConnection conn)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.db = db;
+		ArrayList<String> names = conn.getSizeTable().queryAll();
+		Pizza.Size[] built_in = Pizza.Size.builtIn();
+		Pizza.Size[] sizes = this.sizes;
+		Pizza.Size[] loaded = new Pizza.Size[names.size()];
 
-		Connection conn = db.getConnection();
+		if (loaded.length < built_in.length) {
+			throw new SQLException("The size table is missing built-in sizes.");
+		}
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
-		stmt.execute(view_schema);
+		for (int i = 0; i < loaded.length; i++) {
+			String name = names.get(i);
+
+			if (i < built_in.length) {
+				if (!built_in[i].getName().equals(name)) {
+					throw new SQLException("Size " + i + " is " + name + ", not " + built_in[i].getName() + ".");
+				}
+
+				loaded[i] = built_in[i];
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_all_stmt = conn.prepareStatement(query_all_str);
+			} else if (i < sizes.length && sizes[i].getName().equals(name)) {
+				loaded[i] = sizes[i];
+
+			} else {
+				loaded[i] = new Pizza.Size(i, name);
+			}
+		}
+
+		this.sizes = loaded;
 	}
 
-	public void insert(Cheese cheese)
+	IngredientCatalog reloadCatalog(DatabaseConnection conn)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		insert_stmt.setString(1, cheese.getName());
+		catalog = IngredientCatalog.load(conn);
+		ingredient_names = catalog.names();
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		return catalog;
 	}
 
-	public ArrayList<Cheese> queryAll()
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * Whether setInitted has been called on this file. The flag shares
+	 * user_version with the schema version; see SchemaManager.
+	 */
+	public boolean isInitted()
 	{
-		ArrayList<Cheese> list = new ArrayList<Cheese>();
+		boolean initted = false;
 
-		ResultSet rset = query_all_stmt.executeQuery();
+		lockWriter();
 
-		while (rset.next()) {
-			list.add(new Cheese(rset));
+		try {
+			initted = SchemaManager.isInitted(getConnection());
+
+		} catch (SQLException e) {
+			System.err.println("Failed while getting user version.");
+			System.err.println(e);
+			System.err.println("Tell Patrick to fix his code.");
+			System.exit(1);
+
+		} finally {
+			write_lock.unlock();
 		}
 
-		return list;
+		return initted;
 	}
-}
 
-class ToppingTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    topping (topping_id INTEGER PRIMARY KEY" +
-		"                 REFERENCES ingredient(ingredient_id)" +
-		"    );";
-
-	private static final String view_schema =
-		"CREATE VIEW IF NOT EXISTS" +
-		"    topping_view (topping_id," +
-		"                  topping_name," +
-		"                  topping_small_cost," +
-		"                  topping_medium_cost," +
-		"                  topping_large_cost)" +
-		"    AS SELECT topping_id," +
-		"              ingredient_name," +
-		"              ingredient_small_cost," +
-		"              ingredient_medium_cost," +
-		"              ingredient_large_cost" +
-		"           FROM topping LEFT JOIN ingredient ON topping_id = ingredient_id;";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    topping (topping_id)" +
-		"    SELECT ingredient_id" +
-		"        FROM ingredient" +
-		"        WHERE ingredient_name = ?;";
-
-	private static final String query_all_str =
-		"SELECT topping_id," +
-		"       topping_name," +
-		"       topping_small_cost," +
-		"       topping_medium_cost," +
-		"       topping_large_cost" +
-		"    FROM topping_view;";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_all_stmt;
-
-	public ToppingTable(Database db)
-		throws SQLException,
-		       SQLTimeoutException
+	public void setInitted()
 	{
-		this.db = db;
+		lockWriter();
 
-		Connection conn = db.getConnection();
+		try {
+			SchemaManager.setInitted(getConnection());
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
-		stmt.execute(view_schema);
+		} catch (SQLException e) {
+			System.err.println("Failed while setting user version.");
+			System.err.println(e);
+			System.err.println("Tell Patrick to fix his code.");
+			System.exit(1);
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_all_stmt = conn.prepareStatement(query_all_str);
+		} finally {
+			write_lock.unlock();
+		}
 	}
 
-	public void insert(Topping topping)
+	/* Readers are opened read-only, so SQLite refuses any write made on one. */
+	private Connection connect(boolean read_only)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		insert_stmt.setString(1, topping.getName());
+		SQLiteConfig config = new SQLiteConfig();
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
-	}
+		config.setReadOnly(read_only);
 
-	public ArrayList<Topping> queryAll()
-		throws SQLException,
-		       SQLTimeoutException
-	{
-		ArrayList<Topping> list = new ArrayList<Topping>();
+		Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path, config.toProperties());
 
-		ResultSet rset = query_all_stmt.executeQuery();
+		Statement stmt = conn.createStatement();
 
-		while (rset.next()) {
-			list.add(new Topping(rset));
+		stmt.execute("PRAGMA foreign_keys = 1;");
+
+		if (profile == Profile.PRODUCTION) {
+			stmt.execute("PRAGMA synchronous = NORMAL;");
+			stmt.execute("PRAGMA cache_size = -" + cache_size + ";");
+			stmt.execute("PRAGMA mmap_size = " + mmap_size + ";");
+			stmt.execute("PRAGMA temp_store = MEMORY;");
 		}
 
-		return list;
+		stmt.close();
+
+		return InstrumentedConnection.wrap(conn, slow_log);
 	}
-}
 
-class PizzaTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    pizza (pizza_id    INTEGER PRIMARY KEY," +
-		"           pizza_name  TEXT," +
-		"           pizza_crust INTEGER NOT NULL REFERENCES crust(crust_id)," +
-		"           pizza_sauce INTEGER NOT NULL REFERENCES sauce(sauce_id)" +
-		"    );";
-
-	private static final String pizza_cheese_schema =
-		"CREATE TABLE IF NOT EXISTS pizza_cheese (" +
-		"	pizza_id  INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
-		"	cheese_id INTEGER NOT NULL REFERENCES cheese(cheese_id)," +
-		"	PRIMARY KEY (pizza_id, cheese_id)" +
-		");";
-
-	private static final String pizza_topping_schema =
-		"CREATE TABLE IF NOT EXISTS pizza_topping (" +
-		"	pizza_id   INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
-		"	topping_id INTEGER NOT NULL REFERENCES topping(topping_id)," +
-		"	PRIMARY KEY (pizza_id, topping_id)" +
-		");";
-
-	private static final String trigger_schema =
-		"CREATE TRIGGER IF NOT EXISTS pizza_update_deletes" +
-		"    AFTER" +
-		"        UPDATE OF pizza_name," +
-		"                  pizza_crust," +
-		"                  pizza_sauce" +
-		"               ON pizza" +
-		"    BEGIN" +
-		"        DELETE FROM pizza_cheese" +
-		"               WHERE pizza_cheese.pizza_id = OLD.pizza_id;" +
-		"" +
-		"        DELETE FROM pizza_topping" +
-		"               WHERE pizza_topping.pizza_id = OLD.pizza_id;" +
-		"    END;";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    pizza (pizza_name," +
-		"           pizza_crust," +
-		"           pizza_sauce)" +
-		"    VALUES (?, ?, ?);";
-
-	private static final String update_str =
-		"UPDATE pizza" +
-		"    SET pizza_name = ?," +
-		"        pizza_crust = ?," +
-		"        pizza_sauce = ?" +
-		"    WHERE pizza_id = ?;";
-
-	private static final String query_str =
-		"SELECT pizza_id," +
-		"       pizza_name," +
-		"       pizza_crust," +
-		"       pizza_sauce" +
-		"    FROM pizza" +
-		"    WHERE pizza_id = ?;";
-
-	private static final String query_all_str =
-		"SELECT pizza_id," +
-		"       pizza_name," +
-		"       pizza_crust," +
-		"       pizza_sauce" +
-		"    FROM pizza;";
-
-	private static final String insert_pizza_cheese_str =
-		"INSERT INTO" +
-		"    pizza_cheese (pizza_id," +
-		"                  cheese_id)" +
-		"    VALUES (?, ?);";
-
-	private static final String insert_pizza_topping_str =
-		"INSERT INTO" +
-		"    pizza_topping (pizza_id," +
-		"                   topping_id)" +
-		"    VALUES (?, ?);";
-
-	private static final String query_pizza_cheese_str =
-		"SELECT pizza_cheese.cheese_id," +
-		"       cheese_name," +
-		"       cheese_small_cost," +
-		"       cheese_medium_cost," +
-		"       cheese_large_cost" +
-		"    FROM pizza_cheese LEFT JOIN cheese_view" +
-		"             ON pizza_cheese.cheese_id = cheese_view.cheese_id" +
-		"    WHERE pizza_id = ?;";
-
-	private static final String query_pizza_topping_str =
-		"SELECT pizza_topping.topping_id," +
-		"       topping_name," +
-		"       topping_small_cost," +
-		"       topping_medium_cost," +
-		"       topping_large_cost" +
-		"    FROM pizza_topping LEFT JOIN topping_view" +
-		"             ON pizza_topping.topping_id = topping_view.topping_id" +
-		"    WHERE pizza_id = ?;";
-
-	private Database db;
-	private CrustTable crust_table;
-	private SauceTable sauce_table;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement update_stmt;
-	private PreparedStatement query_stmt;
-	private PreparedStatement query_all_stmt;
-	private PreparedStatement insert_pizza_cheese_stmt;
-	private PreparedStatement insert_pizza_topping_stmt;
-	private PreparedStatement query_pizza_cheese_stmt;
-	private PreparedStatement query_pizza_topping_stmt;
-
-	public PizzaTable(Database db)
-		throws SQLException,
-		       SQLTimeoutException
+	private static boolean isMemory(String path)
 	{
-		this.db = db;
-		crust_table = db.getCrustTable();
-		sauce_table = db.getSauceTable();
+		return path.length() == 0
+		       || path.startsWith(":memory:")
+		       || path.startsWith("file::memory:")
+		       || (path.startsWith("file:") && path.contains("mode=memory"));
+	}
 
-		Connection conn = db.getConnection();
+	/* The WAL of the file at path, or null for an in-memory database. */
+	private File walFile()
+	{
+		if (isMemory(path)) {
+			return null;
+		}
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
-		stmt.execute(pizza_cheese_schema);
-		stmt.execute(pizza_topping_schema);
-		stmt.execute(trigger_schema);
+		if (!path.startsWith("file:")) {
+			return new File(path + "-wal");
+		}
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		update_stmt = conn.prepareStatement(update_str);
-		query_stmt = conn.prepareStatement(query_str);
-		query_all_stmt = conn.prepareStatement(query_all_str);
+		/*
+		 * A URI filename: drop the query and fragment, and an authority,
+		 * which SQLite only accepts empty or as localhost, then undo
+		 * the %HH escapes.
+		 */
+		String file = path.substring("file:".length()).split("[?#]", 2)[0];
 
-		insert_pizza_cheese_stmt = conn.prepareStatement(insert_pizza_cheese_str);
-		insert_pizza_topping_stmt = conn.prepareStatement(insert_pizza_topping_str);
-		query_pizza_cheese_stmt = conn.prepareStatement(query_pizza_cheese_str);
-		query_pizza_topping_stmt = conn.prepareStatement(query_pizza_topping_str);
-	}
+		if (file.startsWith("//")) {
+			int slash = file.indexOf('/', 2);
 
-	public void insert(Pizza pizza)
-		throws SQLException,
-		       SQLTimeoutException
-	{
-		insert_stmt.setString(1, pizza.getName());
-		insert_stmt.setInt(2, pizza.getCrust().getID());
-		insert_stmt.setInt(3, pizza.getSauce().getID());
+			file = slash < 0 ? "" : file.substring(slash);
+		}
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+		byte[] decoded = new byte[bytes.length];
+		int length = 0;
 
-		pizza.setID(db.lastInsertRowID());
+		for (int i = 0; i < bytes.length; i++) {
+			int high = i + 2 < bytes.length ? Character.digit(bytes[i + 1], 16) : -1;
+			int low = i + 2 < bytes.length ? Character.digit(bytes[i + 2], 16) : -1;
 
-		insertCheeses(pizza);
-		insertToppings(pizza);
-	}
+			if (bytes[i] == '%' && high >= 0 && low >= 0) {
+				decoded[length++] = (byte) (high << 4 | low);
+				i += 2;
 
-	public void update(Pizza pizza)
-		throws SQLException,
-		       SQLTimeoutException
-	{
-		update_stmt.setString(1, pizza.getName());
-		update_stmt.setInt(2, pizza.getCrust().getID());
-		update_stmt.setInt(3, pizza.getSauce().getID());
-		update_stmt.setInt(4, pizza.getID());
+			} else {
+				decoded[length++] = bytes[i];
+			}
+		}
 
-		update_stmt.executeUpdate();
-		update_stmt.clearParameters();
+		if (length == 0) {
+			return null;
+		}
 
-		insertCheeses(pizza);
-		insertToppings(pizza);
+		return new File(new String(decoded, 0, length, StandardCharsets.UTF_8) + "-wal");
 	}
 
-	public Pizza query(int pizza_id)
-		throws SQLException,
-		       SQLTimeoutException
+	void checkpoint()
 	{
-		Pizza pizza = new Pizza();
+		long wal_size = walFile().length();
+		String mode;
+
+		if (wal_size >= truncate_checkpoint_size) {
+			mode = "TRUNCATE";
+		} else if (wal_size >= passive_checkpoint_size) {
+			mode = "PASSIVE";
+		} else {
+			return;
+		}
 
-		query_stmt.setInt(1, pizza_id);
+		lockWriter();
 
-		ResultSet rset = query_stmt.executeQuery();
+		try {
+			Statement stmt = getConnection().createStatement();
+			stmt.execute("PRAGMA wal_checkpoint(" + mode + ");");
+			stmt.close();
 
-		pizza.setID(rset.getInt(1));
-		pizza.setName(rset.getString(2));
-		pizza.setCrust(crust_table.query(rset.getInt(3)));
-		pizza.setSauce(sauce_table.query(rset.getInt(4)));
-		pizza.setCheeses(queryCheeses(pizza.getID()));
-		pizza.setToppings(queryToppings(pizza.getID()));
+		} catch (SQLException e) {
+			System.err.println("Failed while checkpointing the database.");
+			System.err.println(e);
 
-		return pizza;
+		} finally {
+			write_lock.unlock();
+		}
 	}
 
-	public ArrayList<Pizza> queryAll()
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * Every acquireReader must be paired with a releaseReader in a
+	 * finally block.
+	 */
+	DatabaseConnection acquireReader()
+		throws SQLException
 	{
-		ArrayList<Pizza> list = new ArrayList<Pizza>();
+		long start = System.nanoTime();
 
-		ResultSet rset = query_all_stmt.executeQuery();
+		try {
+			if (readers == null) {
+				write_lock.lock();
+				return writer;
+			}
 
-		while (rset.next()) {
-			Pizza pizza = new Pizza();
+			return readers.take();
 
-			pizza.setID(rset.getInt(1));
-			pizza.setName(rset.getString(2));
-			pizza.setCrust(crust_table.query(rset.getInt(3)));
-			pizza.setSauce(sauce_table.query(rset.getInt(4)));
-			pizza.setCheeses(queryCheeses(pizza.getID()));
-			pizza.setToppings(queryToppings(pizza.getID()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection.", e);
 
-			list.add(pizza);
+		} finally {
+			metrics.recordConnectionWait(System.nanoTime() - start);
 		}
-
-		return list;
 	}
 
-	private void insertCheeses(Pizza pizza)
-		throws SQLException,
-		       SQLTimeoutException
+	void releaseReader(DatabaseConnection reader)
 	{
-		for (Cheese cheese: pizza.getCheeses()) {
-			insert_pizza_cheese_stmt.setInt(1, pizza.getID());
-			insert_pizza_cheese_stmt.setInt(2, cheese.getID());
-
-			insert_pizza_cheese_stmt.executeUpdate();
-			insert_pizza_cheese_stmt.clearParameters();
+		if (reader == writer) {
+			write_lock.unlock();
+		} else {
+			readers.add(reader);
 		}
 	}
 
-	private void insertToppings(Pizza pizza)
-		throws SQLException,
-		       SQLTimeoutException
+	/* write_lock.lock(), reporting how long it took to the metrics. */
+	private void lockWriter()
 	{
-		for (Topping topping: pizza.getToppings()) {
-			insert_pizza_topping_stmt.setInt(1, pizza.getID());
-			insert_pizza_topping_stmt.setInt(2, topping.getID());
+		long start = System.nanoTime();
 
-			insert_pizza_topping_stmt.executeUpdate();
-			insert_pizza_topping_stmt.clearParameters();
-		}
+		write_lock.lock();
+
+		metrics.recordConnectionWait(System.nanoTime() - start);
 	}
 
-	private ArrayList<Cheese> queryCheeses(int pizza_id)
+	/* Prepares str followed by an IN list of ids, with the ids bound. */
+	static PreparedStatement prepareBatch(Connection conn, String str, List<Integer> ids)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		ArrayList<Cheese> list = new ArrayList<Cheese>();
+		StringBuilder sql = new StringBuilder(str);
 
-		query_pizza_cheese_stmt.setInt(1, pizza_id);
+		sql.append('(');
 
-		ResultSet rset = query_pizza_cheese_stmt.executeQuery();
-
-		while (rset.next()) {
-			list.add(new Cheese(rset));
+		for (int i = 0; i < ids.size(); i++) {
+			sql.append(i == 0 ? "?" : ", ?");
 		}
 
-		query_pizza_cheese_stmt.clearParameters();
+		sql.append(");");
 
-		return list;
+		PreparedStatement stmt = conn.prepareStatement(sql.toString());
+
+		for (int i = 0; i < ids.size(); i++) {
+			stmt.setInt(i + 1, ids.get(i));
+		}
+
+		return stmt;
 	}
 
-	private ArrayList<Topping> queryToppings(int pizza_id)
+	static int generatedKey(PreparedStatement stmt)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		ArrayList<Topping> list = new ArrayList<Topping>();
-
-		query_pizza_topping_stmt.setInt(1, pizza_id);
+		ResultSet rset = stmt.getGeneratedKeys();
 
-		ResultSet rset = query_pizza_topping_stmt.executeQuery();
+		try {
+			rset.next();
+			return rset.getInt(1);
 
-		while (rset.next()) {
-			list.add(new Topping(rset));
+		} finally {
+			rset.close();
 		}
-
-		query_pizza_topping_stmt.clearParameters();
-
-		return list;
 	}
-}
 
-class AddressTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    address (address_id    INTEGER PRIMARY KEY," +
-		"             address_line1 TEXT NOT NULL," +
-		"             address_line2 TEXT," +
-		"             address_city  TEXT NOT NULL," +
-		"             address_state TEXT NOT NULL CHECK (address_state LIKE '__')," +
-		"             address_zip   TEXT NOT NULL CHECK (address_zip LIKE '_____')" +
-		"    );";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    address (address_line1," +
-		"             address_line2," +
-		"             address_city," +
-		"             address_state," +
-		"             address_zip)" +
-		"    VALUES (?, ?, ?, ?, ?);";
-
-	public static final String query_str =
-		"SELECT address_id," +
-		"       address_line1," +
-		"       address_line2," +
-		"       address_city," +
-		"       address_state," +
-		"       address_zip" +
-		"    FROM address" +
-		"    WHERE address_id = ?";
-
-	private Database db;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_stmt;
-
-	public AddressTable(Database db)
+	/*
+	 * Returns the declared type of a column, or null if there is no such
+	 * table or column.
+	 */
+	static String columnType(Connection conn, String table, String column)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.db = db;
+		Statement stmt = conn.createStatement();
+		ResultSet rset = stmt.executeQuery("PRAGMA table_info(" + table + ");");
+		String type = null;
 
-		Connection conn = db.getConnection();
+		while (rset.next()) {
+			if (rset.getString(2).compareTo(column) == 0) {
+				type = rset.getString(3);
+			}
+		}
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
+		rset.close();
+		stmt.close();
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_stmt = conn.prepareStatement(query_str);
+		return type;
 	}
 
-	public void insert(Address address)
+	/*
+	 * Runs the statements of a table rebuild in one transaction. Foreign
+	 * keys are off and legacy_alter_table is on while it runs, so
+	 * renaming the old table aside leaves other tables' references
+	 * pointing at the new one.
+	 */
+	static void migrate(Connection conn, String[] strs)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		insert_stmt.setString(1, address.getLine1());
-		insert_stmt.setString(2, address.getLine2());
-		insert_stmt.setString(3, address.getCity());
-		insert_stmt.setString(4, address.getState());
-		insert_stmt.setString(5, address.getZip());
-
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
-
-		address.setID(db.lastInsertRowID());
+		migrate(conn, strs, -1);
 	}
 
-	public Address query(int address_id)
+	/*
+	 * As above, and also sets PRAGMA user_version, unless user_version is
+	 * negative, in the same transaction. The rebuild and the new version
+	 * are then written together or not at all.
+	 */
+	static void migrate(Connection conn, String[] strs, int user_version)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		query_stmt.setInt(1, address_id);
+		Statement stmt = conn.createStatement();
 
-		ResultSet rset = query_stmt.executeQuery();
+		stmt.execute("PRAGMA foreign_keys = 0;");
+		stmt.execute("PRAGMA legacy_alter_table = 1;");
+		conn.setAutoCommit(false);
 
-		Address address = new Address(rset);
+		try {
+			for (String str: strs) {
+				stmt.execute(str);
+			}
 
-		query_stmt.clearParameters();
+			if (user_version >= 0) {
+				stmt.execute("PRAGMA user_version = " + user_version + ";");
+			}
+
+			conn.commit();
 
-		return address;
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+
+		} finally {
+			conn.setAutoCommit(true);
+			stmt.execute("PRAGMA legacy_alter_table = 0;");
+			stmt.execute("PRAGMA foreign_keys = 1;");
+			stmt.close();
+		}
 	}
-}
 
-class CardTable
-{
-	public static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    card (card_id              INTEGER  PRIMARY KEY," +
-		"          card_number          TEXT     NOT NULL CHECK (card_number LIKE '____-____-____-____')," +
-		"          card_name            TEXT     NOT NULL," +
-		"          card_type            TEXT     NOT NULL CHECK (card_type IN ('debit', 'credit'))," +
-		"          card_expiration_date TEXT     NOT NULL CHECK (card_expiration_date LIKE '__/__')," +
-		"          card_address         INTEGER  NOT NULL REFERENCES address(address_id)" +
-		"    );";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    card (card_number," +
-		"          card_name," +
-		"          card_type," +
-		"          card_expiration_date," +
-		"          card_address)" +
-		"    VALUES (?, ?, ?, ?, ?);";
-
-	private static final String query_str =
-		"SELECT card_id," +
-		"       card_number," +
-		"       card_name," +
-		"       card_type," +
-		"       card_expiration_date," +
-		"       card_address" +
-		"    FROM card" +
-		"    WHERE card_id = ?;";
-
-	private Database db;
-	private AddressTable address_table;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_stmt;
+	private void begin()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		getConnection().setAutoCommit(false);
+		inserted = new ArrayList<Object>();
+	}
 
-	public CardTable(Database db)
+	private void commit()
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.db = db;
-		address_table = db.getAddressTable();
+		getConnection().commit();
+		getConnection().setAutoCommit(true);
 
-		Connection conn = db.getConnection();
+		ArrayList<Ingredient> ingredients = new ArrayList<Ingredient>();
+		ArrayList<MenuIndex.Recipe> recipes = new ArrayList<MenuIndex.Recipe>();
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
+		for (Object obj: inserted) {
+			if (obj instanceof Ingredient) {
+				ingredients.add((Ingredient) obj);
+
+			} else if (obj instanceof Pizza) {
+				recipes.add(new MenuIndex.Recipe((Pizza) obj));
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_stmt = conn.prepareStatement(query_str);
+			} else if (obj instanceof MenuIndex.Recipe) {
+				recipes.add((MenuIndex.Recipe) obj);
+			}
+		}
+
+		if (!ingredients.isEmpty()) {
+			catalog = catalog.with(ingredients);
+
+			for (Ingredient ingredient: ingredients) {
+				ingredient_names.put(ingredient.getID(), ingredient.getName());
+			}
+		}
+
+		if (!recipes.isEmpty()) {
+			menu.addAll(recipes);
+		}
+
+		inserted = null;
 	}
 
-	public void insert(Card card)
-		throws SQLException,
-		       SQLTimeoutException
+	private void rollback()
 	{
-		insert_stmt.setString(1, card.getNumber());
-		insert_stmt.setString(2, card.getName());
-		insert_stmt.setString(3, card.getTypeStr());
-		insert_stmt.setString(4, card.getExpirationDate());
-		insert_stmt.setInt(5, card.getAddress().getID());
+		try {
+			getConnection().rollback();
+			getConnection().setAutoCommit(true);
+
+		} catch (SQLException e) {
+			System.err.println("Failed while rolling back a transaction.");
+			System.err.println(e);
+		}
+
+		if (inserted == null) {
+			return;
+		}
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		resetIDs(inserted);
 
-		card.setID(db.lastInsertRowID());
+		inserted = null;
 	}
 
-	public Card query(int card_id)
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * Rows for these objects were rolled back, so their IDs are reset to
+	 * 0 to let the caller retry with the same objects.
+	 */
+	private static void resetIDs(List<Object> objects)
 	{
-		Card card = new Card();
+		for (Object obj: objects) {
+			if (obj instanceof Ingredient) {
+				((Ingredient) obj).setID(0);
 
-		query_stmt.setInt(1, card_id);
+			} else if (obj instanceof Pizza) {
+				((Pizza) obj).setID(0);
 
-		ResultSet rset = query_stmt.executeQuery();
+			} else if (obj instanceof Address) {
+				((Address) obj).setID(0);
 
-		card.setID(rset.getInt(1));
-		card.setNumber(rset.getString(2));
-		card.setName(rset.getString(3));
-		card.setType(rset.getString(4));
-		card.setExpirationDate(rset.getString(5));
-		card.setAddress(address_table.query(rset.getInt(6)));
+			} else if (obj instanceof Card) {
+				((Card) obj).setID(0);
 
-		query_stmt.clearParameters();
+			} else if (obj instanceof Customer) {
+				((Customer) obj).setID(0);
 
-		return card;
+			} else if (obj instanceof Order) {
+				((Order) obj).setID(0);
+			}
+		}
 	}
-}
 
-class CustomerTable
-{
-	private static final String table_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    customer (customer_id INTEGER PRIMARY KEY," +
-		"              customer_name        TEXT           NOT NULL," +
-		"              customer_email       TEXT    UNIQUE NOT NULL CHECK (customer_email LIKE '%@%.%')," +
-		"              customer_password    TEXT           NOT NULL," +
-		"              customer_phone       TEXT           NOT NULL CHECK (customer_phone LIKE '(___) ___ - ____')," +
-		"              customer_notes       TEXT," +
-		"              customer_address     INTEGER        NOT NULL REFERENCES address(address_id)," +
-		"              customer_card        INTEGER                 REFERENCES card(card_id)" +
-		"    );";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    customer (customer_name," +
-		"              customer_email," +
-		"              customer_password," +
-		"              customer_phone," +
-		"              customer_notes," +
-		"              customer_address," +
-		"              customer_card)" +
-		"    VALUES (?, ?, ?, ?, ?, ?, ?);";
-
-	public static final String update_str =
-		"UPDATE customer" +
-		"    SET customer_name = ?," +
-		"        customer_email = ?," +
-		"        customer_password = ?," +
-		"        customer_phone = ?," +
-		"        customer_notes = ?," +
-		"        customer_address = ?," +
-		"        customer_card = ?" +
-		"    WHERE customer_id = ?;";
-
-	public static final String query_str =
-		"SELECT customer_id," +
-		"       customer_name," +
-		"       customer_email," +
-		"       customer_password," +
-		"       customer_phone," +
-		"       customer_notes," +
-		"       customer_address," +
-		"       customer_card" +
-		"    FROM customer" +
-		"    WHERE customer_id = ?;";
-
-	public static final String query_email_str =
-		"SELECT customer_id," +
-		"       customer_name," +
-		"       customer_email," +
-		"       customer_password," +
-		"       customer_phone," +
-		"       customer_notes," +
-		"       customer_address," +
-		"       customer_card" +
-		"    FROM customer" +
-		"    WHERE customer_email = ?;";
-
-	private Database db;
-	private AddressTable address_table;
-	private CardTable card_table;
-	private PreparedStatement insert_stmt;
-	private PreparedStatement update_stmt;
-	private PreparedStatement query_stmt;
-	private PreparedStatement query_email_stmt;
-
-	public CustomerTable(Database db)
+	private void storeCrust(Crust crust)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.db = db;
-		address_table = db.getAddressTable();
-		card_table = db.getCardTable();
+		if (crust.getID() != 0) {
+			return;
+		}
 
-		Connection conn = db.getConnection();
+		crust_table.insert(crust);
+		inserted.add(crust);
+	}
 
-		Statement stmt = conn.createStatement();
-		stmt.execute(table_schema);
+	private void storeSauce(Sauce sauce)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		if (sauce.getID() != 0) {
+			return;
+		}
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		update_stmt = conn.prepareStatement(update_str);
-		query_stmt = conn.prepareStatement(query_str);
-		query_email_stmt = conn.prepareStatement(query_email_str);
+		sauce_table.insert(sauce);
+		inserted.add(sauce);
 	}
 
-	public void insert(Customer customer)
+	private void storeCheese(Cheese cheese)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		insert_stmt.setString(1, customer.getName());
-		insert_stmt.setString(2, customer.getEmail());
-		insert_stmt.setString(3, customer.getPassword());
-		insert_stmt.setString(4, customer.getPhone());
-		insert_stmt.setString(5, customer.getNotes());
-		insert_stmt.setInt(6, customer.getAddress().getID());
-		insert_stmt.setInt(7, customer.getActiveCard().getID());
-
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		if (cheese.getID() != 0) {
+			return;
+		}
 
-		customer.setID(db.lastInsertRowID());
+		cheese_table.insert(cheese);
+		inserted.add(cheese);
 	}
 
-	public void update(Customer customer)
+	private void storeTopping(Topping topping)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		update_stmt.setString(1, customer.getName());
-		update_stmt.setString(2, customer.getEmail());
-		update_stmt.setString(3, customer.getPassword());
-		update_stmt.setString(4, customer.getPhone());
-		update_stmt.setString(5, customer.getNotes());
-		update_stmt.setInt(6, customer.getAddress().getID());
-		update_stmt.setInt(7, customer.getActiveCard().getID());
-		update_stmt.setInt(8, customer.getID());
+		if (topping.getID() != 0) {
+			return;
+		}
 
-		update_stmt.executeUpdate();
-		update_stmt.clearParameters();
+		topping_table.insert(topping);
+		inserted.add(topping);
 	}
 
-	public Customer query(int customer_id)
+	private void storePizza(Pizza pizza)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		Customer customer = new Customer();
+		if (pizza.getID() != 0) {
+			return;
+		}
+
+		storeCrust(pizza.getCrust());
+		storeSauce(pizza.getSauce());
 
-		query_stmt.setInt(1, customer_id);
+		for (Cheese cheese: pizza.getCheeses()) {
+			storeCheese(cheese);
+		}
 
-		ResultSet rset = query_stmt.executeQuery();
+		for (Topping topping: pizza.getToppings()) {
+			storeTopping(topping);
+		}
 
-		customer.setID(rset.getInt(1));
-		customer.setName(rset.getString(2));
-		customer.setEmail(rset.getString(3));
-		customer.setPassword(rset.getString(4));
-		customer.setPhone(rset.getString(5));
-		customer.setNotes(rset.getString(6));
-		customer.setAddress(address_table.query(rset.getInt(7)));
-		customer.setActiveCard(card_table.query(rset.getInt(8)));
+		/* A pizza with the same name and recipe is reused, not copied. */
+		int id = pizza_table.find(pizza);
 
-		query_stmt.clearParameters();
+		if (id != 0) {
+			pizza.setID(id);
+		} else {
+			pizza_table.insert(pizza);
+		}
 
-		return customer;
+		inserted.add(pizza);
 	}
 
-	public Customer queryEmail(String customer_email)
+	private void storeAddress(Address address)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		Customer customer = new Customer();
-
-		query_email_stmt.setString(1, customer_email);
+		if (address.getID() != 0) {
+			return;
+		}
 
-		ResultSet rset = query_email_stmt.executeQuery();
+		address_table.insert(address);
+		address_cache.invalidate(address.getID());
+		inserted.add(address);
+	}
 
-		customer.setID(rset.getInt(1));
-		customer.setName(rset.getString(2));
-		customer.setEmail(rset.getString(3));
-		customer.setPassword(rset.getString(4));
-		customer.setPhone(rset.getString(5));
-		customer.setNotes(rset.getString(6));
-		customer.setAddress(address_table.query(rset.getInt(7)));
-		customer.setActiveCard(card_table.query(rset.getInt(8)));
+	private void storeCard(Card card)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		if (card.getID() != 0) {
+			return;
+		}
 
-		query_email_stmt.clearParameters();
+		storeAddress(card.getAddress());
 
-		return customer;
+		card_table.insert(card);
+		card_cache.invalidate(card.getID());
+		inserted.add(card);
 	}
-}
-
-class OrdersTable
-{
-	private static final String orders_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    orders (order_id       INTEGER PRIMARY KEY," +
-		"            order_customer INTEGER NOT NULL REFERENCES customer(customer_id)," +
-		"            order_address  INTEGER NOT NULL REFERENCES address(address_id)," +
-		"            order_card     INTEGER NOT NULL REFERENCES card(card_id)," +
-		"            order_datetime TEXT    NOT NULL CHECK (order_datetime LIKE '____-__-__T__:__:__%')" +
-		"    );";
-
-	private static final String orders_pizza_schema =
-		"CREATE TABLE IF NOT EXISTS" +
-		"    order_line (order_id   INTEGER NOT NULL," +
-		"                pizza_id   INTEGER NOT NULL," +
-		"                pizza_size TEXT    NOT NULL CHECK (pizza_size IN ('small', 'medium', 'large'))," +
-		"                pizza_qty  INTEGER NOT NULL," +
-		"                pizza_cost REAL    NOT NULL," +
-		"                PRIMARY KEY (order_id, pizza_id, pizza_size)" +
-		"    );";
-
-	private static final String insert_str =
-		"INSERT INTO" +
-		"    orders (order_customer," +
-		"            order_address," +
-		"            order_card," +
-		"            order_datetime)" +
-		"    VALUES (?, ?, ?, ?);";
-
-	private static final String query_by_customer_str =
-		"SELECT order_id," +
-		"       order_customer," +
-		"       order_address," +
-		"       order_card," +
-		"       order_datetime" +
-		"    FROM orders" +
-		"    WHERE order_id = ?;";
-
-	private static final String insert_order_line_str =
-		"INSERT INTO" +
-		"    order_line (order_id," +
-		"                pizza_id," +
-		"                pizza_size," +
-		"                pizza_qty," +
-		"                pizza_cost)" +
-		"    VALUES (?, ?, ?, ?, ?);";
-
-	private static final String query_order_line_by_order_str =
-		"SELECT pizza_id," +
-		"       pizza_size," +
-		"       pizza_qty," +
-		"       pizza_cost" +
-		"    FROM order_line" +
-		"    WHERE order_id = ?;";
-
-	private Database db;
-	private PizzaTable pizza_table;
-	private AddressTable address_table;
-	private CardTable card_table;
-	private CustomerTable customer_table;
 
-	private PreparedStatement insert_stmt;
-	private PreparedStatement query_by_customer_stmt;
-	private PreparedStatement insert_order_line_stmt;
-	private PreparedStatement query_order_line_by_order_stmt;
+	/*
+	 * Customers loaded from the database carry a null password, as only
+	 * its hash is stored. A password set since then is new plain text and
+	 * always gets hashed; null means the stored hash stays.
+	 */
+	private static String hashPassword(Customer customer)
+	{
+		if (customer.getPassword() == null) {
+			return null;
+		}
 
-	private static SimpleDateFormat date_formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+		return PasswordHasher.encode(customer.getPassword());
+	}
 
-	public OrdersTable(Database db)
+	private void storeCustomer(Customer customer)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.db = db;
-		pizza_table = db.getPizzaTable();
-		address_table = db.getAddressTable();
-		card_table = db.getCardTable();
-		customer_table = db.getCustomerTable();
-
-		Connection conn = db.getConnection();
-
-		Statement stmt = conn.createStatement();
-		stmt.execute(orders_schema);
-		stmt.execute(orders_pizza_schema);
+		if (customer.getID() != 0) {
+			return;
+		}
 
-		insert_stmt = conn.prepareStatement(insert_str);
-		query_by_customer_stmt = conn.prepareStatement(query_by_customer_str);
-		insert_order_line_stmt = conn.prepareStatement(insert_order_line_str);
-		query_order_line_by_order_stmt = conn.prepareStatement(query_order_line_by_order_str);
+		storeCustomer(customer, hashPassword(customer));
 	}
 
-	public void insert(Order order)
+	/*
+	 * Hashing a password takes a while, so callers that can should hash
+	 * it before taking write_lock and pass it in here.
+	 */
+	private void storeCustomer(Customer customer, String password_hash)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		insert_stmt.setInt(1, order.getCustomer().getID());
-		insert_stmt.setInt(2, order.getAddress().getID());
-		insert_stmt.setInt(3, order.getCard().getID());
-		insert_stmt.setString(4, date_formatter.format(order.getDate()));
+		if (customer.getID() != 0) {
+			return;
+		}
 
-		insert_stmt.executeUpdate();
-		insert_stmt.clearParameters();
+		if (password_hash == null) {
+			throw new SQLException("A new customer needs a password.");
+		}
 
-		order.setID(db.lastInsertRowID());
+		storeAddress(customer.getAddress());
+		storeCard(customer.getActiveCard());
 
-		for (OrderLine line: order.getLines()) {
-			insertOrderLine(order.getID(), line);
-		}
+		customer_table.insert(customer, password_hash);
+		customer_cache.invalidate(customer.getID());
+		inserted.add(customer);
 	}
 
-	public ArrayList<Order> query(int customer_id)
+	private void storeOrder(Order order)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		ArrayList<Order> list = new ArrayList<Order>();
+		storeAddress(order.getAddress());
+		storeCard(order.getCard());
+		storeCustomer(order.getCustomer());
 
-		query_by_customer_stmt.setInt(1, customer_id);
+		for (OrderLine line: order.getLines()) {
+			storePizza(line.getPizza());
+		}
 
-		ResultSet rset = query_by_customer_stmt.executeQuery();
+		orders_table.insert(order);
+		inserted.add(order);
+	}
 
-		while (rset.next()) {
-			Order order = new Order();
+	public void insertCrust(Crust crust)
+	{
+		OperationTimer op = OperationTimer.start("insertCrust");
 
-			order.setID(rset.getInt(1));
-			order.setCustomer(customer_table.query(rset.getInt(2)));
-			order.setAddress(address_table.query(rset.getInt(3)));
-			order.setCard(card_table.query(rset.getInt(4)));
+		lockWriter();
 
-			try {
-				order.setDate(date_formatter.parse(rset.getString(5)));
-			} catch (ParseException e) {
-				System.err.println("unable to parse date for order " + order.getID());
-				order.setDate(Date.from(Instant.EPOCH));
-			}
+		try {
+			begin();
+			storeCrust(crust);
+			commit();
 
-			order.setLines(queryOrderLines(order.getID()));
+		} catch (SQLException e) {
+			op.fail();
+			rollback();
+			System.err.println("Failed to insert crust into database.");
+			System.err.println(e);
 
-			list.add(order);
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
+	}
 
-		query_by_customer_stmt.clearParameters();
-
-		return list;
+	public ArrayList<Crust> lookupAllCrusts()
+	{
+		return catalog.getCrusts();
 	}
 
-	private void insertOrderLine(int order_id, OrderLine line)
-		throws SQLException,
-		       SQLTimeoutException
+	public void insertSauce(Sauce sauce)
 	{
-		insert_order_line_stmt.setInt(1, order_id);
-		insert_order_line_stmt.setInt(2, line.getPizza().getID());
-		insert_order_line_stmt.setString(3, line.getSizeString());
-		insert_order_line_stmt.setInt(4, line.getQuantity());
-		insert_order_line_stmt.setDouble(5, line.getUnitCost());
+		OperationTimer op = OperationTimer.start("insertSauce");
+
+		lockWriter();
+
+		try {
+			begin();
+			storeSauce(sauce);
+			commit();
+
+		} catch (SQLException e) {
+			op.fail();
+			rollback();
+			System.err.println("Failed to insert sauce into database.");
+			System.err.println(e);
 
-		insert_order_line_stmt.executeUpdate();
-		insert_order_line_stmt.clearParameters();
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
+		}
 	}
 
-	private ArrayList<OrderLine> queryOrderLines(int order_id)
-		throws SQLException,
-		       SQLTimeoutException
+	public ArrayList<Sauce> lookupAllSauces()
 	{
-		ArrayList<OrderLine> list = new ArrayList<OrderLine>();
+		return catalog.getSauces();
+	}
 
-		query_order_line_by_order_stmt.setInt(1, order_id);
+	public void insertCheese(Cheese cheese)
+	{
+		OperationTimer op = OperationTimer.start("insertCheese");
 
-		ResultSet rset = query_order_line_by_order_stmt.executeQuery();
+		lockWriter();
 
-		while (rset.next()) {
-			OrderLine line = new OrderLine();
+		try {
+			begin();
+			storeCheese(cheese);
+			commit();
 
-			line.setPizza(pizza_table.query(rset.getInt(1)));
-			line.setSize(rset.getString(2));
-			line.setQuantity(rset.getInt(3));
-			line.setUnitCost(rset.getDouble(4));
+		} catch (SQLException e) {
+			op.fail();
+			rollback();
+			System.err.println("Failed to insert cheese into database.");
+			System.err.println(e);
 
-			list.add(line);
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
+	}
 
-		query_order_line_by_order_stmt.clearParameters();
-
-		return list;
+	public ArrayList<Cheese> lookupAllCheeses()
+	{
+		return catalog.getCheeses();
 	}
-}
 
-public class Database
-{
-	private String path;
-	private Connection conn;
-	private PreparedStatement last_insert_rowid_stmt;
+	public void insertTopping(Topping topping)
+	{
+		OperationTimer op = OperationTimer.start("insertTopping");
 
-	private IngredientTable ingredient_table;
-	private CrustTable crust_table;
-	private SauceTable sauce_table;
-	private CheeseTable cheese_table;
-	private ToppingTable topping_table;
-	private PizzaTable pizza_table;
-	private AddressTable address_table;
-	private CardTable card_table;
-	private CustomerTable customer_table;
-	private OrdersTable orders_table;
+		lockWriter();
 
-	public Database(String path)
-	{
-		this.path = path;
+		try {
+			begin();
+			storeTopping(topping);
+			commit();
+
+		} catch (SQLException e) {
+			op.fail();
+			rollback();
+			System.err.println("Failed to insert topping into database.");
+			System.err.println(e);
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
+		}
 	}
 
-	public Connection getConnection() { return conn; }
-	public IngredientTable getIngredientTable() { return ingredient_table; }
-	public CrustTable getCrustTable() { return crust_table; }
-	public SauceTable getSauceTable() { return sauce_table; }
-	public CheeseTable getCheeseTable() { return cheese_table; }
-	public ToppingTable getToppingTable() { return topping_table; }
-	public PizzaTable getPizzaTable() { return pizza_table; }
-	public AddressTable getAddressTable() { return address_table; }
-	public CardTable getCardTable() { return card_table; }
-	public CustomerTable getCustomerTable() { return customer_table; }
-	public OrdersTable getOrdersTable() { return orders_table; }
+	public ArrayList<Topping> lookupAllToppings()
+	{
+		return catalog.getToppings();
+	}
 
-	public void open()
+	/*
+	 * Adds a size after the existing ones and returns it, or null on
+	 * failure. Ingredients cost nothing in the new size until their
+	 * costs are set and passed to updateIngredient.
+	 */
+	public Pizza.Size insertSize(String name)
 	{
+		OperationTimer op = OperationTimer.start("insertSize");
+
+		lockWriter();
+
 		try {
-			conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+			reloadSizes(writer);
 
-			conn.createStatement().execute("PRAGMA foreign_keys = 1;");
+			int size_id = sizes.length;
 
-			last_insert_rowid_stmt = conn.prepareStatement("SELECT last_insert_rowid();");
+			size_table.insert(size_id, name);
+			reloadSizes(writer);
 
-			ingredient_table = new IngredientTable(this);
-			crust_table = new CrustTable(this);
-			sauce_table = new SauceTable(this);
-			cheese_table = new CheeseTable(this);
-			topping_table = new ToppingTable(this);
-			pizza_table = new PizzaTable(this);
-			address_table = new AddressTable(this);
-			card_table = new CardTable(this);
-			customer_table = new CustomerTable(this);
-			orders_table = new OrdersTable(this);
+			return sizes[size_id];
 
 		} catch (SQLException e) {
-			System.err.println("Failed while initializing the database.");
+			op.fail();
+			System.err.println("Failed to insert size into database.");
 			System.err.println(e);
-			System.err.println("Tell Patrick to fix his code.");
-			System.exit(1);
+			return null;
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public void close()
+	public ArrayList<Pizza.Size> lookupAllSizes()
 	{
-		orders_table = null;
-		customer_table = null;
-		card_table = null;
-		address_table = null;
-		pizza_table = null;
-		topping_table = null;
-		cheese_table = null;
-		sauce_table = null;
-		crust_table = null;
-		ingredient_table = null;
-		last_insert_rowid_stmt = null;
+		return new ArrayList<Pizza.Size>(Arrays.asList(sizes));
+	}
+
+	/*
+	 * One of this database's sizes by name, or null if there is no such
+	 * size. Names are only unique within a database, which is why
+	 * OrderLine takes a Pizza.Size and not a name.
+	 */
+	public Pizza.Size lookupSize(String name)
+	{
+		for (Pizza.Size size: sizes) {
+			if (size.getName().equals(name)) {
+				return size;
+			}
+		}
+
+		return null;
+	}
+
+	public void updateIngredient(Ingredient ingredient)
+	{
+		if (ingredient.getID() == 0) {
+			System.err.println("updateIngredient may not be called on a new ingredient.");
+			return;
+		}
+
+		OperationTimer op = OperationTimer.start("updateIngredient");
+
+		lockWriter();
 
 		try {
-			conn.close();
+			begin();
+			ingredient_table.update(ingredient);
+			inserted.add(ingredient);
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while closing the database.");
+			op.fail();
+			rollback();
+			System.err.println("Failed to update ingredient.");
 			System.err.println(e);
-		}
 
-		conn = null;
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
+		}
 	}
 
-	public boolean isInitted()
+	public void insertPizza(Pizza pizza)
 	{
-		int version = 0;
+		OperationTimer op = OperationTimer.start("insertPizza");
 
-		try {
-			PreparedStatement stmt = conn.prepareStatement("PRAGMA user_version;");
-			ResultSet rset = stmt.executeQuery();
+		lockWriter();
 
-			version = rset.getInt(1);
+		try {
+			begin();
+			storePizza(pizza);
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while getting user version.");
+			op.fail();
+			rollback();
+			System.err.println("Failed to insert pizza into database.");
 			System.err.println(e);
-			System.err.println("Tell Patrick to fix his code.");
-			System.exit(1);
-		}
 
-		return version != 0;
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
+		}
 	}
 
-	public void setInitted()
+	public ArrayList<Pizza> lookupAllPizzas()
 	{
+		OperationTimer op = OperationTimer.start("lookupAllPizzas");
+
+		DatabaseConnection reader = null;
+
 		try {
-			PreparedStatement stmt = conn.prepareStatement("PRAGMA user_version = 1;");
-			stmt.executeUpdate();
+			reader = acquireReader();
+
+			return reader.getPizzaTable().queryAll();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while setting user version.");
+			op.fail();
+			System.err.println("Failed while querying all pizzas.");
 			System.err.println(e);
-			System.err.println("Tell Patrick to fix his code.");
-			System.exit(1);
+
+			return new ArrayList<Pizza>();
+
+		} finally {
+			if (reader != null) {
+				releaseReader(reader);
+			}
+			op.finish(metrics);
 		}
 	}
 
-	public int lastInsertRowID()
-		throws SQLException,
-		       SQLTimeoutException
+	/*
+	 * Pizzas holding every ingredient in include and none in exclude,
+	 * such as "with mushrooms" or "no pork". Answered from the menu index
+	 * without touching the database; either list may be empty. An
+	 * ingredient that has not been stored yet is on no pizza.
+	 */
+	public ArrayList<Pizza> lookupPizzasByIngredients(Collection<? extends Ingredient> include,
+	                                                  Collection<? extends Ingredient> exclude)
 	{
-		return last_insert_rowid_stmt.executeQuery().getInt(1);
+		OperationTimer op = OperationTimer.start("lookupPizzasByIngredients");
+
+		try {
+			BitSet include_ids = new BitSet();
+			BitSet exclude_ids = new BitSet();
+
+			for (Ingredient ingredient: include) {
+				if (ingredient.getID() <= 0) {
+					return new ArrayList<Pizza>();
+				}
+
+				include_ids.set(ingredient.getID());
+			}
+
+			for (Ingredient ingredient: exclude) {
+				if (ingredient.getID() > 0) {
+					exclude_ids.set(ingredient.getID());
+				}
+			}
+
+			return menu.pizzas(menu.filter(include_ids, exclude_ids), catalog);
+
+		} finally {
+			op.finish(metrics);
+		}
 	}
 
-	public void insertCrust(Crust crust)
+	/*
+	 * Named pizzas whose names best match query, best first, for search
+	 * as you type; see NameIndex for how matches are ranked. Answered
+	 * from memory without touching the database.
+	 */
+	public ArrayList<Pizza> searchPizzas(String query, int limit)
 	{
-		if (crust.getID() != 0) {
-			return;
+		OperationTimer op = OperationTimer.start("searchPizzas");
+
+		try {
+			return menu.pizzas(menu.search(query, limit), catalog);
+
+		} finally {
+			op.finish(metrics);
 		}
+	}
+
+	/* As searchPizzas, over the names of ingredients of every kind. */
+	public ArrayList<Ingredient> searchIngredients(String query, int limit)
+	{
+		OperationTimer op = OperationTimer.start("searchIngredients");
 
 		try {
-			ingredient_table.insert(crust);
-			crust_table.insert(crust);
+			IngredientCatalog catalog = this.catalog;
+			ArrayList<Ingredient> list = new ArrayList<Ingredient>();
 
-		} catch (SQLException e) {
-			System.err.println("Failed to insert crust into database.");
-			System.err.println(e);
+			for (int id: ingredient_names.search(query, limit)) {
+				Ingredient ingredient = catalog.getIngredient(id);
+
+				if (ingredient != null) {
+					list.add(IngredientCatalog.copy(ingredient));
+				}
+			}
+
+			return list;
+
+		} finally {
+			op.finish(metrics);
 		}
 	}
 
-	public ArrayList<Crust> lookupAllCrusts()
+	public void insertAddress(Address address)
 	{
+		OperationTimer op = OperationTimer.start("insertAddress");
+
+		lockWriter();
+
 		try {
-			return crust_table.queryAll();
+			begin();
+			storeAddress(address);
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed to lookup all crusts.");
+			op.fail();
+			rollback();
+			System.err.println("Failed while inserting address.");
 			System.err.println(e);
 
-			return new ArrayList<Crust>();
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public void insertSauce(Sauce sauce)
+	public void insertCard(Card card)
 	{
-		if (sauce.getID() != 0) {
-			return;
-		}
+		OperationTimer op = OperationTimer.start("insertCard");
+
+		lockWriter();
 
 		try {
-			ingredient_table.insert(sauce);
-			sauce_table.insert(sauce);
+			begin();
+			storeCard(card);
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed to insert sauce into database.");
+			op.fail();
+			rollback();
+			System.err.println("Failed while inserting card.");
 			System.err.println(e);
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public ArrayList<Sauce> lookupAllSauces()
+	public void insertCustomer(Customer customer)
 	{
+		OperationTimer op = OperationTimer.start("insertCustomer");
+
+		String password_hash = hashPassword(customer);
+
+		lockWriter();
+
 		try {
-			return sauce_table.queryAll();
+			begin();
+			storeCustomer(customer, password_hash);
+			commit();
+			login_failures.remove(customer.getEmail());
 
 		} catch (SQLException e) {
-			System.err.println("Failed to lookup all sauces.");
+			op.fail();
+			rollback();
+			System.err.println("Failed while inserting customer.");
 			System.err.println(e);
 
-			return new ArrayList<Sauce>();
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public void insertCheese(Cheese cheese)
+	/* Leaves the password as it is unless setPassword was called. */
+	public void updateCustomer(Customer customer)
 	{
-		if (cheese.getID() != 0) {
+		if (customer.getID() == 0) {
+			System.err.println("updateCustomer may not be called on a new customer.");
 			return;
 		}
 
+		OperationTimer op = OperationTimer.start("updateCustomer");
+
+		String password_hash = hashPassword(customer);
+
+		lockWriter();
+
 		try {
-			ingredient_table.insert(cheese);
-			cheese_table.insert(cheese);
+			customer_table.update(customer, password_hash);
+			customer_cache.invalidate(customer.getID());
+			login_failures.remove(customer.getEmail());
 
 		} catch (SQLException e) {
-			System.err.println("Failed to insert cheese into database.");
+			op.fail();
+			System.err.println("Failed while updating customer.");
 			System.err.println(e);
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public ArrayList<Cheese> lookupAllCheeses()
+	/*
+	 * Checks the password against a slim read of the customer's ID and
+	 * hash, and only loads the whole customer once it matches. No
+	 * connection is held while hashing, and at most hash_threads hashes
+	 * run at once, so a flood of logins cannot starve order traffic of
+	 * connections or CPU.
+	 */
+	public Customer loginCustomer(String email, String password)
+		throws InvalidLoginException
 	{
+		OperationTimer op = OperationTimer.start("loginCustomer");
+
 		try {
-			return cheese_table.queryAll();
+			return authenticate(email, password);
 
-		} catch (SQLException e) {
-			System.err.println("Failed to lookup all cheeses.");
-			System.err.println(e);
+		} catch (InvalidLoginException e) {
+			op.fail();
+			throw e;
 
-			return new ArrayList<Cheese>();
+		} finally {
+			op.finish(metrics);
 		}
 	}
 
-	public void insertTopping(Topping topping)
+	private Customer authenticate(String email, String password)
+		throws InvalidLoginException
 	{
-		if (topping.getID() != 0) {
-			return;
+		if (login_failures.isLocked(email)) {
+			throw new InvalidLoginException(email, password);
 		}
 
+		Credential credential = null;
+		DatabaseConnection reader = null;
+
 		try {
-			ingredient_table.insert(topping);
-			topping_table.insert(topping);
+			reader = acquireReader();
+
+			credential = reader.getCustomerTable().queryCredential(email);
 
 		} catch (SQLException e) {
-			System.err.println("Failed to insert topping into database.");
+			System.err.println("Failed while logging in customer.");
 			System.err.println(e);
+
+			throw new InvalidLoginException(email, password);
+
+		} finally {
+			if (reader != null) {
+				releaseReader(reader);
+			}
 		}
-	}
 
-	public ArrayList<Topping> lookupAllToppings()
-	{
+		/*
+		 * An unknown email is checked against a dummy hash so it takes as
+		 * long to reject as a wrong password.
+		 */
+		boolean valid;
+
 		try {
-			return topping_table.queryAll();
+			hash_permits.acquire();
 
-		} catch (SQLException e) {
-			System.err.println("Failed to lookup all toppings.");
-			System.err.println(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvalidLoginException(email, password);
+		}
+
+		try {
+			valid = PasswordHasher.verify(password, credential == null ? dummy_hash : credential.hash)
+			        && credential != null;
 
-			return new ArrayList<Topping>();
+		} finally {
+			hash_permits.release();
 		}
-	}
 
-	public void insertPizza(Pizza pizza)
-	{
-		if (pizza.getID() != 0) {
-			return;
+		if (!valid) {
+			login_failures.add(email);
+			throw new InvalidLoginException(email, password);
 		}
 
-		try {
-			insertCrust(pizza.getCrust());
-			insertSauce(pizza.getSauce());
+		if (PasswordHasher.needsUpgrade(credential.hash)) {
+			upgradePassword(credential.customer_id, password);
+		}
 
-			for (Cheese cheese: pizza.getCheeses()) {
-				insertCheese(cheese);
-			}
+		reader = null;
 
-			for (Topping topping: pizza.getToppings()) {
-				insertTopping(topping);
-			}
+		try {
+			reader = acquireReader();
 
-			pizza_table.insert(pizza);
+			return reader.getCustomerTable().query(credential.customer_id);
 
 		} catch (SQLException e) {
-			System.err.println("Failed to insert pizza into database.");
+			System.err.println("Failed while logging in customer.");
 			System.err.println(e);
+
+			throw new InvalidLoginException(email, password);
+
+		} finally {
+			if (reader != null) {
+				releaseReader(reader);
+			}
 		}
 	}
 
-	public ArrayList<Pizza> lookupAllPizzas()
+	/*
+	 * Rewrites a plain or outdated password hash once the password is
+	 * known to be right. A failure here does not fail the login.
+	 */
+	private void upgradePassword(int customer_id, String password)
 	{
+		String password_hash = PasswordHasher.encode(password);
+
+		lockWriter();
+
 		try {
-			return pizza_table.queryAll();
+			customer_table.updatePassword(customer_id, password_hash);
+			customer_cache.invalidate(customer_id);
 
 		} catch (SQLException e) {
-			System.err.println("Failed while querying all pizzas.");
+			System.err.println("Failed while upgrading password hash.");
 			System.err.println(e);
 
-			return new ArrayList<Pizza>();
+		} finally {
+			write_lock.unlock();
 		}
 	}
 
-	public void insertAddress(Address address)
+	public void insertOrder(Order order)
 	{
-		if (address.getID() != 0) {
+		if (order.getID() != 0) {
 			return;
 		}
 
+		/* Set the date of the order to the current time. */
+		order.setDate(new Date());
+
+		OperationTimer op = OperationTimer.start("insertOrder");
+
+		/*
+		 * The whole order graph goes in as a single transaction, so a
+		 * failure part way through leaves no stray rows behind and the
+		 * order costs one commit instead of one per row.
+		 */
+		lockWriter();
+
 		try {
-			address_table.insert(address);
+			begin();
+			storeOrder(order);
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while inserting address.");
+			op.fail();
+			rollback();
+			System.err.println("Failed while inserting order.");
 			System.err.println(e);
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
 		}
 	}
 
-	public void insertCard(Card card)
+	/*
+	 * Queues an order to be committed together with others arriving
+	 * around the same time, and returns at once unless the queue is
+	 * full. The future completes only after the order's transaction has
+	 * committed, or exceptionally if the order could not be stored. It is
+	 * completed on the committer thread, so slow follow-up work belongs
+	 * in the *Async variants of its methods.
+	 */
+	public CompletableFuture<Order> submitOrder(Order order)
 	{
-		if (card.getID() != 0) {
-			return;
+		if (order.getID() != 0) {
+			return CompletableFuture.completedFuture(order);
 		}
 
-		try {
-			insertAddress(card.getAddress());
+		/* Set the date of the order to the current time. */
+		order.setDate(new Date());
 
-			card_table.insert(card);
+		OrderCommitter committer;
 
-		} catch (SQLException e) {
-			System.err.println("Failed while inserting address.");
-			System.err.println(e);
+		synchronized (this) {
+			if (writer == null || closing) {
+				return CompletableFuture.failedFuture(new IllegalStateException("Database is closed."));
+			}
+
+			if (this.committer == null) {
+				this.committer = new OrderCommitter(this);
+				this.committer.start();
+			}
+
+			committer = this.committer;
+		}
+
+		/* Only the wait for room in the queue; the commit is timed by commitGroup. */
+		OperationTimer op = OperationTimer.start("submitOrder");
+
+		try {
+			return committer.submit(order);
+
+		} finally {
+			op.finish(metrics);
 		}
 	}
 
-	public void insertCustomer(Customer customer)
+	/*
+	 * Stores a group of submitted orders in one transaction. Each order
+	 * gets a savepoint, so one that fails is undone and reported on its
+	 * own future without taking the rest of the group with it.
+	 */
+	void commitGroup(ArrayList<OrderCommitter.Pending> group)
 	{
-		if (customer.getID() != 0) {
-			return;
-		}
+		ArrayList<OrderCommitter.Pending> stored = new ArrayList<OrderCommitter.Pending>(group.size());
+		OperationTimer op = OperationTimer.start("commitGroup");
+
+		lockWriter();
 
 		try {
-			insertAddress(customer.getAddress());
-			insertCard(customer.getActiveCard());
+			begin();
+
+			for (OrderCommitter.Pending pending: group) {
+				int mark = inserted.size();
+				Savepoint savepoint = getConnection().setSavepoint();
+
+				try {
+					storeOrder(pending.order);
+					getConnection().releaseSavepoint(savepoint);
+					stored.add(pending);
+
+				} catch (SQLException | RuntimeException e) {
+					getConnection().rollback(savepoint);
+					getConnection().releaseSavepoint(savepoint);
+
+					List<Object> undone = inserted.subList(mark, inserted.size());
+
+					resetIDs(undone);
+					undone.clear();
 
-			customer_table.insert(customer);
+					pending.future.completeExceptionally(e);
+				}
+			}
+
+			commit();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while inserting customer.");
+			op.fail();
+			rollback();
+			System.err.println("Failed while committing orders.");
 			System.err.println(e);
+
+			for (OrderCommitter.Pending pending: stored) {
+				pending.future.completeExceptionally(e);
+			}
+
+			return;
+
+		} finally {
+			write_lock.unlock();
+			op.finish(metrics);
+		}
+
+		for (OrderCommitter.Pending pending: stored) {
+			pending.future.complete(pending.order);
 		}
 	}
 
-	public void updateCustomer(Customer customer)
+	/*
+	 * Imports orders with the dates they already carry, as when moving
+	 * history over from another store or replaying offline terminals. See
+	 * OrderImporter for how the rows are matched up. Orders are committed
+	 * import_batch at a time and the write lock is let go between batches;
+	 * if a batch fails it is rolled back and the import stops there.
+	 */
+	public ImportReport importOrders(Iterator<Order> orders)
 	{
-		if (customer.getID() == 0) {
-			System.err.println("updateCustomer may not be called on a new customer.");
-			return;
-		}
+		long start = System.nanoTime();
+		long count = 0;
+		boolean complete = false;
+		OrderImporter importer = null;
+
+		lockWriter();
 
 		try {
-			customer_table.update(customer);
+			importer = new OrderImporter(getConnection(), hash_threads);
 
 		} catch (SQLException e) {
-			System.err.println("Failed while updating customer.");
+			System.err.println("Failed while starting order import.");
 			System.err.println(e);
+
+		} finally {
+			write_lock.unlock();
+		}
+
+		while (importer != null) {
+			OperationTimer op = OperationTimer.start("importOrders");
+
+			lockWriter();
+
+			try {
+				begin();
+				importer.begin(catalog);
+
+				int n = 0;
+
+				while (n < import_batch && orders.hasNext()) {
+					importer.add(orders.next());
+					n++;
+				}
+
+				importer.flush();
+				inserted.addAll(importer.getRecipes());
+				commit();
+
+				count += n;
+
+				if (!orders.hasNext()) {
+					complete = true;
+					break;
+				}
+
+			} catch (SQLException e) {
+				op.fail();
+				importer.discard();
+				rollback();
+				System.err.println("Failed while importing orders.");
+				System.err.println(e);
+				break;
+
+			} finally {
+				write_lock.unlock();
+				op.finish(metrics);
+			}
 		}
+
+		if (importer != null) {
+			importer.close();
+		}
+
+		return new ImportReport(count, System.nanoTime() - start, complete);
 	}
 
-	public Customer loginCustomer(String email, String password)
-		throws InvalidLoginException
+	public ArrayList<Order> lookupOrdersByCustomer(Customer customer)
+	{
+		return lookupOrdersByCustomer(customer, Fetch.EAGER);
+	}
+
+	public ArrayList<Order> lookupOrdersByCustomer(Customer customer, Fetch fetch)
 	{
-		Customer customer = null;
+		if (customer.getID() == 0) {
+			System.err.println("Invalid customer in lookupOrdersByCustomer");
+			return new ArrayList<Order>();
+		}
+
+		OperationTimer op = OperationTimer.start("lookupOrdersByCustomer");
+
+		DatabaseConnection reader = null;
 
 		try {
-			customer = customer_table.queryEmail(email);
-			if (customer == null ||
-			    customer.getPassword().compareTo(password) != 0) {
-				throw new InvalidLoginException(email, password);
-			}
+			reader = acquireReader();
+
+			return reader.getOrdersTable().query(customer.getID(), LazyReferences.forFetch(this, fetch));
 
 		} catch (SQLException e) {
-			System.err.println("Failed while logging in customer.");
+			op.fail();
+			System.err.println("Failed while looking up orders.");
 			System.err.println(e);
+			return new ArrayList<Order>();
 
-			throw new InvalidLoginException(email, password);
+		} finally {
+			if (reader != null) {
+				releaseReader(reader);
+			}
+			op.finish(metrics);
 		}
+	}
 
-		return customer;
+	/*
+	 * One page of a customer's orders, newest first. after is null for
+	 * the first page, then the last order of the page before.
+	 */
+	public ArrayList<Order> lookupOrdersByCustomer(Customer customer, Order after, int limit)
+	{
+		return lookupOrdersByCustomer(customer, after, limit, Fetch.EAGER);
 	}
 
-	public void insertOrder(Order order)
+	public ArrayList<Order> lookupOrdersByCustomer(Customer customer, Order after, int limit, Fetch fetch)
 	{
-		if (order.getID() != 0) {
-			return;
+		if (customer.getID() == 0) {
+			System.err.println("Invalid customer in lookupOrdersByCustomer");
+			return new ArrayList<Order>();
 		}
 
+		OperationTimer op = OperationTimer.start("lookupOrdersByCustomer");
+
+		DatabaseConnection reader = null;
+
 		try {
-			insertAddress(order.getAddress());
-			insertCard(order.getCard());
-			insertCustomer(order.getCustomer());
+			reader = acquireReader();
+
+			return reader.getOrdersTable().queryPage(customer.getID(),
+			                                         after,
+			                                         limit,
+			                                         LazyReferences.forFetch(this, fetch));
 
-			for (OrderLine line: order.getLines()) {
-				insertPizza(line.getPizza());
+		} catch (SQLException e) {
+			op.fail();
+			System.err.println("Failed while looking up orders.");
+			System.err.println(e);
+			return new ArrayList<Order>();
+
+		} finally {
+			if (reader != null) {
+				releaseReader(reader);
 			}
+			op.finish(metrics);
+		}
+	}
+
+	/*
+	 * Every order in ID order, read one at a time so an export runs in
+	 * bounded memory however long the history. The stream holds a reader
+	 * until it is closed, so always use it in a try-with-resources block;
+	 * it may be closed from any thread. Without a reader pool it opens a
+	 * read-only connection of its own rather than share the writer. Only
+	 * in WAL mode can writes commit while that connection reads, and an
+	 * in-memory database cannot be streamed without readers at all.
+	 *
+	 * The operation is timed until the stream is closed, and counts the
+	 * statements run while rows are fetched.
+	 */
+	public Stream<Order> streamAllOrders()
+	{
+		OperationTimer op = OperationTimer.start("streamAllOrders");
+		DatabaseConnection reader = null;
+		final boolean pooled = readers != null;
+
+		try {
+			if (pooled) {
+				reader = acquireReader();
+
+			} else if (isMemory(path)) {
+				throw new SQLException("An in-memory database has no connection to stream from.");
 
-			/* Set the date of the order to the current time. */
-			order.setDate(new Date());
+			} else {
+				reader = new DatabaseConnection(this, connect(true));
+			}
 
-			orders_table.insert(order);
+			final DatabaseConnection held = reader;
+			final OrderCursor cursor = reader.getOrdersTable().openCursor();
+			final OperationTimer timer = op;
+
+			reader = null;
+			op.suspend();
+			op = null;
+
+			Iterator<Order> timed = new Iterator<Order>() {
+				public boolean hasNext()
+				{
+					timer.resume();
+
+					try {
+						return cursor.hasNext();
+
+					} catch (RuntimeException e) {
+						timer.fail();
+						throw e;
+
+					} finally {
+						timer.suspend();
+					}
+				}
+
+				public Order next()
+				{
+					timer.resume();
+
+					try {
+						return cursor.next();
+
+					} catch (RuntimeException e) {
+						timer.fail();
+						throw e;
+
+					} finally {
+						timer.suspend();
+					}
+				}
+			};
+
+			Spliterator<Order> split = Spliterators.spliteratorUnknownSize(
+				timed, Spliterator.ORDERED | Spliterator.NONNULL);
+
+			return StreamSupport.stream(split, false).onClose(new Runnable() {
+				public void run()
+				{
+					try {
+						cursor.close();
+
+						if (pooled) {
+							releaseReader(held);
+						} else {
+							closeQuietly(held);
+						}
+
+					} finally {
+						timer.finishSuspended(metrics);
+					}
+				}
+			});
 
 		} catch (SQLException e) {
-			System.err.println("Failed while inserting order.");
+			op.fail();
+			System.err.println("Failed while streaming orders.");
 			System.err.println(e);
+			return Stream.empty();
+
+		} finally {
+			if (reader != null) {
+				if (pooled) {
+					releaseReader(reader);
+				} else {
+					closeQuietly(reader);
+				}
+			}
+
+			if (op != null) {
+				op.finish(metrics);
+			}
 		}
 	}
 
-	public ArrayList<Order> lookupOrdersByCustomer(Customer customer)
+	private static void closeQuietly(DatabaseConnection conn)
 	{
-		if (customer.getID() == 0) {
-			System.err.println("Invalid customer in lookupOrdersByCustomer");
-			return new ArrayList<Order>();
-		}
-
 		try {
-			return orders_table.query(customer.getID());
+			conn.close();
 
 		} catch (SQLException e) {
-			System.err.println("Failed while inserting order.");
+			System.err.println("Failed to close order stream connection.");
 			System.err.println(e);
-			return new ArrayList<Order>();
 		}
 	}
 }
@@ -0,0 +1,204 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.HashMap;
+
+/*
+ * One SQLite connection together with the tables, and so the prepared
+ * statements, built on it. A DatabaseConnection may only be used by one
+ * thread at a time; Database hands them out.
+ */
+class DatabaseConnection
+{
+	private Database database;
+	private Connection conn;
+
+	private IngredientTable ingredient_table;
+	private CrustTable crust_table;
+	private SauceTable sauce_table;
+	private CheeseTable cheese_table;
+	private ToppingTable topping_table;
+	private SizeTable size_table;
+	private PizzaTable pizza_table;
+	private AddressTable address_table;
+	private CardTable card_table;
+	private CustomerTable customer_table;
+	private OrdersTable orders_table;
+
+	/*
+	 * Statements are prepared the first time they are used and kept for
+	 * the life of the connection, keyed by their SQL.
+	 */
+	private HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+	public DatabaseConnection(Database database, Connection conn)
+	{
+		this.database = database;
+		this.conn = conn;
+
+		ingredient_table = new IngredientTable(this);
+		crust_table = new CrustTable(this);
+		sauce_table = new SauceTable(this);
+		cheese_table = new CheeseTable(this);
+		topping_table = new ToppingTable(this);
+		size_table = new SizeTable(this);
+		pizza_table = new PizzaTable(this);
+		address_table = new AddressTable(this);
+		card_table = new CardTable(this);
+		customer_table = new CustomerTable(this);
+		orders_table = new OrdersTable(this);
+	}
+
+	public Connection getConnection() { return conn; }
+	public IngredientTable getIngredientTable() { return ingredient_table; }
+	public CrustTable getCrustTable() { return crust_table; }
+	public SauceTable getSauceTable() { return sauce_table; }
+	public CheeseTable getCheeseTable() { return cheese_table; }
+	public ToppingTable getToppingTable() { return topping_table; }
+	public SizeTable getSizeTable() { return size_table; }
+	public PizzaTable getPizzaTable() { return pizza_table; }
+	public AddressTable getAddressTable() { return address_table; }
+	public CardTable getCardTable() { return card_table; }
+	public CustomerTable getCustomerTable() { return customer_table; }
+	public OrdersTable getOrdersTable() { return orders_table; }
+	public ObjectCache<Address> getAddressCache() { return database.getAddressCache(); }
+	public ObjectCache<Card> getCardCache() { return database.getCardCache(); }
+	public ObjectCache<Customer> getCustomerCache() { return database.getCustomerCache(); }
+
+	public PreparedStatement prepare(String sql)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		return prepare(sql, Statement.NO_GENERATED_KEYS);
+	}
+
+	public PreparedStatement prepare(String sql, int generated_keys)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement stmt = statements.get(sql);
+
+		if (stmt == null) {
+			stmt = conn.prepareStatement(sql, generated_keys);
+			statements.put(sql, stmt);
+		}
+
+		return stmt;
+	}
+
+	/*
+	 * Ingredient lookups go through the catalog. A miss means another
+	 * process added the ingredient, so the catalog is reloaded once.
+	 */
+	public Crust getCrust(int crust_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Crust crust = database.getCatalog().getCrust(crust_id);
+
+		if (crust == null) {
+			crust = database.reloadCatalog(this).getCrust(crust_id);
+		}
+
+		if (crust == null) {
+			throw new SQLException("No crust with ID " + crust_id);
+		}
+
+		return crust;
+	}
+
+	public Sauce getSauce(int sauce_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Sauce sauce = database.getCatalog().getSauce(sauce_id);
+
+		if (sauce == null) {
+			sauce = database.reloadCatalog(this).getSauce(sauce_id);
+		}
+
+		if (sauce == null) {
+			throw new SQLException("No sauce with ID " + sauce_id);
+		}
+
+		return sauce;
+	}
+
+	public Cheese getCheese(int cheese_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Cheese cheese = database.getCatalog().getCheese(cheese_id);
+
+		if (cheese == null) {
+			cheese = database.reloadCatalog(this).getCheese(cheese_id);
+		}
+
+		if (cheese == null) {
+			throw new SQLException("No cheese with ID " + cheese_id);
+		}
+
+		return cheese;
+	}
+
+	/* Like the ingredients, a size this process has not seen reloads the sizes. */
+	public Pizza.Size getSize(int size_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Pizza.Size[] sizes = database.getSizes();
+
+		if (size_id >= sizes.length) {
+			database.reloadSizes(this);
+			sizes = database.getSizes();
+		}
+
+		if (size_id < 0 || size_id >= sizes.length) {
+			throw new SQLException("No size with ID " + size_id);
+		}
+
+		return sizes[size_id];
+	}
+
+	public Pizza.Size[] getSizes() { return database.getSizes(); }
+
+	public Topping getTopping(int topping_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Topping topping = database.getCatalog().getTopping(topping_id);
+
+		if (topping == null) {
+			topping = database.reloadCatalog(this).getTopping(topping_id);
+		}
+
+		if (topping == null) {
+			throw new SQLException("No topping with ID " + topping_id);
+		}
+
+		return topping;
+	}
+
+	public void close()
+		throws SQLException
+	{
+		orders_table = null;
+		customer_table = null;
+		card_table = null;
+		address_table = null;
+		pizza_table = null;
+		size_table = null;
+		topping_table = null;
+		cheese_table = null;
+		sauce_table = null;
+		crust_table = null;
+		ingredient_table = null;
+
+		statements.clear();
+
+		conn.close();
+		conn = null;
+	}
+}
@@ -0,0 +1,171 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The default MetricsRegistry: a latency histogram and statement counts
+ * per operation, a histogram of connection waits, and the hit rates of
+ * the object caches. A statements-per-call figure that grows with the
+ * size of the result is the mark of a query run once per row.
+ */
+public class DatabaseMetrics
+	implements MetricsRegistry,
+	           DatabaseMetricsMXBean
+{
+	public static class OperationStats
+	{
+		private LatencyHistogram latency = new LatencyHistogram();
+		private AtomicLong failures = new AtomicLong();
+		private AtomicLong statements = new AtomicLong();
+		private AtomicLong max_statements = new AtomicLong();
+
+		void record(long nanos, int statements, boolean failed)
+		{
+			latency.record(nanos);
+			this.statements.addAndGet(statements);
+
+			if (failed) {
+				failures.incrementAndGet();
+			}
+
+			long max = max_statements.get();
+
+			while (statements > max && !max_statements.compareAndSet(max, statements)) {
+				max = max_statements.get();
+			}
+		}
+
+		void reset()
+		{
+			latency.reset();
+			failures.set(0);
+			statements.set(0);
+			max_statements.set(0);
+		}
+
+		public LatencyHistogram getLatency() { return latency; }
+		public long getCount() { return latency.getCount(); }
+		public long getFailures() { return failures.get(); }
+		public long getStatements() { return statements.get(); }
+		public long getMaxStatements() { return max_statements.get(); }
+
+		public double getStatementsPerCall()
+		{
+			long n = latency.getCount();
+
+			return n == 0 ? 0 : (double) statements.get() / n;
+		}
+	}
+
+	/* A snapshot of an OperationStats, as JMX shows it. */
+	public static class OperationSummary
+	{
+		private long count;
+		private long failures;
+		private double mean_millis;
+		private double median_millis;
+		private double p99_millis;
+		private double p999_millis;
+		private double max_millis;
+		private double statements_per_call;
+		private long max_statements;
+
+		OperationSummary(OperationStats stats)
+		{
+			LatencyHistogram latency = stats.getLatency();
+
+			count = stats.getCount();
+			failures = stats.getFailures();
+			mean_millis = latency.getMeanNanos() / 1e6;
+			median_millis = latency.getValueAtPercentile(50) / 1e6;
+			p99_millis = latency.getValueAtPercentile(99) / 1e6;
+			p999_millis = latency.getValueAtPercentile(99.9) / 1e6;
+			max_millis = latency.getMaxNanos() / 1e6;
+			statements_per_call = stats.getStatementsPerCall();
+			max_statements = stats.getMaxStatements();
+		}
+
+		public long getCount() { return count; }
+		public long getFailures() { return failures; }
+		public double getMeanMillis() { return mean_millis; }
+		public double getMedianMillis() { return median_millis; }
+		public double getP99Millis() { return p99_millis; }
+		public double getP999Millis() { return p999_millis; }
+		public double getMaxMillis() { return max_millis; }
+		public double getStatementsPerCall() { return statements_per_call; }
+		public long getMaxStatements() { return max_statements; }
+	}
+
+	private ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+	private ConcurrentHashMap<String, ObjectCache<?>> caches = new ConcurrentHashMap<String, ObjectCache<?>>();
+	private LatencyHistogram connection_wait = new LatencyHistogram();
+
+	public void recordOperation(String operation, long nanos, int statements, boolean failed)
+	{
+		OperationStats stats = operations.get(operation);
+
+		if (stats == null) {
+			operations.putIfAbsent(operation, new OperationStats());
+			stats = operations.get(operation);
+		}
+
+		stats.record(nanos, statements, failed);
+	}
+
+	public void recordConnectionWait(long nanos)
+	{
+		connection_wait.record(nanos);
+	}
+
+	public void registerCache(String name, ObjectCache<?> cache)
+	{
+		caches.put(name, cache);
+	}
+
+	/* Null if the operation has not been called yet. */
+	public OperationStats getOperation(String operation) { return operations.get(operation); }
+	public LatencyHistogram getConnectionWait() { return connection_wait; }
+
+	public Map<String, OperationSummary> getOperations()
+	{
+		TreeMap<String, OperationSummary> summaries = new TreeMap<String, OperationSummary>();
+
+		for (Map.Entry<String, OperationStats> entry: operations.entrySet()) {
+			summaries.put(entry.getKey(), new OperationSummary(entry.getValue()));
+		}
+
+		return summaries;
+	}
+
+	/* Hits over lookups since the cache was created, or 0 before any. */
+	public Map<String, Double> getCacheHitRates()
+	{
+		TreeMap<String, Double> rates = new TreeMap<String, Double>();
+
+		for (Map.Entry<String, ObjectCache<?>> entry: caches.entrySet()) {
+			ObjectCache<?> cache = entry.getValue();
+			long hits = cache.getHits();
+			long lookups = hits + cache.getMisses();
+
+			rates.put(entry.getKey(), lookups == 0 ? 0.0 : (double) hits / lookups);
+		}
+
+		return rates;
+	}
+
+	public long getConnectionWaits() { return connection_wait.getCount(); }
+	public double getConnectionWaitMeanMillis() { return connection_wait.getMeanNanos() / 1e6; }
+	public double getConnectionWaitP99Millis() { return connection_wait.getValueAtPercentile(99) / 1e6; }
+	public double getConnectionWaitMaxMillis() { return connection_wait.getMaxNanos() / 1e6; }
+
+	/* Clears the latencies and counts. Cache hit rates are kept by the caches. */
+	public void reset()
+	{
+		for (OperationStats stats: operations.values()) {
+			stats.reset();
+		}
+
+		connection_wait.reset();
+	}
+}
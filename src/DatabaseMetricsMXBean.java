@@ -0,0 +1,19 @@
+import java.util.Map;
+
+/*
+ * The JMX view of DatabaseMetrics, registered by Database.open as
+ * pizzashop:type=Database with the file path and an instance number.
+ * Times are in milliseconds.
+ */
+public interface DatabaseMetricsMXBean
+{
+	Map<String, DatabaseMetrics.OperationSummary> getOperations();
+	Map<String, Double> getCacheHitRates();
+
+	long getConnectionWaits();
+	double getConnectionWaitMeanMillis();
+	double getConnectionWaitP99Millis();
+	double getConnectionWaitMaxMillis();
+
+	void reset();
+}
@@ -0,0 +1,316 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs Database calls for many concurrent sessions without a thread per
+ * session. Each call waits on a semaphore holding one permit per
+ * connection it could use, so no more calls run than there are
+ * connections, and the time spent waiting is recorded per operation.
+ *
+ * On Java 21 and later every call gets its own virtual thread, which
+ * costs almost nothing while it waits. Older JVMs fall back to a fixed
+ * pool of platform threads per kind of connection, sized to its permits,
+ * so waiting calls sit in the pool's queue rather than on a thread.
+ * Ingredient lookups and menu filters and searches are answered from
+ * memory on the caller's thread.
+ */
+public class DatabaseService
+	implements AutoCloseable
+{
+	public enum Operation
+	{
+		LOGIN_CUSTOMER,
+		INSERT_ORDER,
+		LOOKUP_ALL_PIZZAS,
+		LOOKUP_ORDERS_BY_CUSTOMER
+	}
+
+	/* How long calls waited for a connection before running. */
+	public static class QueueStats
+	{
+		private AtomicLong count = new AtomicLong();
+		private AtomicLong total_nanos = new AtomicLong();
+		private AtomicLong max_nanos = new AtomicLong();
+
+		void record(long nanos)
+		{
+			count.incrementAndGet();
+			total_nanos.addAndGet(nanos);
+
+			long max = max_nanos.get();
+
+			while (nanos > max && !max_nanos.compareAndSet(max, nanos)) {
+				max = max_nanos.get();
+			}
+		}
+
+		public long getCount() { return count.get(); }
+		public long getTotalNanos() { return total_nanos.get(); }
+		public long getMaxNanos() { return max_nanos.get(); }
+
+		public double getMeanNanos()
+		{
+			long n = count.get();
+
+			return n == 0 ? 0 : (double) total_nanos.get() / n;
+		}
+	}
+
+	/*
+	 * Calls needing the same kind of connection share a lane: the
+	 * semaphore guarding those connections and the executor the calls
+	 * run on.
+	 */
+	private static class Lane
+	{
+		Semaphore permits;
+		ExecutorService executor;
+
+		Lane(int permits, ExecutorService executor)
+		{
+			this.permits = new Semaphore(permits, true);
+			this.executor = executor;
+		}
+	}
+
+	private Database db;
+	private boolean virtual_threads;
+	private Lane read_lane;
+	private Lane write_lane;
+	private Lane login_lane;
+	private EnumMap<Operation, QueueStats> stats = new EnumMap<Operation, QueueStats>(Operation.class);
+
+	public DatabaseService(Database db)
+	{
+		this.db = db;
+
+		ExecutorService executor = newVirtualThreadExecutor();
+		virtual_threads = executor != null;
+
+		/*
+		 * All writes share the single writer connection. Without a reader
+		 * pool, reads go through the writer too and share its lane.
+		 */
+		write_lane = new Lane(1, virtual_threads ? executor : newPlatformExecutor(1));
+
+		if (db.getReaderCount() > 0) {
+			int readers = db.getReaderCount();
+
+			read_lane = new Lane(readers, virtual_threads ? executor : newPlatformExecutor(readers));
+		} else {
+			read_lane = write_lane;
+		}
+
+		/*
+		 * Logins spend most of their time hashing without a connection,
+		 * so they get a lane of their own rather than holding read
+		 * permits that order lookups are waiting for.
+		 */
+		int logins = Math.max(1, db.getReaderCount());
+
+		login_lane = new Lane(logins, virtual_threads ? executor : newPlatformExecutor(logins));
+
+		for (Operation operation: Operation.values()) {
+			stats.put(operation, new QueueStats());
+		}
+	}
+
+	public boolean usesVirtualThreads() { return virtual_threads; }
+	public QueueStats getQueueStats(Operation operation) { return stats.get(operation); }
+
+	public CompletableFuture<Customer> loginCustomer(final String email, final String password)
+	{
+		return run(Operation.LOGIN_CUSTOMER, login_lane, new Callable<Customer>() {
+			public Customer call()
+				throws InvalidLoginException
+			{
+				return db.loginCustomer(email, password);
+			}
+		});
+	}
+
+	/* Completes exceptionally if the order could not be stored. */
+	public CompletableFuture<Order> insertOrder(final Order order)
+	{
+		return run(Operation.INSERT_ORDER, write_lane, new Callable<Order>() {
+			public Order call()
+			{
+				db.insertOrder(order);
+
+				if (order.getID() == 0) {
+					throw new IllegalStateException("Failed while inserting order.");
+				}
+
+				return order;
+			}
+		});
+	}
+
+	public CompletableFuture<ArrayList<Crust>> lookupAllCrusts()
+	{
+		return CompletableFuture.completedFuture(db.lookupAllCrusts());
+	}
+
+	public CompletableFuture<ArrayList<Sauce>> lookupAllSauces()
+	{
+		return CompletableFuture.completedFuture(db.lookupAllSauces());
+	}
+
+	public CompletableFuture<ArrayList<Cheese>> lookupAllCheeses()
+	{
+		return CompletableFuture.completedFuture(db.lookupAllCheeses());
+	}
+
+	public CompletableFuture<ArrayList<Topping>> lookupAllToppings()
+	{
+		return CompletableFuture.completedFuture(db.lookupAllToppings());
+	}
+
+	public CompletableFuture<ArrayList<Pizza>> lookupAllPizzas()
+	{
+		return run(Operation.LOOKUP_ALL_PIZZAS, read_lane, new Callable<ArrayList<Pizza>>() {
+			public ArrayList<Pizza> call()
+			{
+				return db.lookupAllPizzas();
+			}
+		});
+	}
+
+	public CompletableFuture<ArrayList<Pizza>> lookupPizzasByIngredients(Collection<? extends Ingredient> include,
+	                                                                     Collection<? extends Ingredient> exclude)
+	{
+		return CompletableFuture.completedFuture(db.lookupPizzasByIngredients(include, exclude));
+	}
+
+	public CompletableFuture<ArrayList<Pizza>> searchPizzas(String query, int limit)
+	{
+		return CompletableFuture.completedFuture(db.searchPizzas(query, limit));
+	}
+
+	public CompletableFuture<ArrayList<Ingredient>> searchIngredients(String query, int limit)
+	{
+		return CompletableFuture.completedFuture(db.searchIngredients(query, limit));
+	}
+
+	public CompletableFuture<ArrayList<Order>> lookupOrdersByCustomer(final Customer customer)
+	{
+		return run(Operation.LOOKUP_ORDERS_BY_CUSTOMER, read_lane, new Callable<ArrayList<Order>>() {
+			public ArrayList<Order> call()
+			{
+				return db.lookupOrdersByCustomer(customer);
+			}
+		});
+	}
+
+	public CompletableFuture<ArrayList<Order>> lookupOrdersByCustomer(final Customer customer,
+	                                                                  final Order after,
+	                                                                  final int limit)
+	{
+		return run(Operation.LOOKUP_ORDERS_BY_CUSTOMER, read_lane, new Callable<ArrayList<Order>>() {
+			public ArrayList<Order> call()
+			{
+				return db.lookupOrdersByCustomer(customer, after, limit);
+			}
+		});
+	}
+
+	/*
+	 * Stops taking calls and waits for those already accepted to finish.
+	 * The Database itself is left open.
+	 */
+	public void close()
+	{
+		write_lane.executor.shutdown();
+		read_lane.executor.shutdown();
+		login_lane.executor.shutdown();
+
+		try {
+			write_lane.executor.awaitTermination(1, TimeUnit.MINUTES);
+			read_lane.executor.awaitTermination(1, TimeUnit.MINUTES);
+			login_lane.executor.awaitTermination(1, TimeUnit.MINUTES);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private <T> CompletableFuture<T> run(final Operation operation,
+	                                     final Lane lane,
+	                                     final Callable<T> call)
+	{
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final long submitted = System.nanoTime();
+
+		try {
+			lane.executor.execute(new Runnable() {
+				public void run()
+				{
+					try {
+						lane.permits.acquire();
+
+					} catch (InterruptedException e) {
+						future.completeExceptionally(e);
+						return;
+					}
+
+					stats.get(operation).record(System.nanoTime() - submitted);
+
+					try {
+						future.complete(call.call());
+
+					} catch (Exception e) {
+						future.completeExceptionally(e);
+
+					} finally {
+						lane.permits.release();
+					}
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/* Executors.newVirtualThreadPerTaskExecutor() if this JVM has it. */
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+			return (ExecutorService) method.invoke(null);
+
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static ExecutorService newPlatformExecutor(int threads)
+	{
+		final AtomicInteger count = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "database-service-" + count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+}
@@ -0,0 +1,36 @@
+public class ImportReport
+{
+	private long orders;
+	private long elapsed_nanos;
+	private boolean complete;
+
+	public ImportReport(long orders, long elapsed_nanos, boolean complete)
+	{
+		this.orders = orders;
+		this.elapsed_nanos = elapsed_nanos;
+		this.complete = complete;
+	}
+
+	/* Orders committed, which on failure excludes the batch that failed. */
+	public long getOrders() { return orders; }
+	public long getElapsedNanos() { return elapsed_nanos; }
+	public boolean isComplete() { return complete; }
+
+	public double getOrdersPerSecond()
+	{
+		if (elapsed_nanos == 0) {
+			return 0;
+		}
+
+		return orders * 1e9 / elapsed_nanos;
+	}
+
+	public String toString()
+	{
+		return String.format("%d orders in %.1f s (%.0f orders/s)%s",
+		                     orders,
+		                     elapsed_nanos / 1e9,
+		                     getOrdersPerSecond(),
+		                     complete ? "" : ", stopped early");
+	}
+}
@@ -1,72 +1,110 @@
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLTimeoutException;
+import java.util.Arrays;
 
 public class Ingredient
 {
 	private int id;
 	private String name;
-	private double small_cost;
-	private double medium_cost;
-	private double large_cost;
+
+	/*
+	 * Costs in cents, indexed by Pizza.Size ordinal. Sizes past the end
+	 * of the array, such as one added after this ingredient was read,
+	 * cost nothing until set.
+	 */
+	private long[] costs;
+
+	/*
+	 * Counts changes to this ingredient's costs or ID, which is what
+	 * Pizza checks its memoized costs and ingredient set against. Frozen
+	 * ingredients cannot change, so pizzas made only of those skip it.
+	 */
+	private volatile long edits;
+
+	/* Set on the shared entries of the ingredient catalog; see freeze. */
+	private volatile boolean frozen;
 
 	protected Ingredient()
 	{
-		this(0, "", 0, 0, 0);
+		this(0, "", new long[0]);
 	}
 
+	/* Reads the ID and name from columns 1 and 2; costs are set separately. */
 	protected Ingredient(ResultSet rset)
 		throws SQLException,
 		       SQLTimeoutException
 	{
-		this.id = rset.getInt(1);
-		this.name = rset.getString(2);
-		this.small_cost = rset.getDouble(3);
-		this.medium_cost = rset.getDouble(4);
-		this.large_cost = rset.getDouble(5);
+		this(rset.getInt(1), rset.getString(2), new long[0]);
 	}
 
 	protected Ingredient(int    id,
 	                     String name,
-	                     double small_cost,
-	                     double medium_cost,
-	                     double large_cost)
+	                     long   small_cost,
+	                     long   medium_cost,
+	                     long   large_cost)
+	{
+		this(id, name, new long[] { small_cost, medium_cost, large_cost });
+	}
+
+	protected Ingredient(int id, String name, long[] costs)
 	{
 		this.id = id;
 		this.name = name;
-		this.small_cost = small_cost;
-		this.medium_cost = medium_cost;
-		this.large_cost = large_cost;
+		this.costs = costs;
 	}
 
-	public void setID(int id) { this.id = id; }
-	public void setName(String name) { this.name = name; }
-	public void setSmallCost(double small_cost) { this.small_cost = small_cost; }
-	public void setMediumCost(double medium_cost) { this.medium_cost = medium_cost; }
-	public void setLargeCost(double large_cost) { this.large_cost = large_cost; }
+	public void setID(int id) { checkMutable(); this.id = id; edits++; }
+	public void setName(String name) { checkMutable(); this.name = name; }
+	public void setSmallCost(long small_cost) { setCost(Pizza.Size.SMALL, small_cost); }
+	public void setMediumCost(long medium_cost) { setCost(Pizza.Size.MEDIUM, medium_cost); }
+	public void setLargeCost(long large_cost) { setCost(Pizza.Size.LARGE, large_cost); }
 
 	public int getID() { return id; }
 	public String getName() { return name; }
-	public double getSmallCost() { return small_cost; }
-	public double getMediumCost() { return medium_cost; }
-	public double getLargeCost() { return large_cost; }
+	public long getSmallCost() { return getCost(Pizza.Size.SMALL); }
+	public long getMediumCost() { return getCost(Pizza.Size.MEDIUM); }
+	public long getLargeCost() { return getCost(Pizza.Size.LARGE); }
+
+	/* A copy of the costs, indexed by Pizza.Size ordinal. */
+	public long[] getCosts() { return costs.clone(); }
 
-	public double getCost(Pizza.Size size)
+	public long getCost(Pizza.Size size) { return getCost(size.ordinal()); }
+
+	long getCost(int ordinal)
 	{
-		switch (size) {
-		case SMALL:
-			return small_cost;
+		return ordinal < costs.length ? costs[ordinal] : 0;
+	}
 
-		case MEDIUM:
-			return medium_cost;
+	public void setCost(Pizza.Size size, long cost)
+	{
+		checkMutable();
 
-		case LARGE:
-			return large_cost;
+		int i = size.ordinal();
 
-		default:
-			System.err.println("Ingredient.getCost: Invalid pizza size");
+		if (i >= costs.length) {
+			costs = Arrays.copyOf(costs, i + 1);
 		}
 
-		return 0;
+		costs[i] = cost;
+		edits++;
+	}
+
+	long edits() { return edits; }
+
+	/*
+	 * Makes every setter throw from now on. The catalog freezes the
+	 * entries it shares between threads and pizzas; callers change a
+	 * copy, as handed out by Database.lookupAllCrusts and the like.
+	 */
+	void freeze() { frozen = true; }
+
+	public boolean isFrozen() { return frozen; }
+
+	private void checkMutable()
+	{
+		if (frozen) {
+			throw new UnsupportedOperationException("Ingredient " + name + " is shared and read-only; change a copy instead.");
+		}
 	}
 }
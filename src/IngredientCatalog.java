@@ -0,0 +1,180 @@
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+
+/*
+ * Every crust, sauce, cheese and topping, keyed by ingredient ID. A
+ * catalog is never modified once built: Database swaps in a new one when
+ * ingredients are inserted or updated, so readers on any thread can use
+ * whichever catalog they grabbed without locking. Its entries are frozen
+ * (see Ingredient.freeze) and are shared by the pizzas built from them;
+ * the lists it returns hold copies, which callers may change.
+ */
+class IngredientCatalog
+{
+	private TreeMap<Integer, Crust> crusts;
+	private TreeMap<Integer, Sauce> sauces;
+	private TreeMap<Integer, Cheese> cheeses;
+	private TreeMap<Integer, Topping> toppings;
+
+	private IngredientCatalog(TreeMap<Integer, Crust>   crusts,
+	                          TreeMap<Integer, Sauce>   sauces,
+	                          TreeMap<Integer, Cheese>  cheeses,
+	                          TreeMap<Integer, Topping> toppings)
+	{
+		this.crusts = crusts;
+		this.sauces = sauces;
+		this.cheeses = cheeses;
+		this.toppings = toppings;
+	}
+
+	public static IngredientCatalog load(DatabaseConnection db)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		TreeMap<Integer, Crust> crusts = new TreeMap<Integer, Crust>();
+		TreeMap<Integer, Sauce> sauces = new TreeMap<Integer, Sauce>();
+		TreeMap<Integer, Cheese> cheeses = new TreeMap<Integer, Cheese>();
+		TreeMap<Integer, Topping> toppings = new TreeMap<Integer, Topping>();
+
+		for (Crust crust: db.getCrustTable().queryAll()) {
+			crust.freeze();
+			crusts.put(crust.getID(), crust);
+		}
+
+		for (Sauce sauce: db.getSauceTable().queryAll()) {
+			sauce.freeze();
+			sauces.put(sauce.getID(), sauce);
+		}
+
+		for (Cheese cheese: db.getCheeseTable().queryAll()) {
+			cheese.freeze();
+			cheeses.put(cheese.getID(), cheese);
+		}
+
+		for (Topping topping: db.getToppingTable().queryAll()) {
+			topping.freeze();
+			toppings.put(topping.getID(), topping);
+		}
+
+		return new IngredientCatalog(crusts, sauces, cheeses, toppings);
+	}
+
+	public Crust getCrust(int id) { return crusts.get(id); }
+	public Sauce getSauce(int id) { return sauces.get(id); }
+	public Cheese getCheese(int id) { return cheeses.get(id); }
+	public Topping getTopping(int id) { return toppings.get(id); }
+
+	public ArrayList<Crust> getCrusts() { return copies(crusts.values()); }
+	public ArrayList<Sauce> getSauces() { return copies(sauces.values()); }
+	public ArrayList<Cheese> getCheeses() { return copies(cheeses.values()); }
+	public ArrayList<Topping> getToppings() { return copies(toppings.values()); }
+
+	/* Any kind of ingredient, or null. IDs are unique across kinds. */
+	public Ingredient getIngredient(int id)
+	{
+		Ingredient ingredient = crusts.get(id);
+
+		if (ingredient == null) {
+			ingredient = sauces.get(id);
+		}
+
+		if (ingredient == null) {
+			ingredient = cheeses.get(id);
+		}
+
+		if (ingredient == null) {
+			ingredient = toppings.get(id);
+		}
+
+		return ingredient;
+	}
+
+	/* A new index of every ingredient's name. */
+	public NameIndex names()
+	{
+		NameIndex names = new NameIndex();
+		ArrayList<Ingredient> all = new ArrayList<Ingredient>();
+
+		all.addAll(crusts.values());
+		all.addAll(sauces.values());
+		all.addAll(cheeses.values());
+		all.addAll(toppings.values());
+
+		for (Ingredient ingredient: all) {
+			names.put(ingredient.getID(), ingredient.getName());
+		}
+
+		return names;
+	}
+
+	/*
+	 * Returns a new catalog holding copies of the given ingredients in
+	 * place of any older entries with the same IDs.
+	 */
+	public IngredientCatalog with(ArrayList<Ingredient> changed)
+	{
+		TreeMap<Integer, Crust> crusts = new TreeMap<Integer, Crust>(this.crusts);
+		TreeMap<Integer, Sauce> sauces = new TreeMap<Integer, Sauce>(this.sauces);
+		TreeMap<Integer, Cheese> cheeses = new TreeMap<Integer, Cheese>(this.cheeses);
+		TreeMap<Integer, Topping> toppings = new TreeMap<Integer, Topping>(this.toppings);
+
+		for (Ingredient ing: changed) {
+			Ingredient entry = copy(ing);
+
+			entry.freeze();
+
+			if (entry instanceof Crust) {
+				crusts.put(entry.getID(), (Crust) entry);
+
+			} else if (entry instanceof Sauce) {
+				sauces.put(entry.getID(), (Sauce) entry);
+
+			} else if (entry instanceof Cheese) {
+				cheeses.put(entry.getID(), (Cheese) entry);
+
+			} else if (entry instanceof Topping) {
+				toppings.put(entry.getID(), (Topping) entry);
+			}
+		}
+
+		return new IngredientCatalog(crusts, sauces, cheeses, toppings);
+	}
+
+	/* An unfrozen copy of ing, of the same kind. */
+	public static Ingredient copy(Ingredient ing)
+	{
+		int id = ing.getID();
+		String name = ing.getName();
+		long[] costs = ing.getCosts();
+
+		if (ing instanceof Crust) {
+			return new Crust(id, name, costs);
+
+		} else if (ing instanceof Sauce) {
+			return new Sauce(id, name, costs);
+
+		} else if (ing instanceof Cheese) {
+			return new Cheese(id, name, costs);
+
+		} else if (ing instanceof Topping) {
+			return new Topping(id, name, costs);
+		}
+
+		throw new IllegalArgumentException("Unknown kind of ingredient: " + ing.getClass().getName());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Ingredient> ArrayList<T> copies(Collection<T> ingredients)
+	{
+		ArrayList<T> list = new ArrayList<T>(ingredients.size());
+
+		for (T ing: ingredients) {
+			list.add((T) copy(ing));
+		}
+
+		return list;
+	}
+}
@@ -0,0 +1,157 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+class IngredientTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    ingredient (ingredient_id          INTEGER PRIMARY KEY," +
+		"                ingredient_name        TEXT    UNIQUE NOT NULL," +
+		"                ingredient_small_cost  INTEGER        NOT NULL," +
+		"                ingredient_medium_cost INTEGER        NOT NULL," +
+		"                ingredient_large_cost  INTEGER        NOT NULL," +
+		"                CONSTRAINT ingredient_check_cost" +
+		"                    CHECK (ingredient_small_cost <= ingredient_medium_cost" +
+		"                    AND    ingredient_medium_cost <= ingredient_large_cost)" +
+		"    );";
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    ingredient (ingredient_kind," +
+		"                ingredient_name)" +
+		"    VALUES (?, ?);";
+
+	private static final String update_str =
+		"UPDATE ingredient" +
+		"    SET ingredient_name = ?" +
+		"    WHERE ingredient_id = ?;";
+
+	/* Written for every size on both insert and update. */
+	private static final String set_cost_str =
+		"INSERT OR REPLACE INTO" +
+		"    ingredient_cost (ingredient_id," +
+		"                     size_id," +
+		"                     ingredient_cost)" +
+		"    VALUES (?, ?, ?);";
+
+	/*
+	 * Costs used to be stored as REAL dollars and are now INTEGER cents.
+	 * The views over ingredient are dropped here and put back by the
+	 * ingredient type tables.
+	 */
+	private static final String[] migrate_cents_strs = {
+		"DROP VIEW IF EXISTS crust_view;",
+		"DROP VIEW IF EXISTS sauce_view;",
+		"DROP VIEW IF EXISTS cheese_view;",
+		"DROP VIEW IF EXISTS topping_view;",
+		"ALTER TABLE ingredient RENAME TO ingredient_dollars;",
+		table_schema,
+		"INSERT INTO" +
+		"    ingredient (ingredient_id," +
+		"                ingredient_name," +
+		"                ingredient_small_cost," +
+		"                ingredient_medium_cost," +
+		"                ingredient_large_cost)" +
+		"    SELECT ingredient_id," +
+		"           ingredient_name," +
+		"           CAST(ROUND(ingredient_small_cost * 100) AS INTEGER)," +
+		"           CAST(ROUND(ingredient_medium_cost * 100) AS INTEGER)," +
+		"           CAST(ROUND(ingredient_large_cost * 100) AS INTEGER)" +
+		"        FROM ingredient_dollars;",
+		"DROP TABLE ingredient_dollars;"
+	};
+
+	private DatabaseConnection db;
+
+	public IngredientTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second adds
+	 * ingredient_kind, and the third moves costs to ingredient_cost.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		if ("REAL".equals(Database.columnType(conn, "ingredient", "ingredient_small_cost"))) {
+			Database.migrate(conn, migrate_cents_strs);
+		}
+
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.close();
+	}
+
+	/* kind is one of the ingredient type tables' kind. */
+	public void insert(Ingredient ingredient, String kind)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+
+		insert_stmt.setString(1, kind);
+		insert_stmt.setString(2, ingredient.getName());
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		ingredient.setID(Database.generatedKey(insert_stmt));
+
+		setCosts(ingredient);
+	}
+
+	public void update(Ingredient ingredient)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement update_stmt = db.prepare(update_str);
+
+		update_stmt.setString(1, ingredient.getName());
+		update_stmt.setInt(2, ingredient.getID());
+
+		update_stmt.executeUpdate();
+		update_stmt.clearParameters();
+
+		setCosts(ingredient);
+	}
+
+	private void setCosts(Ingredient ingredient)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement set_cost_stmt = db.prepare(set_cost_str);
+
+		for (Pizza.Size size: db.getSizes()) {
+			set_cost_stmt.setInt(1, ingredient.getID());
+			set_cost_stmt.setInt(2, size.ordinal());
+			set_cost_stmt.setLong(3, ingredient.getCost(size));
+			set_cost_stmt.addBatch();
+		}
+
+		set_cost_stmt.executeBatch();
+		set_cost_stmt.clearParameters();
+	}
+
+	/*
+	 * Sets the ingredient's cost from columns 3 and 4, the size ID and
+	 * cost, of a row read by one of the ingredient type tables. The
+	 * columns are null for an ingredient with no costs.
+	 */
+	static void readCost(DatabaseConnection db, Ingredient ingredient, ResultSet rset)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		int size_id = rset.getInt(3);
+
+		if (!rset.wasNull()) {
+			ingredient.setCost(db.getSize(size_id), rset.getLong(4));
+		}
+	}
+}
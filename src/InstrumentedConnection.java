@@ -0,0 +1,64 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/*
+ * Wraps a connection so that the statements made by createStatement and
+ * prepareStatement are InstrumentedStatements. Anything else, such as
+ * the CallableStatement from prepareCall, is passed through as it is. The connection itself is a dynamic proxy,
+ * since it is called far less often than its statements. With a slow
+ * query log, the plan of each new prepared statement is checked as it
+ * is prepared.
+ */
+class InstrumentedConnection
+	implements InvocationHandler
+{
+	private Connection conn;
+	private SlowQueryLog log;
+
+	private InstrumentedConnection(Connection conn, SlowQueryLog log)
+	{
+		this.conn = conn;
+		this.log = log;
+	}
+
+	/* log may be null. */
+	static Connection wrap(Connection conn, SlowQueryLog log)
+	{
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+		                                           new Class<?>[] { Connection.class },
+		                                           new InstrumentedConnection(conn, log));
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args)
+		throws Throwable
+	{
+		Object result;
+
+		try {
+			result = method.invoke(conn, args);
+
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+		if (method.getName().equals("prepareStatement")) {
+			String sql = (String) args[0];
+
+			if (log != null) {
+				log.check(conn, sql);
+			}
+
+			return new InstrumentedPreparedStatement((PreparedStatement) result, sql, log);
+
+		} else if (method.getName().equals("createStatement")) {
+			return new InstrumentedStatement((Statement) result, log);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,163 @@
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+/*
+ * With a slow query log, the types of the parameters bound since the
+ * last execute are kept so a slow execute can be logged with them. For a
+ * batch they are those of its last row. The values are not kept.
+ */
+class InstrumentedPreparedStatement
+	extends InstrumentedStatement
+	implements PreparedStatement
+{
+	private PreparedStatement prepared;
+	private String sql;
+	private Object[] parameters;
+
+	InstrumentedPreparedStatement(PreparedStatement prepared, String sql, SlowQueryLog log)
+	{
+		super(prepared, log);
+
+		this.prepared = prepared;
+		this.sql = sql;
+	}
+
+	private void bind(int index, Object value)
+	{
+		if (log == null) {
+			return;
+		}
+
+		if (parameters == null || parameters.length < index) {
+			parameters = Arrays.copyOf(parameters == null ? new Object[0] : parameters, index);
+		}
+
+		parameters[index - 1] = value == null ? "null" : value.getClass().getSimpleName();
+	}
+
+	public void addBatch() throws SQLException { prepared.addBatch(); }
+	public void clearParameters() throws SQLException { prepared.clearParameters(); }
+
+	public int[] executeBatch()
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return prepared.executeBatch();
+
+		} finally {
+			executed(sql, parameters, start);
+		}
+	}
+
+	public boolean execute()
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return prepared.execute();
+
+		} finally {
+			executed(sql, parameters, start);
+		}
+	}
+
+	public ResultSet executeQuery()
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return prepared.executeQuery();
+
+		} finally {
+			executed(sql, parameters, start);
+		}
+	}
+
+	public int executeUpdate()
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return prepared.executeUpdate();
+
+		} finally {
+			executed(sql, parameters, start);
+		}
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException { return prepared.getMetaData(); }
+	public ParameterMetaData getParameterMetaData() throws SQLException { return prepared.getParameterMetaData(); }
+	public void setArray(int index, Array value) throws SQLException { bind(index, value); prepared.setArray(index, value); }
+	public void setAsciiStream(int index, InputStream value, int length) throws SQLException { bind(index, value); prepared.setAsciiStream(index, value, length); }
+	public void setAsciiStream(int index, InputStream value, long length) throws SQLException { bind(index, value); prepared.setAsciiStream(index, value, length); }
+	public void setAsciiStream(int index, InputStream value) throws SQLException { bind(index, value); prepared.setAsciiStream(index, value); }
+	public void setBigDecimal(int index, BigDecimal value) throws SQLException { bind(index, value); prepared.setBigDecimal(index, value); }
+	public void setBinaryStream(int index, InputStream value, int length) throws SQLException { bind(index, value); prepared.setBinaryStream(index, value, length); }
+	public void setBinaryStream(int index, InputStream value, long length) throws SQLException { bind(index, value); prepared.setBinaryStream(index, value, length); }
+	public void setBinaryStream(int index, InputStream value) throws SQLException { bind(index, value); prepared.setBinaryStream(index, value); }
+	public void setBlob(int index, InputStream value, long length) throws SQLException { bind(index, value); prepared.setBlob(index, value, length); }
+	public void setBlob(int index, InputStream value) throws SQLException { bind(index, value); prepared.setBlob(index, value); }
+	public void setBlob(int index, Blob value) throws SQLException { bind(index, value); prepared.setBlob(index, value); }
+	public void setBoolean(int index, boolean value) throws SQLException { bind(index, value); prepared.setBoolean(index, value); }
+	public void setByte(int index, byte value) throws SQLException { bind(index, value); prepared.setByte(index, value); }
+	public void setBytes(int index, byte[] value) throws SQLException { bind(index, value); prepared.setBytes(index, value); }
+	public void setCharacterStream(int index, Reader value, int length) throws SQLException { bind(index, value); prepared.setCharacterStream(index, value, length); }
+	public void setCharacterStream(int index, Reader value, long length) throws SQLException { bind(index, value); prepared.setCharacterStream(index, value, length); }
+	public void setCharacterStream(int index, Reader value) throws SQLException { bind(index, value); prepared.setCharacterStream(index, value); }
+	public void setClob(int index, Reader value, long length) throws SQLException { bind(index, value); prepared.setClob(index, value, length); }
+	public void setClob(int index, Reader value) throws SQLException { bind(index, value); prepared.setClob(index, value); }
+	public void setClob(int index, Clob value) throws SQLException { bind(index, value); prepared.setClob(index, value); }
+	public void setDate(int index, java.sql.Date value, Calendar calendar) throws SQLException { bind(index, value); prepared.setDate(index, value, calendar); }
+	public void setDate(int index, java.sql.Date value) throws SQLException { bind(index, value); prepared.setDate(index, value); }
+	public void setDouble(int index, double value) throws SQLException { bind(index, value); prepared.setDouble(index, value); }
+	public void setFloat(int index, float value) throws SQLException { bind(index, value); prepared.setFloat(index, value); }
+	public void setInt(int index, int value) throws SQLException { bind(index, value); prepared.setInt(index, value); }
+	public void setLong(int index, long value) throws SQLException { bind(index, value); prepared.setLong(index, value); }
+	public void setNCharacterStream(int index, Reader value, long length) throws SQLException { bind(index, value); prepared.setNCharacterStream(index, value, length); }
+	public void setNCharacterStream(int index, Reader value) throws SQLException { bind(index, value); prepared.setNCharacterStream(index, value); }
+	public void setNClob(int index, Reader value, long length) throws SQLException { bind(index, value); prepared.setNClob(index, value, length); }
+	public void setNClob(int index, Reader value) throws SQLException { bind(index, value); prepared.setNClob(index, value); }
+	public void setNClob(int index, NClob value) throws SQLException { bind(index, value); prepared.setNClob(index, value); }
+	public void setNString(int index, String value) throws SQLException { bind(index, value); prepared.setNString(index, value); }
+	public void setNull(int index, int sql_type, String type_name) throws SQLException { bind(index, null); prepared.setNull(index, sql_type, type_name); }
+	public void setNull(int index, int sql_type) throws SQLException { bind(index, null); prepared.setNull(index, sql_type); }
+	public void setObject(int index, Object value, int sql_type, int scale) throws SQLException { bind(index, value); prepared.setObject(index, value, sql_type, scale); }
+	public void setObject(int index, Object value, int sql_type) throws SQLException { bind(index, value); prepared.setObject(index, value, sql_type); }
+	public void setObject(int index, Object value) throws SQLException { bind(index, value); prepared.setObject(index, value); }
+	public void setRef(int index, Ref value) throws SQLException { bind(index, value); prepared.setRef(index, value); }
+	public void setRowId(int index, RowId value) throws SQLException { bind(index, value); prepared.setRowId(index, value); }
+	public void setSQLXML(int index, SQLXML value) throws SQLException { bind(index, value); prepared.setSQLXML(index, value); }
+	public void setShort(int index, short value) throws SQLException { bind(index, value); prepared.setShort(index, value); }
+	public void setString(int index, String value) throws SQLException { bind(index, value); prepared.setString(index, value); }
+	public void setTime(int index, Time value, Calendar calendar) throws SQLException { bind(index, value); prepared.setTime(index, value, calendar); }
+	public void setTime(int index, Time value) throws SQLException { bind(index, value); prepared.setTime(index, value); }
+	public void setTimestamp(int index, Timestamp value, Calendar calendar) throws SQLException { bind(index, value); prepared.setTimestamp(index, value, calendar); }
+	public void setTimestamp(int index, Timestamp value) throws SQLException { bind(index, value); prepared.setTimestamp(index, value); }
+	public void setURL(int index, URL value) throws SQLException { bind(index, value); prepared.setURL(index, value); }
+	@Deprecated
+	public void setUnicodeStream(int index, InputStream value, int length) throws SQLException { bind(index, value); prepared.setUnicodeStream(index, value, length); }
+}
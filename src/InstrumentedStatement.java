@@ -0,0 +1,204 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/*
+ * A Statement from an InstrumentedConnection. Each execute call is
+ * reported to OperationTimer, and timed for the slow query log if there
+ * is one; everything else goes straight through.
+ */
+class InstrumentedStatement
+	implements Statement
+{
+	private Statement stmt;
+	SlowQueryLog log;
+
+	InstrumentedStatement(Statement stmt, SlowQueryLog log)
+	{
+		this.stmt = stmt;
+		this.log = log;
+	}
+
+	/* Returns the start time to pass to executed. */
+	long executing()
+	{
+		OperationTimer.statementExecuted();
+
+		return log == null ? 0 : System.nanoTime();
+	}
+
+	void executed(String sql, Object[] parameters, long start)
+	{
+		if (log != null) {
+			log.executed(stmt, sql, parameters, System.nanoTime() - start);
+		}
+	}
+
+	public void addBatch(String sql) throws SQLException { stmt.addBatch(sql); }
+	public void cancel() throws SQLException { stmt.cancel(); }
+	public void clearBatch() throws SQLException { stmt.clearBatch(); }
+	public void clearWarnings() throws SQLException { stmt.clearWarnings(); }
+	public void close() throws SQLException { stmt.close(); }
+	public void closeOnCompletion() throws SQLException { stmt.closeOnCompletion(); }
+
+	public boolean execute(String sql, int[] column_indexes)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.execute(sql, column_indexes);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public boolean execute(String sql, String[] column_names)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.execute(sql, column_names);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public boolean execute(String sql, int auto_keys)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.execute(sql, auto_keys);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public boolean execute(String sql)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.execute(sql);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public int[] executeBatch()
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeBatch();
+
+		} finally {
+			executed("(batch)", null, start);
+		}
+	}
+
+	public ResultSet executeQuery(String sql)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeQuery(sql);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public int executeUpdate(String sql, int[] column_indexes)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeUpdate(sql, column_indexes);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public int executeUpdate(String sql, String[] column_names)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeUpdate(sql, column_names);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public int executeUpdate(String sql, int auto_keys)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeUpdate(sql, auto_keys);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public int executeUpdate(String sql)
+		throws SQLException
+	{
+		long start = executing();
+
+		try {
+			return stmt.executeUpdate(sql);
+
+		} finally {
+			executed(sql, null, start);
+		}
+	}
+
+	public Connection getConnection() throws SQLException { return stmt.getConnection(); }
+	public int getFetchDirection() throws SQLException { return stmt.getFetchDirection(); }
+	public int getFetchSize() throws SQLException { return stmt.getFetchSize(); }
+	public ResultSet getGeneratedKeys() throws SQLException { return stmt.getGeneratedKeys(); }
+	public int getMaxFieldSize() throws SQLException { return stmt.getMaxFieldSize(); }
+	public int getMaxRows() throws SQLException { return stmt.getMaxRows(); }
+	public boolean getMoreResults() throws SQLException { return stmt.getMoreResults(); }
+	public boolean getMoreResults(int current) throws SQLException { return stmt.getMoreResults(current); }
+	public int getQueryTimeout() throws SQLException { return stmt.getQueryTimeout(); }
+	public ResultSet getResultSet() throws SQLException { return stmt.getResultSet(); }
+	public int getResultSetConcurrency() throws SQLException { return stmt.getResultSetConcurrency(); }
+	public int getResultSetHoldability() throws SQLException { return stmt.getResultSetHoldability(); }
+	public int getResultSetType() throws SQLException { return stmt.getResultSetType(); }
+	public int getUpdateCount() throws SQLException { return stmt.getUpdateCount(); }
+	public SQLWarning getWarnings() throws SQLException { return stmt.getWarnings(); }
+	public boolean isCloseOnCompletion() throws SQLException { return stmt.isCloseOnCompletion(); }
+	public boolean isClosed() throws SQLException { return stmt.isClosed(); }
+	public boolean isPoolable() throws SQLException { return stmt.isPoolable(); }
+	public void setCursorName(String name) throws SQLException { stmt.setCursorName(name); }
+	public void setEscapeProcessing(boolean enable) throws SQLException { stmt.setEscapeProcessing(enable); }
+	public void setFetchDirection(int direction) throws SQLException { stmt.setFetchDirection(direction); }
+	public void setFetchSize(int rows) throws SQLException { stmt.setFetchSize(rows); }
+	public void setMaxFieldSize(int max) throws SQLException { stmt.setMaxFieldSize(max); }
+	public void setMaxRows(int max) throws SQLException { stmt.setMaxRows(max); }
+	public void setPoolable(boolean enable) throws SQLException { stmt.setPoolable(enable); }
+	public void setQueryTimeout(int seconds) throws SQLException { stmt.setQueryTimeout(seconds); }
+	public boolean isWrapperFor(Class<?> iface) throws SQLException { return stmt.isWrapperFor(iface); }
+	public <T> T unwrap(Class<T> iface) throws SQLException { return stmt.unwrap(iface); }
+}
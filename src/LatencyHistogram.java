@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A fixed-size histogram of nanosecond latencies in the style of
+ * HdrHistogram. Values below 2^sub_bucket_bits are counted exactly, and
+ * each power of two above that is split into 2^sub_bucket_bits equal
+ * buckets, so any value is reported within about 3% of what was
+ * recorded. Recording is a couple of atomic adds and never allocates.
+ */
+public class LatencyHistogram
+{
+	private static final int sub_bucket_bits = 5;
+	private static final int sub_buckets = 1 << sub_bucket_bits;
+	private static final int bucket_count = (64 - sub_bucket_bits) * sub_buckets;
+
+	private AtomicLongArray counts = new AtomicLongArray(bucket_count);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong total = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	public void record(long nanos)
+	{
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		counts.incrementAndGet(index(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long seen = max.get();
+
+		while (nanos > seen && !max.compareAndSet(seen, nanos)) {
+			seen = max.get();
+		}
+	}
+
+	public long getCount() { return count.get(); }
+	public long getTotalNanos() { return total.get(); }
+	public long getMaxNanos() { return max.get(); }
+
+	public double getMeanNanos()
+	{
+		long n = count.get();
+
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/*
+	 * The smallest recorded value that percentile percent of all values
+	 * are at or below, rounded up to the top of its bucket.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long n = count.get();
+
+		if (n == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(n * Math.min(100, percentile) / 100));
+		long seen = 0;
+
+		for (int i = 0; i < bucket_count; i++) {
+			seen += counts.get(i);
+
+			if (seen >= target) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < bucket_count; i++) {
+			counts.set(i, 0);
+		}
+
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	private static int index(long value)
+	{
+		if (value < sub_buckets) {
+			return (int) value;
+		}
+
+		int bit = 63 - Long.numberOfLeadingZeros(value);
+		int shift = bit - sub_bucket_bits;
+		int sub = (int) (value >>> shift) - sub_buckets;
+
+		return (shift + 1) * sub_buckets + sub;
+	}
+
+	private static long highestValue(int index)
+	{
+		if (index < sub_buckets) {
+			return index;
+		}
+
+		int shift = index / sub_buckets - 1;
+		long lowest = (long) (index % sub_buckets + sub_buckets) << shift;
+
+		return lowest + (1L << shift) - 1;
+	}
+}
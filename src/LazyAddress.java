@@ -0,0 +1,56 @@
+/*
+ * Stand-ins returned by a LAZY or BATCH lookup. Each knows only its ID
+ * until a getter or setter other than getID or setID is called, which
+ * copies its row in from LazyReferences first. After that it behaves as
+ * the plain object would.
+ */
+class LazyAddress
+	extends Address
+{
+	private LazyReferences refs;
+	private int row_id;
+	private volatile boolean loaded;
+
+	LazyAddress(LazyReferences refs, int id)
+	{
+		this.refs = refs;
+		this.row_id = id;
+
+		setID(id);
+	}
+
+	private void load()
+	{
+		if (loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+
+			Address row = refs.loadAddress(row_id);
+
+			super.setLine1(row.getLine1());
+			super.setLine2(row.getLine2());
+			super.setCity(row.getCity());
+			super.setState(row.getState());
+			super.setZip(row.getZip());
+
+			loaded = true;
+		}
+	}
+
+	public String getLine1() { load(); return super.getLine1(); }
+	public String getLine2() { load(); return super.getLine2(); }
+	public String getCity() { load(); return super.getCity(); }
+	public String getState() { load(); return super.getState(); }
+	public String getZip() { load(); return super.getZip(); }
+
+	public void setLine1(String line1) { load(); super.setLine1(line1); }
+	public void setLine2(String line2) { load(); super.setLine2(line2); }
+	public void setCity(String city) { load(); super.setCity(city); }
+	public void setState(String state) { load(); super.setState(state); }
+	public void setZip(String zip) { load(); super.setZip(zip); }
+}
@@ -0,0 +1,53 @@
+/* The Card stand-in; see LazyAddress. */
+class LazyCard
+	extends Card
+{
+	private LazyReferences refs;
+	private int row_id;
+	private volatile boolean loaded;
+
+	LazyCard(LazyReferences refs, int id)
+	{
+		this.refs = refs;
+		this.row_id = id;
+
+		setID(id);
+	}
+
+	private void load()
+	{
+		if (loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+
+			Card row = refs.loadCard(row_id);
+
+			super.setNumber(row.getNumber());
+			super.setName(row.getName());
+			super.setType(row.getType());
+			super.setExpirationDate(row.getExpirationDate());
+			super.setAddress(refs.address(row.getAddress().getID()));
+
+			loaded = true;
+		}
+	}
+
+	public String getNumber() { load(); return super.getNumber(); }
+	public String getName() { load(); return super.getName(); }
+	public Type getType() { load(); return super.getType(); }
+	public String getTypeStr() { load(); return super.getTypeStr(); }
+	public String getExpirationDate() { load(); return super.getExpirationDate(); }
+	public Address getAddress() { load(); return super.getAddress(); }
+
+	public void setNumber(String number) { load(); super.setNumber(number); }
+	public void setName(String name) { load(); super.setName(name); }
+	public void setType(Type type) { load(); super.setType(type); }
+	public void setType(String type) { load(); super.setType(type); }
+	public void setExpirationDate(String expiration_date) { load(); super.setExpirationDate(expiration_date); }
+	public void setAddress(Address address) { load(); super.setAddress(address); }
+}
@@ -0,0 +1,57 @@
+/* The Customer stand-in; see LazyAddress. */
+class LazyCustomer
+	extends Customer
+{
+	private LazyReferences refs;
+	private int row_id;
+	private volatile boolean loaded;
+
+	LazyCustomer(LazyReferences refs, int id)
+	{
+		this.refs = refs;
+		this.row_id = id;
+
+		setID(id);
+	}
+
+	private void load()
+	{
+		if (loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+
+			Customer row = refs.loadCustomer(row_id);
+
+			super.setName(row.getName());
+			super.setEmail(row.getEmail());
+			super.setPassword(row.getPassword());
+			super.setPhone(row.getPhone());
+			super.setNotes(row.getNotes());
+			super.setAddress(refs.address(row.getAddress().getID()));
+			super.setActiveCard(refs.card(row.getActiveCard().getID()));
+
+			loaded = true;
+		}
+	}
+
+	public String getName() { load(); return super.getName(); }
+	public String getEmail() { load(); return super.getEmail(); }
+	public String getPassword() { load(); return super.getPassword(); }
+	public String getPhone() { load(); return super.getPhone(); }
+	public String getNotes() { load(); return super.getNotes(); }
+	public Address getAddress() { load(); return super.getAddress(); }
+	public Card getActiveCard() { load(); return super.getActiveCard(); }
+
+	public void setName(String name) { load(); super.setName(name); }
+	public void setEmail(String email) { load(); super.setEmail(email); }
+	public void setPassword(String password) { load(); super.setPassword(password); }
+	public void setPhone(String phone) { load(); super.setPhone(phone); }
+	public void setNotes(String notes) { load(); super.setNotes(notes); }
+	public void setAddress(Address address) { load(); super.setAddress(address); }
+	public void setActiveCard(Card active_card) { load(); super.setActiveCard(active_card); }
+}
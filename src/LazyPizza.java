@@ -0,0 +1,57 @@
+import java.util.BitSet;
+import java.util.List;
+
+/* The Pizza stand-in; see LazyAddress. */
+class LazyPizza
+	extends Pizza
+{
+	private LazyReferences refs;
+	private int row_id;
+	private volatile boolean loaded;
+
+	LazyPizza(LazyReferences refs, int id)
+	{
+		this.refs = refs;
+		this.row_id = id;
+
+		setID(id);
+	}
+
+	private void load()
+	{
+		if (loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+
+			Pizza row = refs.loadPizza(row_id);
+
+			super.setName(row.getName());
+			super.setCrust(row.getCrust());
+			super.setSauce(row.getSauce());
+			super.setCheeses(row.getCheeses());
+			super.setToppings(row.getToppings());
+
+			loaded = true;
+		}
+	}
+
+	public String getName() { load(); return super.getName(); }
+	public Crust getCrust() { load(); return super.getCrust(); }
+	public Sauce getSauce() { load(); return super.getSauce(); }
+	public List<Cheese> getCheeses() { load(); return super.getCheeses(); }
+	public List<Topping> getToppings() { load(); return super.getToppings(); }
+	public long getCost(Size size) { load(); return super.getCost(size); }
+	public BitSet getIngredientSet() { load(); return super.getIngredientSet(); }
+	public boolean hasIngredient(Ingredient ingredient) { load(); return super.hasIngredient(ingredient); }
+
+	public void setName(String name) { load(); super.setName(name); }
+	public void setCrust(Crust crust) { load(); super.setCrust(crust); }
+	public void setSauce(Sauce sauce) { load(); super.setSauce(sauce); }
+	public void setCheeses(List<Cheese> cheeses) { load(); super.setCheeses(cheeses); }
+	public void setToppings(List<Topping> toppings) { load(); super.setToppings(toppings); }
+}
@@ -0,0 +1,222 @@
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/*
+ * The rows behind the stand-ins of one lookup. Every stand-in of a kind
+ * is expected here when it is made, and the first one used loads its
+ * row: alone, or when batching together with every other row of its kind
+ * still expected, by IN (...) queries on a reader connection of its own.
+ * Rows read once are kept, so stand-ins sharing an ID cost one read. A
+ * row that cannot be read throws an IllegalStateException from the
+ * getter or setter that needed it.
+ */
+class LazyReferences
+{
+	private abstract class Kind<T>
+	{
+		private String name;
+		private TreeSet<Integer> expected = new TreeSet<Integer>();
+		private HashMap<Integer, T> rows = new HashMap<Integer, T>();
+
+		Kind(String name)
+		{
+			this.name = name;
+		}
+
+		abstract HashMap<Integer, T> query(DatabaseConnection conn, Collection<Integer> ids)
+			throws SQLException,
+			       SQLTimeoutException;
+
+		/* Expects the references a newly read row holds. */
+		void expectReferences(T row) { }
+
+		synchronized void expect(int id)
+		{
+			if (!rows.containsKey(id)) {
+				expected.add(id);
+			}
+		}
+
+		T load(int id)
+		{
+			TreeSet<Integer> ids = new TreeSet<Integer>();
+
+			synchronized (this) {
+				T row = rows.get(id);
+
+				if (row != null) {
+					return row;
+				}
+
+				if (batch) {
+					ids.addAll(expected);
+				}
+
+				ids.add(id);
+			}
+
+			/*
+			 * The query runs outside this monitor: without a reader pool
+			 * it waits for the write lock, whose holder may itself be
+			 * using a stand-in from this lookup.
+			 */
+			HashMap<Integer, T> found;
+			DatabaseConnection reader = null;
+
+			try {
+				reader = database.acquireReader();
+				found = query(reader, ids);
+
+			} catch (SQLException e) {
+				throw new IllegalStateException("Failed while loading " + name + " " + id + ".", e);
+
+			} finally {
+				if (reader != null) {
+					database.releaseReader(reader);
+				}
+			}
+
+			synchronized (this) {
+				for (T row: found.values()) {
+					expectReferences(row);
+				}
+
+				for (Integer found_id: found.keySet()) {
+					if (!rows.containsKey(found_id)) {
+						rows.put(found_id, found.get(found_id));
+					}
+				}
+
+				expected.removeAll(ids);
+
+				T row = rows.get(id);
+
+				if (row == null) {
+					throw new IllegalStateException("No " + name + " with ID " + id + ".");
+				}
+
+				return row;
+			}
+		}
+	}
+
+	private Database database;
+	private boolean batch;
+
+	private Kind<Address> addresses = new Kind<Address>("address") {
+		HashMap<Integer, Address> query(DatabaseConnection conn, Collection<Integer> ids)
+			throws SQLException,
+			       SQLTimeoutException
+		{
+			return conn.getAddressTable().queryBatch(ids);
+		}
+	};
+
+	private Kind<Card> cards = new Kind<Card>("card") {
+		HashMap<Integer, Card> query(DatabaseConnection conn, Collection<Integer> ids)
+			throws SQLException,
+			       SQLTimeoutException
+		{
+			return conn.getCardTable().queryBatch(ids);
+		}
+
+		void expectReferences(Card card)
+		{
+			addresses.expect(card.getAddress().getID());
+		}
+	};
+
+	private Kind<Customer> customers = new Kind<Customer>("customer") {
+		HashMap<Integer, Customer> query(DatabaseConnection conn, Collection<Integer> ids)
+			throws SQLException,
+			       SQLTimeoutException
+		{
+			return conn.getCustomerTable().queryBatch(ids);
+		}
+
+		void expectReferences(Customer customer)
+		{
+			addresses.expect(customer.getAddress().getID());
+
+			if (customer.getActiveCard().getID() != 0) {
+				cards.expect(customer.getActiveCard().getID());
+			}
+		}
+	};
+
+	private Kind<Pizza> pizzas = new Kind<Pizza>("pizza") {
+		HashMap<Integer, Pizza> query(DatabaseConnection conn, Collection<Integer> ids)
+			throws SQLException,
+			       SQLTimeoutException
+		{
+			return conn.getPizzaTable().queryBatch(ids);
+		}
+	};
+
+	LazyReferences(Database database, boolean batch)
+	{
+		this.database = database;
+		this.batch = batch;
+	}
+
+	/* The references for a lookup made with fetch, or null for EAGER. */
+	static LazyReferences forFetch(Database database, Database.Fetch fetch)
+	{
+		switch (fetch) {
+		case LAZY:
+			return new LazyReferences(database, false);
+
+		case BATCH:
+			return new LazyReferences(database, true);
+
+		default:
+			return null;
+		}
+	}
+
+	Address address(int id)
+	{
+		addresses.expect(id);
+
+		return new LazyAddress(this, id);
+	}
+
+	/* A customer without a card has card ID 0, which is left unloaded. */
+	Card card(int id)
+	{
+		if (id == 0) {
+			return new Card();
+		}
+
+		cards.expect(id);
+
+		return new LazyCard(this, id);
+	}
+
+	Customer customer(int id)
+	{
+		customers.expect(id);
+
+		return new LazyCustomer(this, id);
+	}
+
+	Pizza pizza(int id)
+	{
+		pizzas.expect(id);
+
+		return new LazyPizza(this, id);
+	}
+
+	/*
+	 * The rows read for stand-ins. Cards and customers hold stub
+	 * addresses and cards carrying only their IDs, as the object caches
+	 * do, and their stand-ins make stand-ins of their own from those.
+	 */
+	Address loadAddress(int id) { return addresses.load(id); }
+	Card loadCard(int id) { return cards.load(id); }
+	Customer loadCustomer(int id) { return customers.load(id); }
+	Pizza loadPizza(int id) { return pizzas.load(id); }
+}
@@ -0,0 +1,76 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+ * Counts failed logins per email for a short time. Once an email has
+ * failed limit times, further attempts on it are turned away without a
+ * database read or another password hash until its entry expires, so
+ * guessing different passwords is throttled and not only exact repeats.
+ * A customer's entry goes when the customer is written, as a new
+ * password or email may make the next attempt valid.
+ */
+class LoginFailureCache
+{
+	private static final long ttl_ms = Long.getLong("pizzashop.auth.failure_ttl_ms", 30000);
+	private static final int limit = Integer.getInteger("pizzashop.auth.failure_limit", 5);
+	private static final int max_entries = Integer.getInteger("pizzashop.auth.failure_cache_size", 65536);
+
+	private static class Failures
+	{
+		int count;
+		long expires;
+
+		Failures(long expires) { this.expires = expires; }
+	}
+
+	/*
+	 * Insertion order is also expiry order, since an entry lives ttl_ms
+	 * from the first failure and later failures only add to its count.
+	 */
+	private LinkedHashMap<String, Failures> entries = new LinkedHashMap<String, Failures>();
+
+	public synchronized boolean isLocked(String email)
+	{
+		expire();
+
+		Failures failures = entries.get(email);
+
+		return failures != null && failures.count >= limit;
+	}
+
+	public synchronized void add(String email)
+	{
+		expire();
+
+		Failures failures = entries.get(email);
+
+		if (failures == null) {
+			failures = new Failures(System.currentTimeMillis() + ttl_ms);
+			entries.put(email, failures);
+		}
+
+		failures.count++;
+
+		Iterator<String> it = entries.keySet().iterator();
+
+		while (entries.size() > max_entries && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	public synchronized void remove(String email)
+	{
+		entries.remove(email);
+	}
+
+	private void expire()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<Failures> it = entries.values().iterator();
+
+		while (it.hasNext() && it.next().expires <= now) {
+			it.remove();
+		}
+	}
+}
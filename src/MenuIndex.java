@@ -0,0 +1,249 @@
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * An inverted index of the menu: for each ingredient ID, a bitmap of the
+ * IDs of the pizzas holding it. Pizza IDs are rowids handed out in
+ * order, so the bitmaps stay dense and a plain BitSet does the job that
+ * a compressed one would for sparse IDs. A filter is then one AND per
+ * required ingredient and one AND NOT per excluded one, over a few
+ * words per 64 pizzas, and never touches the database.
+ *
+ * Named pizzas are also indexed by name for searching.
+ *
+ * The index is loaded when the database is opened and pizzas committed
+ * after that are added by Database.commit(). Unlike IngredientCatalog it
+ * is updated in place, under a read-write lock, as copying every bitmap
+ * per new pizza would cost more than the filters it serves.
+ */
+class MenuIndex
+{
+	/*
+	 * A pizza by IDs only. Its ingredient set holds the crust and sauce
+	 * too, as in Pizza.getIngredientSet.
+	 */
+	static final class Recipe
+	{
+		final int id;
+		final String name;
+		final int crust_id;
+		final int sauce_id;
+		final BitSet ingredients;
+
+		Recipe(int id, String name, int crust_id, int sauce_id)
+		{
+			this.id = id;
+			this.name = name;
+			this.crust_id = crust_id;
+			this.sauce_id = sauce_id;
+			this.ingredients = new BitSet();
+
+			ingredients.set(crust_id);
+			ingredients.set(sauce_id);
+		}
+
+		Recipe(Pizza pizza)
+		{
+			this.id = pizza.getID();
+			this.name = pizza.getName();
+			this.crust_id = pizza.getCrust().getID();
+			this.sauce_id = pizza.getSauce().getID();
+			this.ingredients = pizza.getIngredientSet();
+		}
+	}
+
+	private HashMap<Integer, Recipe> recipes = new HashMap<Integer, Recipe>();
+	private HashMap<Integer, BitSet> pizzas_by_ingredient = new HashMap<Integer, BitSet>();
+	private BitSet pizzas = new BitSet();
+	private NameIndex names = new NameIndex();
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public static MenuIndex load(DatabaseConnection db)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		MenuIndex index = new MenuIndex();
+
+		index.addAll(db.getPizzaTable().queryRecipes());
+
+		return index;
+	}
+
+	/*
+	 * Adds the recipes, replacing any already indexed under the same
+	 * pizza IDs, so adding a pizza twice is harmless.
+	 */
+	public void addAll(Collection<Recipe> added)
+	{
+		lock.writeLock().lock();
+
+		try {
+			for (Recipe recipe: added) {
+				Recipe old = recipes.put(recipe.id, recipe);
+
+				if (old != null) {
+					for (int i = old.ingredients.nextSetBit(0); i >= 0; i = old.ingredients.nextSetBit(i + 1)) {
+						pizzas_by_ingredient.get(i).clear(old.id);
+					}
+				}
+
+				for (int i = recipe.ingredients.nextSetBit(0); i >= 0; i = recipe.ingredients.nextSetBit(i + 1)) {
+					BitSet with = pizzas_by_ingredient.get(i);
+
+					if (with == null) {
+						with = new BitSet();
+						pizzas_by_ingredient.put(i, with);
+					}
+
+					with.set(recipe.id);
+				}
+
+				pizzas.set(recipe.id);
+				names.put(recipe.id, recipe.name);
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * The IDs of the pizzas holding every ingredient in include and none
+	 * in exclude, as a set the caller owns.
+	 */
+	public BitSet filter(BitSet include, BitSet exclude)
+	{
+		lock.readLock().lock();
+
+		try {
+			BitSet result = null;
+
+			for (int i = include.nextSetBit(0); i >= 0; i = include.nextSetBit(i + 1)) {
+				BitSet with = pizzas_by_ingredient.get(i);
+
+				if (with == null) {
+					return new BitSet();
+				}
+
+				if (result == null) {
+					result = (BitSet) with.clone();
+				} else {
+					result.and(with);
+				}
+			}
+
+			if (result == null) {
+				result = (BitSet) pizzas.clone();
+			}
+
+			for (int i = exclude.nextSetBit(0); i >= 0 && !result.isEmpty(); i = exclude.nextSetBit(i + 1)) {
+				BitSet with = pizzas_by_ingredient.get(i);
+
+				if (with != null) {
+					result.andNot(with);
+				}
+			}
+
+			return result;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/* The IDs of the named pizzas best matching query; see NameIndex. */
+	public ArrayList<Integer> search(String query, int limit)
+	{
+		return names.search(query, limit);
+	}
+
+	/*
+	 * Builds the pizzas with the given IDs from the catalog, in ID order.
+	 * Cheeses and toppings are told apart by the catalog, and IDs it does
+	 * not know are left out.
+	 */
+	public ArrayList<Pizza> pizzas(BitSet ids, IngredientCatalog catalog)
+	{
+		ArrayList<Integer> list = new ArrayList<Integer>();
+
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			list.add(id);
+		}
+
+		return pizzas(list, catalog);
+	}
+
+	/* As above, in the order given. */
+	public ArrayList<Pizza> pizzas(List<Integer> ids, IngredientCatalog catalog)
+	{
+		ArrayList<Pizza> list = new ArrayList<Pizza>();
+
+		lock.readLock().lock();
+
+		try {
+			for (int id: ids) {
+				Recipe recipe = recipes.get(id);
+
+				if (recipe != null) {
+					list.add(build(recipe, catalog));
+				}
+			}
+
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return list;
+	}
+
+	private static Pizza build(Recipe recipe, IngredientCatalog catalog)
+	{
+		ArrayList<Cheese> cheeses = new ArrayList<Cheese>();
+		ArrayList<Topping> toppings = new ArrayList<Topping>();
+		BitSet ingredients = recipe.ingredients;
+
+		for (int i = ingredients.nextSetBit(0); i >= 0; i = ingredients.nextSetBit(i + 1)) {
+			if (i == recipe.crust_id || i == recipe.sauce_id) {
+				continue;
+			}
+
+			Cheese cheese = catalog.getCheese(i);
+
+			if (cheese != null) {
+				cheeses.add(cheese);
+				continue;
+			}
+
+			Topping topping = catalog.getTopping(i);
+
+			if (topping != null) {
+				toppings.add(topping);
+			}
+		}
+
+		return new Pizza(recipe.id,
+		                 recipe.name,
+		                 catalog.getCrust(recipe.crust_id),
+		                 catalog.getSauce(recipe.sauce_id),
+		                 cheeses,
+		                 toppings);
+	}
+
+	public int getCount()
+	{
+		lock.readLock().lock();
+
+		try {
+			return recipes.size();
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
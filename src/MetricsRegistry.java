@@ -0,0 +1,22 @@
+/*
+ * Where a Database reports what it is doing. DatabaseMetrics keeps the
+ * numbers in memory and publishes them over JMX; pass another
+ * implementation to Database.setMetricsRegistry to send them elsewhere.
+ * Methods are called on the threads doing the work, so they must be
+ * thread-safe and quick.
+ */
+public interface MetricsRegistry
+{
+	/*
+	 * One call of a public Database method: how long it took, how many
+	 * SQL statements it ran, and whether it failed. Calls made from
+	 * inside another call are counted as part of the outer one.
+	 */
+	void recordOperation(String operation, long nanos, int statements, boolean failed);
+
+	/* Time a call spent waiting for a reader connection or the writer. */
+	void recordConnectionWait(long nanos);
+
+	/* Called by Database.open for each of its object caches. */
+	void registerCache(String name, ObjectCache<?> cache);
+}
@@ -0,0 +1,145 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/*
+ * Buffers rows bound for one table and writes them with multi-row
+ * INSERTs, so SQLite parses and steps one statement per few hundred rows
+ * rather than one per row. Rows left over go out in one shorter
+ * statement on flush().
+ */
+class MultiRowInsert
+{
+	/* The bound parameter limit of SQLite builds before 3.32. */
+	private static final int max_params = 999;
+	private static final int max_rows = 200;
+
+	private Connection conn;
+	private String table;
+	private String[] columns;
+	private PreparedStatement full_stmt;
+	private Object[] values;
+	private int count;
+
+	public MultiRowInsert(Connection conn, String table, String... columns)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		this.conn = conn;
+		this.table = table;
+		this.columns = columns;
+
+		int rows = Math.min(max_rows, max_params / columns.length);
+
+		values = new Object[rows * columns.length];
+		full_stmt = conn.prepareStatement(insertStr(rows));
+	}
+
+	public void add(Object... row)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		System.arraycopy(row, 0, values, count, columns.length);
+		count += columns.length;
+
+		if (count == values.length) {
+			write(full_stmt);
+		}
+	}
+
+	public void flush()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		if (count == 0) {
+			return;
+		}
+
+		PreparedStatement stmt = conn.prepareStatement(insertStr(count / columns.length));
+
+		try {
+			write(stmt);
+
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/* Drops buffered rows, after the transaction they were meant for failed. */
+	public void discard()
+	{
+		for (int i = 0; i < count; i++) {
+			if (values[i] instanceof Future) {
+				((Future<?>) values[i]).cancel(false);
+			}
+		}
+
+		Arrays.fill(values, 0, count, null);
+		count = 0;
+	}
+
+	public void close()
+		throws SQLException
+	{
+		full_stmt.close();
+	}
+
+	/*
+	 * A value may be a Future, as for a password still being hashed, and
+	 * is waited for here so the caller can keep adding rows meanwhile.
+	 */
+	private void write(PreparedStatement stmt)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		for (int i = 0; i < count; i++) {
+			stmt.setObject(i + 1, resolve(values[i]));
+		}
+
+		stmt.executeUpdate();
+		stmt.clearParameters();
+
+		discard();
+	}
+
+	private static Object resolve(Object value)
+		throws SQLException
+	{
+		if (!(value instanceof Future)) {
+			return value;
+		}
+
+		try {
+			return ((Future<?>) value).get();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a value.", e);
+
+		} catch (ExecutionException e) {
+			throw new SQLException("Failed while computing a value.", e.getCause());
+		}
+	}
+
+	private String insertStr(int rows)
+	{
+		StringBuilder str = new StringBuilder("INSERT INTO ");
+
+		str.append(table).append(" (").append(String.join(", ", columns)).append(") VALUES ");
+
+		String[] marks = new String[columns.length];
+		Arrays.fill(marks, "?");
+
+		String row = "(" + String.join(", ", marks) + ")";
+
+		for (int i = 0; i < rows; i++) {
+			str.append(i == 0 ? "" : ", ").append(row);
+		}
+
+		return str.append(';').toString();
+	}
+}
@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Finds names as they are typed. Names are folded to lower case letters
+ * and digits split into words. A query matches a name when each of its
+ * words begins some word of the name, so "pep sa" finds "Pepperoni and
+ * Sausage". When that finds too few names, a query of three or more
+ * characters also matches names sharing at least half of its trigrams,
+ * which catches most typos.
+ *
+ * Matches are ranked: the exact name first, then names that start with
+ * the query, then word prefix matches, then trigram matches by the
+ * number of trigrams shared. Shorter names come first within a rank.
+ * Only the best matches are kept while searching, so a one letter query
+ * over thousands of names costs little more than a long one. Like
+ * MenuIndex it is updated in place under a read-write lock.
+ */
+class NameIndex
+{
+	private static class Match
+		implements Comparable<Match>
+	{
+		int id;
+		String key;
+		int rank;
+		int shared;
+
+		Match(int id, String key, int rank, int shared)
+		{
+			this.id = id;
+			this.key = key;
+			this.rank = rank;
+			this.shared = shared;
+		}
+
+		public int compareTo(Match other)
+		{
+			return compare(id, key, rank, shared, other);
+		}
+
+		/* Below zero if the match described comes before other. */
+		static int compare(int id, String key, int rank, int shared, Match other)
+		{
+			if (rank != other.rank) {
+				return other.rank - rank;
+			}
+
+			if (shared != other.shared) {
+				return other.shared - shared;
+			}
+
+			if (key.length() != other.key.length()) {
+				return key.length() - other.key.length();
+			}
+
+			int order = key.compareTo(other.key);
+
+			return order != 0 ? order : id - other.id;
+		}
+	}
+
+	/* Normalized names indexed by ID, which like pizza IDs are dense rowids. */
+	private String[] keys = new String[64];
+	private TreeMap<String, BitSet> words = new TreeMap<String, BitSet>();
+	private HashMap<String, BitSet> trigrams = new HashMap<String, BitSet>();
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/* Indexes name under id, replacing its old name. A blank name is dropped. */
+	public void put(int id, String name)
+	{
+		String key = normalize(name);
+
+		lock.writeLock().lock();
+
+		try {
+			if (id >= keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(id + 1, keys.length * 2));
+			}
+
+			String old = keys[id];
+
+			keys[id] = null;
+
+			if (old != null) {
+				for (String word: old.split(" ")) {
+					unpost(words, word, id);
+				}
+
+				for (String gram: trigrams(old)) {
+					unpost(trigrams, gram, id);
+				}
+			}
+
+			if (key.isEmpty()) {
+				return;
+			}
+
+			keys[id] = key;
+
+			for (String word: key.split(" ")) {
+				post(words, word, id);
+			}
+
+			for (String gram: trigrams(key)) {
+				post(trigrams, gram, id);
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/* The IDs of the best limit matches for query, best first. */
+	public ArrayList<Integer> search(String query, int limit)
+	{
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		String key = normalize(query);
+
+		if (key.isEmpty() || limit <= 0) {
+			return ids;
+		}
+
+		PriorityQueue<Match> best = new PriorityQueue<Match>(limit + 1, Collections.reverseOrder());
+
+		lock.readLock().lock();
+
+		try {
+			BitSet prefixed = null;
+
+			for (String term: key.split(" ")) {
+				BitSet any = new BitSet();
+
+				for (BitSet with: words.subMap(term, term + Character.MAX_VALUE).values()) {
+					any.or(with);
+				}
+
+				if (prefixed == null) {
+					prefixed = any;
+				} else {
+					prefixed.and(any);
+				}
+			}
+
+			for (int id = prefixed.nextSetBit(0); id >= 0; id = prefixed.nextSetBit(id + 1)) {
+				String name = keys[id];
+				int rank = name.equals(key) ? 3 : name.startsWith(key) ? 2 : 1;
+
+				keep(best, id, name, rank, 0, limit);
+			}
+
+			if (best.size() < limit && key.length() >= 3) {
+				ArrayList<String> grams = trigrams(key);
+				int[] shared = new int[keys.length];
+				BitSet seen = new BitSet();
+
+				for (String gram: grams) {
+					BitSet with = trigrams.get(gram);
+
+					if (with == null) {
+						continue;
+					}
+
+					for (int id = with.nextSetBit(0); id >= 0; id = with.nextSetBit(id + 1)) {
+						shared[id]++;
+					}
+
+					seen.or(with);
+				}
+
+				seen.andNot(prefixed);
+
+				for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+					if (shared[id] * 2 >= grams.size()) {
+						keep(best, id, keys[id], 0, shared[id], limit);
+					}
+				}
+			}
+
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		ArrayList<Match> matches = new ArrayList<Match>(best);
+
+		Collections.sort(matches);
+
+		for (Match match: matches) {
+			ids.add(match.id);
+		}
+
+		return ids;
+	}
+
+	/*
+	 * Adds a match to best, dropping the worst once there are more than
+	 * limit. A match that would be dropped at once is never built.
+	 */
+	private static void keep(PriorityQueue<Match> best, int id, String key, int rank, int shared, int limit)
+	{
+		if (best.size() >= limit && Match.compare(id, key, rank, shared, best.peek()) > 0) {
+			return;
+		}
+
+		best.add(new Match(id, key, rank, shared));
+
+		if (best.size() > limit) {
+			best.poll();
+		}
+	}
+
+	/* Lower case letters and digits, with single spaces between words. */
+	static String normalize(String name)
+	{
+		if (name == null) {
+			return "";
+		}
+
+		StringBuilder key = new StringBuilder(name.length());
+
+		for (int i = 0; i < name.length(); i++) {
+			char ch = Character.toLowerCase(name.charAt(i));
+
+			if (Character.isLetterOrDigit(ch)) {
+				key.append(ch);
+
+			} else if (key.length() > 0 && key.charAt(key.length() - 1) != ' ') {
+				key.append(' ');
+			}
+		}
+
+		int end = key.length();
+
+		if (end > 0 && key.charAt(end - 1) == ' ') {
+			key.setLength(end - 1);
+		}
+
+		return key.toString();
+	}
+
+	/*
+	 * The distinct trigrams of a key padded with two spaces in front and
+	 * one behind, so the start of a name counts for more than its end.
+	 */
+	private static ArrayList<String> trigrams(String key)
+	{
+		String padded = "  " + key + " ";
+		ArrayList<String> grams = new ArrayList<String>();
+		HashSet<String> seen = new HashSet<String>();
+
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			String gram = padded.substring(i, i + 3);
+
+			if (seen.add(gram)) {
+				grams.add(gram);
+			}
+		}
+
+		return grams;
+	}
+
+	private static void post(Map<String, BitSet> postings, String term, int id)
+	{
+		BitSet ids = postings.get(term);
+
+		if (ids == null) {
+			ids = new BitSet();
+			postings.put(term, ids);
+		}
+
+		ids.set(id);
+	}
+
+	private static void unpost(Map<String, BitSet> postings, String term, int id)
+	{
+		BitSet ids = postings.get(term);
+
+		if (ids == null) {
+			return;
+		}
+
+		ids.clear(id);
+
+		if (ids.isEmpty()) {
+			postings.remove(term);
+		}
+	}
+}
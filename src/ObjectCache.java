@@ -0,0 +1,110 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * A least-recently-used cache of rows keyed by ID, bounded by an estimate
+ * of the memory its entries use rather than by their number.
+ *
+ * A lookup that misses must call stamp() before going to the database
+ * and pass the stamp back to put(). Any invalidate() in between bumps the
+ * stamp, and the possibly stale row is then dropped instead of cached.
+ */
+public class ObjectCache<V>
+{
+	private static class Entry<V>
+	{
+		V value;
+		long weight;
+
+		Entry(V value, long weight)
+		{
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private LinkedHashMap<Integer, Entry<V>> entries;
+	private long budget;
+	private long weight;
+	private long stamp;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public ObjectCache(long budget)
+	{
+		this.entries = new LinkedHashMap<Integer, Entry<V>>(16, 0.75f, true);
+		this.budget = budget;
+	}
+
+	public synchronized V get(int id)
+	{
+		Entry<V> entry = entries.get(id);
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return entry.value;
+	}
+
+	public synchronized long stamp() { return stamp; }
+
+	public synchronized void put(int id, V value, long weight, long stamp)
+	{
+		if (stamp != this.stamp || weight > budget) {
+			return;
+		}
+
+		Entry<V> old = entries.put(id, new Entry<V>(value, weight));
+
+		if (old != null) {
+			this.weight -= old.weight;
+		}
+
+		this.weight += weight;
+
+		Iterator<Map.Entry<Integer, Entry<V>>> it = entries.entrySet().iterator();
+
+		while (this.weight > budget && it.hasNext()) {
+			this.weight -= it.next().getValue().weight;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void invalidate(int id)
+	{
+		stamp++;
+
+		Entry<V> entry = entries.remove(id);
+
+		if (entry != null) {
+			weight -= entry.weight;
+		}
+	}
+
+	public synchronized void clear()
+	{
+		stamp++;
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+	public synchronized long getEvictions() { return evictions; }
+	public synchronized int getCount() { return entries.size(); }
+	public synchronized long getWeight() { return weight; }
+	public long getBudget() { return budget; }
+
+	/* Rough heap cost of a cached string, used when weighing entries. */
+	public static long weigh(String str)
+	{
+		return str == null ? 0 : 40 + 2 * str.length();
+	}
+}
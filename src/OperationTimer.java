@@ -0,0 +1,89 @@
+/*
+ * The public Database call running on the current thread. Calls made
+ * from inside it are folded into it, and every statement run through a
+ * InstrumentedStatement on this thread is charged to it. Each start must be
+ * paired with a finish in a finally block.
+ */
+final class OperationTimer
+{
+	private static final ThreadLocal<OperationTimer> current = new ThreadLocal<OperationTimer>();
+
+	private String name;
+	private long start;
+	private OperationTimer outer;
+	private OperationTimer root;
+	private int statements;
+	private boolean failed;
+
+	private OperationTimer(String name, OperationTimer outer)
+	{
+		this.name = name;
+		this.outer = outer;
+		this.root = outer == null ? this : outer.root;
+		this.start = System.nanoTime();
+	}
+
+	static OperationTimer start(String name)
+	{
+		OperationTimer timer = new OperationTimer(name, current.get());
+
+		current.set(timer);
+
+		return timer;
+	}
+
+	static void statementExecuted()
+	{
+		OperationTimer timer = current.get();
+
+		if (timer != null) {
+			timer.root.statements++;
+		}
+	}
+
+	/* Marks the outermost call as failed. */
+	void fail()
+	{
+		root.failed = true;
+	}
+
+	/*
+	 * For a call whose work carries on after it returns, as a stream's
+	 * does. suspend takes the timer off this thread's stack, resume puts
+	 * it back around each later piece of the work, on whichever thread
+	 * runs it, and finishSuspended records it once the work is done.
+	 */
+	void suspend()
+	{
+		if (outer != null) {
+			current.set(outer);
+		} else {
+			current.remove();
+		}
+
+		outer = null;
+		root = this;
+	}
+
+	void resume()
+	{
+		outer = current.get();
+		current.set(this);
+	}
+
+	void finishSuspended(MetricsRegistry metrics)
+	{
+		metrics.recordOperation(name, System.nanoTime() - start, statements, failed);
+	}
+
+	void finish(MetricsRegistry metrics)
+	{
+		if (outer != null) {
+			current.set(outer);
+			return;
+		}
+
+		current.remove();
+		metrics.recordOperation(name, System.nanoTime() - start, statements, failed);
+	}
+}
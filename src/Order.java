@@ -34,11 +34,13 @@ public class Order
 	public Date getDate() { return date; }
 	public ArrayList<OrderLine> getLines() { return lines; }
 
-	public double getTotalCost()
+	public long getTotalCost()
 	{
-		double cost = 0.0;
+		long cost = 0;
+
+		for (int i = 0, n = lines.size(); i < n; i++) {
+			OrderLine line = lines.get(i);
 
-		for (OrderLine line: lines) {
 			cost += line.getUnitCost() * line.getQuantity();
 		}
 
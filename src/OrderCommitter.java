@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Commits orders queued by Database.submitOrder. Orders are taken in
+ * groups of up to group_size, waiting at most group_delay_ms after the
+ * first for more to arrive, and each group costs one commit. The queue
+ * is bounded, so submitters block once the committer falls behind.
+ */
+class OrderCommitter
+	extends Thread
+{
+	static class Pending
+	{
+		Order order;
+		CompletableFuture<Order> future = new CompletableFuture<Order>();
+
+		Pending(Order order)
+		{
+			this.order = order;
+		}
+	}
+
+	private static final int queue_size = Integer.getInteger("pizzashop.db.order_queue_size", 1024);
+	private static final int group_size = Integer.getInteger("pizzashop.db.group_commit_size", 64);
+	private static final long group_delay_ms = Long.getLong("pizzashop.db.group_commit_ms", 2);
+	private static final long idle_poll_ms = 100;
+
+	private Database db;
+	private ArrayBlockingQueue<Pending> queue = new ArrayBlockingQueue<Pending>(queue_size);
+	private volatile boolean stopping;
+
+	public OrderCommitter(Database db)
+	{
+		super("database-order-committer");
+		setDaemon(true);
+
+		this.db = db;
+	}
+
+	public CompletableFuture<Order> submit(Order order)
+	{
+		Pending pending = new Pending(order);
+
+		if (stopping) {
+			return CompletableFuture.failedFuture(new IllegalStateException("Database is closed."));
+		}
+
+		try {
+			queue.put(pending);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.failedFuture(e);
+		}
+
+		/*
+		 * The committer only exits once it has seen stopping with an
+		 * empty queue, so if it is stopping now and the order is still
+		 * queued, nothing will ever take it.
+		 */
+		if (stopping && queue.remove(pending)) {
+			return CompletableFuture.failedFuture(new IllegalStateException("Database is closed."));
+		}
+
+		return pending.future;
+	}
+
+	/* Commits whatever is still queued, then stops. */
+	public void shutdown()
+	{
+		stopping = true;
+
+		try {
+			join();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run()
+	{
+		ArrayList<Pending> group = new ArrayList<Pending>(group_size);
+
+		while (true) {
+			Pending first;
+
+			try {
+				first = queue.poll(idle_poll_ms, TimeUnit.MILLISECONDS);
+
+				if (first == null) {
+					if (stopping && queue.isEmpty()) {
+						return;
+					}
+
+					continue;
+				}
+
+				group.add(first);
+
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(group_delay_ms);
+
+				while (group.size() < group_size) {
+					queue.drainTo(group, group_size - group.size());
+
+					long wait = deadline - System.nanoTime();
+
+					if (group.size() == group_size || wait <= 0) {
+						break;
+					}
+
+					Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+
+					if (next == null) {
+						break;
+					}
+
+					group.add(next);
+				}
+
+			} catch (InterruptedException e) {
+				stopping = true;
+			}
+
+			if (!group.isEmpty()) {
+				db.commitGroup(group);
+				group.clear();
+			}
+		}
+	}
+}
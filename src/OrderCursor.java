@@ -0,0 +1,118 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * A forward-only walk over every order that holds a single order in
+ * memory at a time. It merges two live result sets, orders and their
+ * lines, both ordered by order_id. An SQLException part way through
+ * closes the cursor and is rethrown as an IllegalStateException, since
+ * Iterator cannot throw checked exceptions.
+ */
+class OrderCursor
+	implements Iterator<Order>,
+	           AutoCloseable
+{
+	private static final int fetch_size = Integer.getInteger("pizzashop.db.fetch_size", 256);
+
+	private OrdersTable orders_table;
+	private PreparedStatement orders_stmt;
+	private PreparedStatement lines_stmt;
+	private ResultSet orders;
+	private ResultSet lines;
+	private boolean has_line;
+	private Order next;
+	private boolean closed;
+
+	public OrderCursor(OrdersTable orders_table,
+	                   PreparedStatement orders_stmt,
+	                   PreparedStatement lines_stmt)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		this.orders_table = orders_table;
+		this.orders_stmt = orders_stmt;
+		this.lines_stmt = lines_stmt;
+
+		orders_stmt.setFetchSize(fetch_size);
+		lines_stmt.setFetchSize(fetch_size);
+
+		orders = orders_stmt.executeQuery();
+		lines = lines_stmt.executeQuery();
+		has_line = lines.next();
+	}
+
+	public boolean hasNext()
+	{
+		if (next == null && !closed) {
+			next = fetch();
+		}
+
+		return next != null;
+	}
+
+	public Order next()
+	{
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		Order order = next;
+		next = null;
+
+		return order;
+	}
+
+	private Order fetch()
+	{
+		try {
+			if (!orders.next()) {
+				close();
+				return null;
+			}
+
+			Order order = orders_table.readOrder(orders);
+			ArrayList<OrderLine> list = new ArrayList<OrderLine>();
+
+			/* Lines of orders that no longer exist are skipped. */
+			while (has_line && lines.getInt(1) <= order.getID()) {
+				if (lines.getInt(1) == order.getID()) {
+					list.add(orders_table.readOrderLine(lines, 2));
+				}
+
+				has_line = lines.next();
+			}
+
+			order.setLines(list);
+
+			return order;
+
+		} catch (SQLException e) {
+			close();
+			throw new IllegalStateException("Failed while streaming orders.", e);
+		}
+	}
+
+	public void close()
+	{
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		next = null;
+
+		try {
+			orders_stmt.close();
+			lines_stmt.close();
+
+		} catch (SQLException e) {
+			System.err.println("Failed to close order cursor.");
+			System.err.println(e);
+		}
+	}
+}
@@ -0,0 +1,521 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Writes order graphs from another store, or replayed from an offline
+ * terminal, in bulk. IDs on the incoming objects mean nothing here, so
+ * addresses, cards, customers and pizzas are matched by natural key
+ * instead, first against rows already in the database and then against
+ * rows this import has written. Ingredients must already exist and are
+ * matched by name. The incoming objects are never modified.
+ *
+ * New rows get their IDs up front, which lets every table be written
+ * with multi-row INSERTs in whatever order the buffers fill up. The
+ * caller runs each batch in a transaction and calls begin() at its start,
+ * which defers foreign key checks to the commit.
+ *
+ * The caller lets go of the write lock between batches, so other writers
+ * may add or change rows in between. begin() notices this from the
+ * connection's total_changes() and PRAGMA data_version, and reloads the
+ * natural keys and ingredient names when anything but this importer
+ * has written since its last batch.
+ *
+ * New customers' passwords are hashed as in insertCustomer. The hashes
+ * run on a pool of hash_threads threads while the import carries on, and
+ * are waited for only when their rows are written.
+ */
+class OrderImporter
+{
+	private Connection conn;
+
+	private HashMap<String, Integer> crusts;
+	private HashMap<String, Integer> sauces;
+	private HashMap<String, Integer> cheeses;
+	private HashMap<String, Integer> toppings;
+
+	private HashMap<String, Integer> addresses = new HashMap<String, Integer>();
+	private HashMap<String, Integer> cards = new HashMap<String, Integer>();
+	private HashMap<String, Integer> customers = new HashMap<String, Integer>();
+	private HashMap<String, Integer> pizzas = new HashMap<String, Integer>();
+
+	/* Pizzas added since begin(), for the menu index. */
+	private ArrayList<MenuIndex.Recipe> recipes = new ArrayList<MenuIndex.Recipe>();
+
+	private int next_address_id;
+	private int next_card_id;
+	private int next_customer_id;
+	private int next_pizza_id;
+	private int next_order_id;
+
+	/* total_changes() and data_version as of the end of the last batch, or -1 to reload. */
+	private long seen_changes = -1;
+	private long seen_version = -1;
+
+	private MultiRowInsert address_insert;
+	private MultiRowInsert card_insert;
+	private MultiRowInsert customer_insert;
+	private MultiRowInsert pizza_insert;
+	private MultiRowInsert pizza_cheese_insert;
+	private MultiRowInsert pizza_topping_insert;
+	private MultiRowInsert orders_insert;
+	private MultiRowInsert order_line_insert;
+
+	private ExecutorService hashers;
+
+	public OrderImporter(Connection conn, int hash_threads)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		this.conn = conn;
+
+		hashers = Executors.newFixedThreadPool(hash_threads, new ThreadFactory() {
+			public Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "pizzashop-import-hasher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		address_insert = new MultiRowInsert(conn, "address",
+			"address_id", "address_line1", "address_line2", "address_city",
+			"address_state", "address_zip");
+		card_insert = new MultiRowInsert(conn, "card",
+			"card_id", "card_number", "card_name", "card_type",
+			"card_expiration_date", "card_address");
+		customer_insert = new MultiRowInsert(conn, "customer",
+			"customer_id", "customer_name", "customer_email", "customer_password",
+			"customer_phone", "customer_notes", "customer_address", "customer_card");
+		pizza_insert = new MultiRowInsert(conn, "pizza",
+			"pizza_id", "pizza_name", "pizza_crust", "pizza_sauce", "pizza_recipe");
+		pizza_cheese_insert = new MultiRowInsert(conn, "pizza_cheese",
+			"pizza_id", "cheese_id");
+		pizza_topping_insert = new MultiRowInsert(conn, "pizza_topping",
+			"pizza_id", "topping_id");
+		orders_insert = new MultiRowInsert(conn, "orders",
+			"order_id", "order_customer", "order_address", "order_card",
+			"order_datetime");
+		order_line_insert = new MultiRowInsert(conn, "order_line",
+			"order_id", "pizza_id", "pizza_size", "pizza_qty", "pizza_cost");
+	}
+
+	/*
+	 * Starts a batch inside an open transaction, with catalog the current
+	 * ingredient catalog. IDs are picked up again from the tables, and the
+	 * keys reloaded if needed, as other writers may have added rows since
+	 * the last batch.
+	 */
+	public void begin(IngredientCatalog catalog)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+
+		stmt.execute("PRAGMA defer_foreign_keys = ON;");
+
+		if (changes(stmt) != seen_changes || dataVersion(stmt) != seen_version) {
+			crusts = names(catalog.getCrusts());
+			sauces = names(catalog.getSauces());
+			cheeses = names(catalog.getCheeses());
+			toppings = names(catalog.getToppings());
+
+			loadKeys(stmt);
+		}
+
+		next_address_id = maxID(stmt, "address_id", "address") + 1;
+		next_card_id = maxID(stmt, "card_id", "card") + 1;
+		next_customer_id = maxID(stmt, "customer_id", "customer") + 1;
+		next_pizza_id = maxID(stmt, "pizza_id", "pizza") + 1;
+		next_order_id = maxID(stmt, "order_id", "orders") + 1;
+
+		stmt.close();
+
+		recipes.clear();
+	}
+
+	public ArrayList<MenuIndex.Recipe> getRecipes() { return recipes; }
+
+	public void add(Order order)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		int order_id = next_order_id++;
+		Date date = order.getDate() == null ? new Date() : order.getDate();
+
+		orders_insert.add(order_id,
+		                  storeCustomer(order.getCustomer()),
+		                  storeAddress(order.getAddress()),
+		                  storeCard(order.getCard()),
+		                  OrderTimestampCodec.encode(date));
+
+		ArrayList<OrderLine> lines = order.getLines();
+		int[] pizza_ids = new int[lines.size()];
+
+		for (int i = 0; i < pizza_ids.length; i++) {
+			pizza_ids[i] = storePizza(lines.get(i).getPizza());
+		}
+
+		for (int i = 0; i < pizza_ids.length; i++) {
+			OrderLine line = lines.get(i);
+			int quantity = OrdersTable.mergedQuantity(lines, pizza_ids, i);
+
+			if (quantity >= 0) {
+				order_line_insert.add(order_id,
+				                      pizza_ids[i],
+				                      line.getSize().ordinal(),
+				                      quantity,
+				                      line.getUnitCost());
+			}
+		}
+	}
+
+	/* Drops every buffered row after a failed batch. */
+	public void discard()
+	{
+		address_insert.discard();
+		card_insert.discard();
+		customer_insert.discard();
+		pizza_insert.discard();
+		pizza_cheese_insert.discard();
+		pizza_topping_insert.discard();
+		orders_insert.discard();
+		order_line_insert.discard();
+		recipes.clear();
+
+		/* The keys of the discarded rows are in the maps, so start over. */
+		seen_changes = -1;
+		seen_version = -1;
+	}
+
+	/* Writes out every buffered row, parents first. */
+	public void flush()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		address_insert.flush();
+		card_insert.flush();
+		customer_insert.flush();
+		pizza_insert.flush();
+		pizza_cheese_insert.flush();
+		pizza_topping_insert.flush();
+		orders_insert.flush();
+		order_line_insert.flush();
+
+		Statement stmt = conn.createStatement();
+
+		seen_changes = changes(stmt);
+		seen_version = dataVersion(stmt);
+
+		stmt.close();
+	}
+
+	public void close()
+	{
+		hashers.shutdownNow();
+
+		try {
+			address_insert.close();
+			card_insert.close();
+			customer_insert.close();
+			pizza_insert.close();
+			pizza_cheese_insert.close();
+			pizza_topping_insert.close();
+			orders_insert.close();
+			order_line_insert.close();
+
+		} catch (SQLException e) {
+			System.err.println("Failed to close order importer.");
+			System.err.println(e);
+		}
+	}
+
+	private int storeAddress(Address address)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		String key = key(address.getLine1(),
+		                 address.getLine2(),
+		                 address.getCity(),
+		                 address.getState(),
+		                 address.getZip());
+
+		Integer id = addresses.get(key);
+
+		if (id == null) {
+			id = next_address_id++;
+			addresses.put(key, id);
+
+			address_insert.add(id,
+			                   address.getLine1(),
+			                   address.getLine2(),
+			                   address.getCity(),
+			                   address.getState(),
+			                   address.getZip());
+		}
+
+		return id;
+	}
+
+	private int storeCard(Card card)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		String key = key(card.getNumber(), card.getExpirationDate());
+		Integer id = cards.get(key);
+
+		if (id == null) {
+			int address_id = storeAddress(card.getAddress());
+
+			id = next_card_id++;
+			cards.put(key, id);
+
+			card_insert.add(id,
+			                card.getNumber(),
+			                card.getName(),
+			                card.getTypeStr(),
+			                card.getExpirationDate(),
+			                address_id);
+		}
+
+		return id;
+	}
+
+	private int storeCustomer(Customer customer)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Integer id = customers.get(customer.getEmail());
+
+		if (id == null) {
+			if (customer.getPassword() == null) {
+				throw new SQLException("Customer " + customer.getEmail() + " has no password to import.");
+			}
+
+			int address_id = storeAddress(customer.getAddress());
+			Integer card_id = null;
+
+			if (customer.getActiveCard() != null) {
+				card_id = storeCard(customer.getActiveCard());
+			}
+
+			id = next_customer_id++;
+			customers.put(customer.getEmail(), id);
+
+			final String password = customer.getPassword();
+
+			Future<String> password_hash = hashers.submit(new Callable<String>() {
+				public String call()
+				{
+					return PasswordHasher.encode(password);
+				}
+			});
+
+			customer_insert.add(id,
+			                    customer.getName(),
+			                    customer.getEmail(),
+			                    password_hash,
+			                    customer.getPhone(),
+			                    customer.getNotes(),
+			                    address_id,
+			                    card_id);
+		}
+
+		return id;
+	}
+
+	private int storePizza(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		int crust_id = ingredientID(crusts, pizza.getCrust());
+		int sauce_id = ingredientID(sauces, pizza.getSauce());
+		TreeSet<Integer> cheese_ids = new TreeSet<Integer>();
+		TreeSet<Integer> topping_ids = new TreeSet<Integer>();
+
+		for (Cheese cheese: pizza.getCheeses()) {
+			cheese_ids.add(ingredientID(cheeses, cheese));
+		}
+
+		for (Topping topping: pizza.getToppings()) {
+			topping_ids.add(ingredientID(toppings, topping));
+		}
+
+		String key = key(pizza.getName(), crust_id, sauce_id, cheese_ids, topping_ids);
+		Integer id = pizzas.get(key);
+
+		if (id == null) {
+			id = next_pizza_id++;
+			pizzas.put(key, id);
+
+			pizza_insert.add(id,
+			                 pizza.getName(),
+			                 crust_id,
+			                 sauce_id,
+			                 PizzaTable.recipe(crust_id, sauce_id, cheese_ids, topping_ids));
+
+			MenuIndex.Recipe recipe = new MenuIndex.Recipe(id, pizza.getName(), crust_id, sauce_id);
+
+			for (int cheese_id: cheese_ids) {
+				pizza_cheese_insert.add(id, cheese_id);
+				recipe.ingredients.set(cheese_id);
+			}
+
+			for (int topping_id: topping_ids) {
+				pizza_topping_insert.add(id, topping_id);
+				recipe.ingredients.set(topping_id);
+			}
+
+			recipes.add(recipe);
+		}
+
+		return id;
+	}
+
+	private void loadKeys(Statement stmt)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ResultSet rset;
+
+		addresses.clear();
+		cards.clear();
+		customers.clear();
+		pizzas.clear();
+
+		rset = stmt.executeQuery(
+			"SELECT address_id, address_line1, address_line2, address_city, address_state, address_zip" +
+			"    FROM address;");
+
+		while (rset.next()) {
+			addresses.put(key(rset.getString(2),
+			                  rset.getString(3),
+			                  rset.getString(4),
+			                  rset.getString(5),
+			                  rset.getString(6)),
+			              rset.getInt(1));
+		}
+
+		rset.close();
+
+		rset = stmt.executeQuery("SELECT card_id, card_number, card_expiration_date FROM card;");
+
+		while (rset.next()) {
+			cards.put(key(rset.getString(2), rset.getString(3)), rset.getInt(1));
+		}
+
+		rset.close();
+
+		rset = stmt.executeQuery("SELECT customer_id, customer_email FROM customer;");
+
+		while (rset.next()) {
+			customers.put(rset.getString(2), rset.getInt(1));
+		}
+
+		rset.close();
+
+		HashMap<Integer, TreeSet<Integer>> pizza_cheeses = PizzaTable.queryLinks(stmt, "SELECT pizza_id, cheese_id FROM pizza_cheese;");
+		HashMap<Integer, TreeSet<Integer>> pizza_toppings = PizzaTable.queryLinks(stmt, "SELECT pizza_id, topping_id FROM pizza_topping;");
+
+		rset = stmt.executeQuery("SELECT pizza_id, pizza_name, pizza_crust, pizza_sauce FROM pizza;");
+
+		while (rset.next()) {
+			int id = rset.getInt(1);
+			TreeSet<Integer> cheese_ids = pizza_cheeses.get(id);
+			TreeSet<Integer> topping_ids = pizza_toppings.get(id);
+
+			pizzas.put(key(rset.getString(2),
+			               rset.getInt(3),
+			               rset.getInt(4),
+			               cheese_ids == null ? new TreeSet<Integer>() : cheese_ids,
+			               topping_ids == null ? new TreeSet<Integer>() : topping_ids),
+			           id);
+		}
+
+		rset.close();
+	}
+
+	/* Rows changed through this connection since it was opened, by any writer. */
+	private static long changes(Statement stmt)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ResultSet rset = stmt.executeQuery("SELECT total_changes();");
+		long changes = rset.getLong(1);
+
+		rset.close();
+
+		return changes;
+	}
+
+	/* Changes whenever another connection commits. */
+	private static long dataVersion(Statement stmt)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ResultSet rset = stmt.executeQuery("PRAGMA data_version;");
+		long version = rset.getLong(1);
+
+		rset.close();
+
+		return version;
+	}
+
+	private static int maxID(Statement stmt, String column, String table)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ResultSet rset = stmt.executeQuery("SELECT MAX(" + column + ") FROM " + table + ";");
+		int id = rset.getInt(1);
+
+		rset.close();
+
+		return id;
+	}
+
+	private static HashMap<String, Integer> names(ArrayList<? extends Ingredient> ingredients)
+	{
+		HashMap<String, Integer> names = new HashMap<String, Integer>();
+
+		for (Ingredient ingredient: ingredients) {
+			names.put(ingredient.getName(), ingredient.getID());
+		}
+
+		return names;
+	}
+
+	private static int ingredientID(HashMap<String, Integer> names, Ingredient ingredient)
+		throws SQLException
+	{
+		Integer id = names.get(ingredient.getName());
+
+		if (id == null) {
+			throw new SQLException("Unknown ingredient: " + ingredient.getName());
+		}
+
+		return id;
+	}
+
+	/* Joins the parts of a natural key, keeping null apart from "". */
+	private static String key(Object... parts)
+	{
+		StringBuilder key = new StringBuilder();
+
+		for (Object part: parts) {
+			key.append(part == null ? "\u0000" : part.toString()).append('\u001f');
+		}
+
+		return key.toString();
+	}
+}
@@ -0,0 +1,45 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Date;
+
+/*
+ * Order timestamps are stored as INTEGER milliseconds since the epoch, so
+ * nothing is parsed or formatted on the way in or out and rows compare
+ * and range scan as plain integers. The codec holds no state and is safe
+ * to use from any thread.
+ */
+final class OrderTimestampCodec
+{
+	private OrderTimestampCodec() { }
+
+	public static void bind(PreparedStatement stmt, int index, Date date)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		stmt.setLong(index, encode(date));
+	}
+
+	public static long encode(Date date)
+	{
+		return date.getTime();
+	}
+
+	public static Date read(ResultSet rset, int column)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		return new Date(rset.getLong(column));
+	}
+
+	/*
+	 * SQL expression converting an ISO-8601 TEXT column, as written by
+	 * older versions, to epoch milliseconds. Unreadable values become the
+	 * epoch, as they did when they were parsed on every read.
+	 */
+	public static String fromText(String column)
+	{
+		return "COALESCE(CAST(strftime('%s', " + column + ") AS INTEGER) * 1000, 0)";
+	}
+}
@@ -0,0 +1,559 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+class OrdersTable
+{
+	private static final String orders_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    orders (order_id       INTEGER PRIMARY KEY," +
+		"            order_customer INTEGER NOT NULL REFERENCES customer(customer_id)," +
+		"            order_address  INTEGER NOT NULL REFERENCES address(address_id)," +
+		"            order_card     INTEGER NOT NULL REFERENCES card(card_id)," +
+		"            order_datetime INTEGER NOT NULL" +
+		"    );";
+
+	private static final String orders_pizza_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    order_line (order_id   INTEGER NOT NULL," +
+		"                pizza_id   INTEGER NOT NULL," +
+		"                pizza_size TEXT    NOT NULL CHECK (pizza_size IN ('small', 'medium', 'large'))," +
+		"                pizza_qty  INTEGER NOT NULL," +
+		"                pizza_cost INTEGER NOT NULL," +
+		"                PRIMARY KEY (order_id, pizza_id, pizza_size)" +
+		"    );";
+
+	/* pizza_cost used to be stored as REAL dollars and is now INTEGER cents. */
+	private static final String[] migrate_cents_strs = {
+		"ALTER TABLE order_line RENAME TO order_line_dollars;",
+		orders_pizza_schema,
+		"INSERT INTO" +
+		"    order_line (order_id," +
+		"                pizza_id," +
+		"                pizza_size," +
+		"                pizza_qty," +
+		"                pizza_cost)" +
+		"    SELECT order_id," +
+		"           pizza_id," +
+		"           pizza_size," +
+		"           pizza_qty," +
+		"           CAST(ROUND(pizza_cost * 100) AS INTEGER)" +
+		"        FROM order_line_dollars;",
+		"DROP TABLE order_line_dollars;"
+	};
+
+	/*
+	 * A customer's history is read newest first through orders_by_customer.
+	 * Both indexes cover every column their queries read, so neither
+	 * query touches the tables themselves.
+	 */
+	private static final String orders_index_schema =
+		"CREATE INDEX IF NOT EXISTS" +
+		"    orders_by_customer ON orders (order_customer," +
+		"                                  order_datetime," +
+		"                                  order_id," +
+		"                                  order_address," +
+		"                                  order_card);";
+
+	static final String order_line_index_schema =
+		"CREATE INDEX IF NOT EXISTS" +
+		"    order_line_by_order ON order_line (order_id," +
+		"                                       pizza_id," +
+		"                                       pizza_size," +
+		"                                       pizza_qty," +
+		"                                       pizza_cost);";
+
+	/* order_datetime used to be stored as ISO-8601 TEXT. */
+	private static final String[] migrate_datetime_strs = {
+		"ALTER TABLE orders RENAME TO orders_text;",
+		orders_schema,
+		"INSERT INTO" +
+		"    orders (order_id," +
+		"            order_customer," +
+		"            order_address," +
+		"            order_card," +
+		"            order_datetime)" +
+		"    SELECT order_id," +
+		"           order_customer," +
+		"           order_address," +
+		"           order_card," +
+		"           " + OrderTimestampCodec.fromText("order_datetime") +
+		"        FROM orders_text;",
+		"DROP TABLE orders_text;"
+	};
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    orders (order_customer," +
+		"            order_address," +
+		"            order_card," +
+		"            order_datetime)" +
+		"    VALUES (?, ?, ?, ?);";
+
+	private static final String query_by_customer_str =
+		"SELECT order_id," +
+		"       order_customer," +
+		"       order_address," +
+		"       order_card," +
+		"       order_datetime" +
+		"    FROM orders" +
+		"    WHERE order_customer = ?" +
+		"    ORDER BY order_datetime DESC, order_id DESC;";
+
+	/*
+	 * Keyset pagination: the page starts after the (date, ID) of the last
+	 * order on the previous page, so every page costs the same no matter
+	 * how deep into the history it is.
+	 */
+	private static final String query_page_by_customer_str =
+		"SELECT order_id," +
+		"       order_customer," +
+		"       order_address," +
+		"       order_card," +
+		"       order_datetime" +
+		"    FROM orders" +
+		"    WHERE order_customer = ?" +
+		"      AND (order_datetime, order_id) < (?, ?)" +
+		"    ORDER BY order_datetime DESC, order_id DESC" +
+		"    LIMIT ?;";
+
+	/*
+	 * The lines of every order the two queries above return, read in one
+	 * go when the orders' references are loaded lazily.
+	 */
+	private static final String query_lines_by_customer_str =
+		"SELECT order_id," +
+		"       pizza_id," +
+		"       pizza_size," +
+		"       pizza_qty," +
+		"       pizza_cost" +
+		"    FROM order_line" +
+		"    WHERE order_id IN (SELECT order_id" +
+		"                           FROM orders" +
+		"                           WHERE order_customer = ?);";
+
+	private static final String query_page_lines_by_customer_str =
+		"SELECT order_id," +
+		"       pizza_id," +
+		"       pizza_size," +
+		"       pizza_qty," +
+		"       pizza_cost" +
+		"    FROM order_line" +
+		"    WHERE order_id IN (SELECT order_id" +
+		"                           FROM orders" +
+		"                           WHERE order_customer = ?" +
+		"                             AND (order_datetime, order_id) < (?, ?)" +
+		"                           ORDER BY order_datetime DESC, order_id DESC" +
+		"                           LIMIT ?);";
+
+	private static final String insert_order_line_str =
+		"INSERT INTO" +
+		"    order_line (order_id," +
+		"                pizza_id," +
+		"                pizza_size," +
+		"                pizza_qty," +
+		"                pizza_cost)" +
+		"    VALUES (?, ?, ?, ?, ?);";
+
+	private static final String query_order_line_by_order_str =
+		"SELECT pizza_id," +
+		"       pizza_size," +
+		"       pizza_qty," +
+		"       pizza_cost" +
+		"    FROM order_line" +
+		"    WHERE order_id = ?;";
+
+	/*
+	 * Both sides of a full export walk order_id in ascending order, orders
+	 * by rowid and order_line through order_line_by_order, so OrderCursor
+	 * can merge them without sorting or a query per order.
+	 */
+	private static final String stream_str =
+		"SELECT order_id," +
+		"       order_customer," +
+		"       order_address," +
+		"       order_card," +
+		"       order_datetime" +
+		"    FROM orders" +
+		"    ORDER BY order_id;";
+
+	private static final String stream_order_line_str =
+		"SELECT order_id," +
+		"       pizza_id," +
+		"       pizza_size," +
+		"       pizza_qty," +
+		"       pizza_cost" +
+		"    FROM order_line" +
+		"    ORDER BY order_id;";
+
+	private DatabaseConnection db;
+	private PizzaTable pizza_table;
+	private AddressTable address_table;
+	private CardTable card_table;
+	private CustomerTable customer_table;
+
+
+	public OrdersTable(DatabaseConnection db)
+	{
+		this.db = db;
+		pizza_table = db.getPizzaTable();
+		address_table = db.getAddressTable();
+		card_table = db.getCardTable();
+		customer_table = db.getCustomerTable();
+	}
+
+	/* Part of SchemaManager's first step. */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		if ("REAL".equals(Database.columnType(conn, "order_line", "pizza_cost"))) {
+			Database.migrate(conn, migrate_cents_strs);
+		}
+
+		if ("TEXT".equals(Database.columnType(conn, "orders", "order_datetime"))) {
+			Database.migrate(conn, migrate_datetime_strs);
+		}
+
+		Statement stmt = conn.createStatement();
+		stmt.execute(orders_schema);
+		stmt.execute(orders_pizza_schema);
+		stmt.execute(orders_index_schema);
+		stmt.execute(order_line_index_schema);
+		stmt.close();
+	}
+
+	public void insert(Order order)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement insert_order_line_stmt = db.prepare(insert_order_line_str);
+
+		insert_stmt.setInt(1, order.getCustomer().getID());
+		insert_stmt.setInt(2, order.getAddress().getID());
+		insert_stmt.setInt(3, order.getCard().getID());
+		OrderTimestampCodec.bind(insert_stmt, 4, order.getDate());
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		order.setID(Database.generatedKey(insert_stmt));
+
+		ArrayList<OrderLine> lines = order.getLines();
+		int[] pizza_ids = new int[lines.size()];
+
+		for (int i = 0; i < pizza_ids.length; i++) {
+			pizza_ids[i] = lines.get(i).getPizza().getID();
+		}
+
+		for (int i = 0; i < pizza_ids.length; i++) {
+			int quantity = mergedQuantity(lines, pizza_ids, i);
+
+			if (quantity >= 0) {
+				insertOrderLine(order.getID(), lines.get(i), quantity);
+			}
+		}
+
+		insert_order_line_stmt.executeBatch();
+	}
+
+	/*
+	 * order_line is keyed by order, pizza and size, and pizzas with the
+	 * same recipe share one ID, so an order's lines for the same pizza
+	 * and size are written as one row. Returns the combined quantity for
+	 * line i, or -1 if an earlier line already includes it.
+	 */
+	static int mergedQuantity(ArrayList<OrderLine> lines, int[] pizza_ids, int i)
+	{
+		Pizza.Size size = lines.get(i).getSize();
+		int quantity = lines.get(i).getQuantity();
+
+		for (int j = 0; j < pizza_ids.length; j++) {
+			if (j == i || pizza_ids[j] != pizza_ids[i] || !lines.get(j).getSize().equals(size)) {
+				continue;
+			}
+
+			if (j < i) {
+				return -1;
+			}
+
+			quantity += lines.get(j).getQuantity();
+		}
+
+		return quantity;
+	}
+
+	public ArrayList<Order> query(int customer_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		return query(customer_id, null);
+	}
+
+	/*
+	 * With refs, each order's customer, address, card and pizzas are left
+	 * for refs to load when first used, and all the lines are read by one
+	 * more query, so the whole list costs two queries.
+	 */
+	public ArrayList<Order> query(int customer_id, LazyReferences refs)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_by_customer_stmt = db.prepare(query_by_customer_str);
+
+		query_by_customer_stmt.setInt(1, customer_id);
+
+		ArrayList<Order> list;
+
+		if (refs == null) {
+			list = readOrders(query_by_customer_stmt.executeQuery());
+		} else {
+			list = readOrders(query_by_customer_stmt.executeQuery(), refs);
+
+			PreparedStatement query_lines_by_customer_stmt = db.prepare(query_lines_by_customer_str);
+
+			query_lines_by_customer_stmt.setInt(1, customer_id);
+			readLines(query_lines_by_customer_stmt.executeQuery(), list, refs);
+			query_lines_by_customer_stmt.clearParameters();
+		}
+
+		query_by_customer_stmt.clearParameters();
+
+		return list;
+	}
+
+	/*
+	 * Returns up to limit orders older than after, newest first. Pass a
+	 * null after for the first page and the last order of a page to get
+	 * the next one.
+	 */
+	public ArrayList<Order> queryPage(int customer_id, Order after, int limit)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		return queryPage(customer_id, after, limit, null);
+	}
+
+	/* As queryPage above, loading references lazily as query does. */
+	public ArrayList<Order> queryPage(int customer_id, Order after, int limit, LazyReferences refs)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_page_by_customer_stmt = db.prepare(query_page_by_customer_str);
+
+		bindPage(query_page_by_customer_stmt, customer_id, after, limit);
+
+		ArrayList<Order> list;
+
+		if (refs == null) {
+			list = readOrders(query_page_by_customer_stmt.executeQuery());
+		} else {
+			list = readOrders(query_page_by_customer_stmt.executeQuery(), refs);
+
+			PreparedStatement query_page_lines_by_customer_stmt = db.prepare(query_page_lines_by_customer_str);
+
+			bindPage(query_page_lines_by_customer_stmt, customer_id, after, limit);
+			readLines(query_page_lines_by_customer_stmt.executeQuery(), list, refs);
+			query_page_lines_by_customer_stmt.clearParameters();
+		}
+
+		query_page_by_customer_stmt.clearParameters();
+
+		return list;
+	}
+
+	private static void bindPage(PreparedStatement stmt, int customer_id, Order after, int limit)
+		throws SQLException
+	{
+		stmt.setInt(1, customer_id);
+
+		if (after == null) {
+			stmt.setLong(2, Long.MAX_VALUE);
+			stmt.setInt(3, Integer.MAX_VALUE);
+		} else {
+			OrderTimestampCodec.bind(stmt, 2, after.getDate());
+			stmt.setInt(3, after.getID());
+		}
+
+		stmt.setInt(4, limit);
+	}
+
+	/*
+	 * Opens a cursor over every order in ID order. The cursor has its own
+	 * statements, so it may stay open while this table is used for other
+	 * queries, and must be closed when done.
+	 */
+	public OrderCursor openCursor()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Connection conn = db.getConnection();
+
+		PreparedStatement orders_stmt = conn.prepareStatement(stream_str);
+		PreparedStatement lines_stmt = null;
+
+		try {
+			lines_stmt = conn.prepareStatement(stream_order_line_str);
+
+			return new OrderCursor(this, orders_stmt, lines_stmt);
+
+		} catch (SQLException e) {
+			orders_stmt.close();
+
+			if (lines_stmt != null) {
+				lines_stmt.close();
+			}
+
+			throw e;
+		}
+	}
+
+	/* Reads an order from the current row, without its lines. */
+	Order readOrder(ResultSet rset)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Order order = new Order();
+
+		order.setID(rset.getInt(1));
+		order.setCustomer(customer_table.query(rset.getInt(2)));
+		order.setAddress(address_table.query(rset.getInt(3)));
+		order.setCard(card_table.query(rset.getInt(4)));
+		order.setDate(OrderTimestampCodec.read(rset, 5));
+
+		return order;
+	}
+
+	/* Reads an order line from the current row, starting at column. */
+	OrderLine readOrderLine(ResultSet rset, int column)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		OrderLine line = new OrderLine();
+
+		line.setPizza(pizza_table.query(rset.getInt(column)));
+		line.setSize(db.getSize(rset.getInt(column + 1)));
+		line.setQuantity(rset.getInt(column + 2));
+		line.setUnitCost(rset.getLong(column + 3));
+
+		return line;
+	}
+
+	private ArrayList<Order> readOrders(ResultSet rset)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ArrayList<Order> list = new ArrayList<Order>();
+
+		while (rset.next()) {
+			Order order = readOrder(rset);
+
+			order.setLines(queryOrderLines(order.getID()));
+
+			list.add(order);
+		}
+
+		rset.close();
+
+		return list;
+	}
+
+	/* Reads orders without their lines, with references left to refs. */
+	private static ArrayList<Order> readOrders(ResultSet rset, LazyReferences refs)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		ArrayList<Order> list = new ArrayList<Order>();
+
+		while (rset.next()) {
+			Order order = new Order();
+
+			order.setID(rset.getInt(1));
+			order.setCustomer(refs.customer(rset.getInt(2)));
+			order.setAddress(refs.address(rset.getInt(3)));
+			order.setCard(refs.card(rset.getInt(4)));
+			order.setDate(OrderTimestampCodec.read(rset, 5));
+
+			list.add(order);
+		}
+
+		rset.close();
+
+		return list;
+	}
+
+	/* Hands each line in rset to its order in list. */
+	private void readLines(ResultSet rset, ArrayList<Order> list, LazyReferences refs)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		HashMap<Integer, Order> orders = new HashMap<Integer, Order>();
+
+		for (Order order: list) {
+			orders.put(order.getID(), order);
+		}
+
+		while (rset.next()) {
+			Order order = orders.get(rset.getInt(1));
+
+			if (order == null) {
+				continue;
+			}
+
+			OrderLine line = new OrderLine();
+
+			line.setPizza(refs.pizza(rset.getInt(2)));
+			line.setSize(db.getSize(rset.getInt(3)));
+			line.setQuantity(rset.getInt(4));
+			line.setUnitCost(rset.getLong(5));
+
+			order.getLines().add(line);
+		}
+
+		rset.close();
+	}
+
+	private void insertOrderLine(int order_id, OrderLine line, int quantity)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_order_line_stmt = db.prepare(insert_order_line_str);
+
+		insert_order_line_stmt.setInt(1, order_id);
+		insert_order_line_stmt.setInt(2, line.getPizza().getID());
+		insert_order_line_stmt.setInt(3, line.getSize().ordinal());
+		insert_order_line_stmt.setInt(4, quantity);
+		insert_order_line_stmt.setLong(5, line.getUnitCost());
+
+		insert_order_line_stmt.addBatch();
+		insert_order_line_stmt.clearParameters();
+	}
+
+	private ArrayList<OrderLine> queryOrderLines(int order_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_order_line_by_order_stmt = db.prepare(query_order_line_by_order_str);
+
+		ArrayList<OrderLine> list = new ArrayList<OrderLine>();
+
+		query_order_line_by_order_stmt.setInt(1, order_id);
+
+		ResultSet rset = query_order_line_by_order_stmt.executeQuery();
+
+		while (rset.next()) {
+			list.add(readOrderLine(rset, 1));
+		}
+
+		rset.close();
+		query_order_line_by_order_stmt.clearParameters();
+
+		return list;
+	}
+}
@@ -0,0 +1,100 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/*
+ * Stored passwords are PBKDF2-HMAC-SHA256 hashes, encoded as
+ * "pbkdf2-sha256$iterations$salt$hash". The iteration count is read from
+ * pizzashop.auth.iterations; hashes made with a different count, and
+ * plain passwords left by older versions, still verify and are flagged
+ * by needsUpgrade so they can be rewritten after a successful login.
+ */
+final class PasswordHasher
+{
+	private static final String prefix = "pbkdf2-sha256$";
+	private static final int iterations = Integer.getInteger("pizzashop.auth.iterations", 310000);
+	private static final int salt_bytes = 16;
+	private static final int hash_bits = 256;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private PasswordHasher() { }
+
+	/*
+	 * Hashes password under a fresh salt. Anything given here is taken as
+	 * a plain password, even if it looks like an encoded hash.
+	 */
+	public static String encode(String password)
+	{
+		byte[] salt = new byte[salt_bytes];
+		random.nextBytes(salt);
+
+		Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+
+		return prefix + iterations
+		       + "$" + base64.encodeToString(salt)
+		       + "$" + base64.encodeToString(pbkdf2(password, salt, iterations));
+	}
+
+	/*
+	 * Compares in constant time, so the time taken says nothing about
+	 * how much of the password matched.
+	 */
+	public static boolean verify(String password, String stored)
+	{
+		if (password == null || stored == null) {
+			return false;
+		}
+
+		if (!isHash(stored)) {
+			return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+			                             stored.getBytes(StandardCharsets.UTF_8));
+		}
+
+		String[] parts = stored.substring(prefix.length()).split("\\$");
+
+		if (parts.length != 3) {
+			return false;
+		}
+
+		try {
+			Base64.Decoder base64 = Base64.getDecoder();
+			byte[] expected = base64.decode(parts[2]);
+			byte[] actual = pbkdf2(password, base64.decode(parts[1]), Integer.parseInt(parts[0]));
+
+			return MessageDigest.isEqual(expected, actual);
+
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public static boolean needsUpgrade(String stored)
+	{
+		return !stored.startsWith(prefix + iterations + "$");
+	}
+
+	private static boolean isHash(String str)
+	{
+		return str != null && str.startsWith(prefix);
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations)
+	{
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, hash_bits);
+
+		try {
+			return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available.", e);
+
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
@@ -1,4 +1,7 @@
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 
 public class Pizza
 {
@@ -9,10 +12,84 @@ public class Pizza
 	private ArrayList<Cheese> cheeses;
 	private ArrayList<Topping> toppings;
 
-	public enum Size {
-		SMALL,
-		MEDIUM,
-		LARGE
+	/*
+	 * Cost of the pizza in cents for each size, indexed by Size ordinal. Built on
+	 * the first getCost call and dropped whenever an ingredient setter is
+	 * called. The cheese and topping lists can only be changed through
+	 * the setters, and the costs are also rebuilt once one of the pizza's
+	 * ingredients has had its cost or ID changed since; see edits().
+	 */
+	private volatile Compiled<long[]> costs;
+
+	/* What edits() returns when none of the ingredients can change. */
+	private static final long frozen = -1;
+
+	/*
+	 * The IDs of every ingredient on the pizza, crust and sauce included,
+	 * as one bit each. Ingredient IDs are unique across kinds, so the set
+	 * is the whole recipe. Kept and dropped alongside costs, but never
+	 * kept while an ingredient has no ID yet.
+	 */
+	private volatile Compiled<BitSet> ingredient_set;
+
+	/* A value built from the ingredients, with edits() as of then. */
+	private static final class Compiled<T>
+	{
+		final long edits;
+		final T value;
+
+		Compiled(long edits, T value)
+		{
+			this.edits = edits;
+			this.value = value;
+		}
+	}
+
+	/*
+	 * A size pizzas are sold in. The sizes are the rows of a database's
+	 * size table, which each Database loads for itself when opened; see
+	 * Database.lookupAllSizes. SMALL, MEDIUM and LARGE are the first
+	 * three and exist in every database. A size's ordinal is also its ID
+	 * in the database, so sizes are numbered from 0 in the order they
+	 * were added and are never removed. Two databases may name the same
+	 * ordinal differently, so sizes are compared with equals.
+	 */
+	public static final class Size
+	{
+		public static final Size SMALL = new Size(0, "small");
+		public static final Size MEDIUM = new Size(1, "medium");
+		public static final Size LARGE = new Size(2, "large");
+
+		private static final Size[] built_in = { SMALL, MEDIUM, LARGE };
+
+		private final int ordinal;
+		private final String name;
+
+		Size(int ordinal, String name)
+		{
+			this.ordinal = ordinal;
+			this.name = name;
+		}
+
+		public int ordinal() { return ordinal; }
+		public String getName() { return name; }
+		public String toString() { return name; }
+
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Size)) {
+				return false;
+			}
+
+			Size size = (Size) other;
+
+			return size.ordinal == ordinal && size.name.equals(name);
+		}
+
+		public int hashCode() { return ordinal * 31 + name.hashCode(); }
+
+		/* SMALL, MEDIUM and LARGE, which every database has. */
+		public static Size[] builtIn() { return built_in.clone(); }
 	}
 
 	public Pizza()
@@ -20,51 +97,190 @@ public class Pizza
 		this(0, "", null, null, null, null);
 	}
 
-	public Pizza(int                id,
-	             String             name,
-	             Crust              crust,
-	             Sauce              sauce,
-	             ArrayList<Cheese>  cheeses,
-	             ArrayList<Topping> toppings)
+	/* The cheese and topping lists are copied, so later changes to them are not seen. */
+	public Pizza(int           id,
+	             String        name,
+	             Crust         crust,
+	             Sauce         sauce,
+	             List<Cheese>  cheeses,
+	             List<Topping> toppings)
 	{
 		this.id = id;
 		this.name = name == null ? "" : name;
 		this.crust = crust;
 		this.sauce = sauce;
 
-		this.cheeses = cheeses == null ? new ArrayList<Cheese>() : cheeses;
-		this.toppings = toppings == null ? new ArrayList<Topping>() : toppings;
+		this.cheeses = cheeses == null ? new ArrayList<Cheese>() : new ArrayList<Cheese>(cheeses);
+		this.toppings = toppings == null ? new ArrayList<Topping>() : new ArrayList<Topping>(toppings);
 	}
 
 	public int getID() { return id; }
 	public String getName() { return name; }
 	public Crust getCrust() { return crust; }
 	public Sauce getSauce() { return sauce; }
-	public ArrayList<Cheese> getCheeses() { return cheeses; }
-	public ArrayList<Topping> getToppings() { return toppings; }
+
+	/* Unmodifiable views; use the setters to change the recipe. */
+	public List<Cheese> getCheeses() { return Collections.unmodifiableList(cheeses); }
+	public List<Topping> getToppings() { return Collections.unmodifiableList(toppings); }
 
 	public void setID(int id) { this.id = id; }
 	public void setName(String name) { this.name = name; }
-	public void setCrust(Crust crust) { this.crust = crust; }
-	public void setSauce(Sauce sauce) { this.sauce = sauce; }
-	public void setCheeses(ArrayList<Cheese> cheeses) { this.cheeses = cheeses; }
-	public void setToppings(ArrayList<Topping> toppings) { this.toppings = toppings; }
+	public void setCrust(Crust crust) { this.crust = crust; invalidateCost(); }
+	public void setSauce(Sauce sauce) { this.sauce = sauce; invalidateCost(); }
+	public void setCheeses(List<Cheese> cheeses) { this.cheeses = new ArrayList<Cheese>(cheeses); invalidateCost(); }
+	public void setToppings(List<Topping> toppings) { this.toppings = new ArrayList<Topping>(toppings); invalidateCost(); }
+
+	/* For the tables, which read a pizza's cheeses and toppings one row at a time. */
+	void addCheese(Cheese cheese) { cheeses.add(cheese); invalidateCost(); }
+	void addTopping(Topping topping) { toppings.add(topping); invalidateCost(); }
+
+	public void invalidateCost() { costs = null; ingredient_set = null; }
+
+	public long getCost(Size size)
+	{
+		Compiled<long[]> costs = this.costs;
+
+		if (costs == null ||
+		    costs.value.length <= size.ordinal() ||
+		    !isCurrent(costs)) {
+			costs = compileCosts(size.ordinal() + 1);
+		}
+
+		return costs.value[size.ordinal()];
+	}
+
+	/* A copy of the set of ingredient IDs on this pizza. */
+	public BitSet getIngredientSet()
+	{
+		return (BitSet) ingredientSet().clone();
+	}
 
-	public double getCost(Size size)
+	public boolean hasIngredient(Ingredient ingredient)
 	{
-		double cost = 0.0;
+		return ingredient.getID() > 0 && ingredientSet().get(ingredient.getID());
+	}
 
-		cost += crust.getCost(size);
-		cost += sauce.getCost(size);
+	private BitSet ingredientSet()
+	{
+		Compiled<BitSet> set = ingredient_set;
 
-		for (Cheese ch: cheeses) {
-			cost += ch.getCost(size);
+		if (set == null || !isCurrent(set)) {
+			return compileIngredientSet();
 		}
 
-		for (Topping tp: toppings) {
-			cost += tp.getCost(size);
+		return set.value;
+	}
+
+	private BitSet compileIngredientSet()
+	{
+		long edits = edits();
+		BitSet set = new BitSet();
+		boolean complete = true;
+
+		complete &= addIngredient(set, getCrust());
+		complete &= addIngredient(set, getSauce());
+
+		for (Cheese ch: getCheeses()) {
+			complete &= addIngredient(set, ch);
 		}
 
-		return cost;
+		for (Topping tp: getToppings()) {
+			complete &= addIngredient(set, tp);
+		}
+
+		if (complete) {
+			ingredient_set = new Compiled<BitSet>(edits, set);
+		}
+
+		return set;
+	}
+
+	private boolean isCurrent(Compiled<?> compiled)
+	{
+		return compiled.edits == frozen || compiled.edits == edits();
+	}
+
+	/*
+	 * The sum of the ingredients' edit counts, which only ever grow, so
+	 * any edit changes the sum. If every ingredient is frozen, as for
+	 * pizzas built from the catalog, nothing can change and the result
+	 * is frozen, which isCurrent takes as current without looking.
+	 */
+	private long edits()
+	{
+		long edits = addEdits(0, getCrust());
+		boolean all_frozen = isFrozen(getCrust());
+
+		edits = addEdits(edits, getSauce());
+		all_frozen &= isFrozen(getSauce());
+
+		for (Cheese ch: getCheeses()) {
+			edits = addEdits(edits, ch);
+			all_frozen &= isFrozen(ch);
+		}
+
+		for (Topping tp: getToppings()) {
+			edits = addEdits(edits, tp);
+			all_frozen &= isFrozen(tp);
+		}
+
+		return all_frozen ? frozen : edits;
+	}
+
+	private static long addEdits(long edits, Ingredient ingredient)
+	{
+		return ingredient == null ? edits : edits + ingredient.edits();
+	}
+
+	private static boolean isFrozen(Ingredient ingredient)
+	{
+		return ingredient == null || ingredient.isFrozen();
+	}
+
+	private static boolean addIngredient(BitSet set, Ingredient ingredient)
+	{
+		if (ingredient == null || ingredient.getID() <= 0) {
+			return false;
+		}
+
+		set.set(ingredient.getID());
+
+		return true;
+	}
+
+	/*
+	 * Sizes are only known to the database a pizza came from, so costs are
+	 * built by ordinal, for at least the built-in sizes and up to the
+	 * largest ordinal asked for so far.
+	 */
+	private Compiled<long[]> compileCosts(int count)
+	{
+		long edits = edits();
+		Compiled<long[]> old = this.costs;
+		long[] costs = new long[Math.max(Math.max(count, Size.built_in.length),
+		                                 old == null ? 0 : old.value.length)];
+
+		for (int i = 0; i < costs.length; i++) {
+			long cost = 0;
+
+			cost += getCrust().getCost(i);
+			cost += getSauce().getCost(i);
+
+			for (Cheese ch: getCheeses()) {
+				cost += ch.getCost(i);
+			}
+
+			for (Topping tp: getToppings()) {
+				cost += tp.getCost(i);
+			}
+
+			costs[i] = cost;
+		}
+
+		Compiled<long[]> compiled = new Compiled<long[]>(edits, costs);
+
+		this.costs = compiled;
+
+		return compiled;
 	}
 }
@@ -0,0 +1,670 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+class PizzaTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    pizza (pizza_id    INTEGER PRIMARY KEY," +
+		"           pizza_name  TEXT," +
+		"           pizza_crust INTEGER NOT NULL REFERENCES crust(crust_id)," +
+		"           pizza_sauce INTEGER NOT NULL REFERENCES sauce(sauce_id)," +
+		"           pizza_recipe INTEGER" +
+		"    );";
+
+	static final String recipe_index_schema =
+		"CREATE INDEX IF NOT EXISTS" +
+		"    pizza_by_recipe ON pizza (pizza_recipe);";
+
+	/* Files written before pizza_recipe existed get it filled in on open. */
+	private static final String add_recipe_str =
+		"ALTER TABLE pizza ADD COLUMN pizza_recipe INTEGER;";
+
+	private static final String set_recipe_str =
+		"UPDATE pizza" +
+		"    SET pizza_recipe = ?" +
+		"    WHERE pizza_id = ?;";
+
+	private static final String pizza_cheese_schema =
+		"CREATE TABLE IF NOT EXISTS pizza_cheese (" +
+		"	pizza_id  INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"	cheese_id INTEGER NOT NULL REFERENCES cheese(cheese_id)," +
+		"	PRIMARY KEY (pizza_id, cheese_id)" +
+		");";
+
+	private static final String pizza_topping_schema =
+		"CREATE TABLE IF NOT EXISTS pizza_topping (" +
+		"	pizza_id   INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"	topping_id INTEGER NOT NULL REFERENCES topping(topping_id)," +
+		"	PRIMARY KEY (pizza_id, topping_id)" +
+		");";
+
+	static final String trigger_schema =
+		"CREATE TRIGGER IF NOT EXISTS pizza_update_deletes" +
+		"    AFTER" +
+		"        UPDATE OF pizza_name," +
+		"                  pizza_crust," +
+		"                  pizza_sauce" +
+		"               ON pizza" +
+		"    BEGIN" +
+		"        DELETE FROM pizza_cheese" +
+		"               WHERE pizza_cheese.pizza_id = OLD.pizza_id;" +
+		"" +
+		"        DELETE FROM pizza_topping" +
+		"               WHERE pizza_topping.pizza_id = OLD.pizza_id;" +
+		"    END;";
+
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    pizza (pizza_name," +
+		"           pizza_crust," +
+		"           pizza_sauce," +
+		"           pizza_recipe)" +
+		"    VALUES (?, ?, ?, ?);";
+
+	private static final String update_str =
+		"UPDATE pizza" +
+		"    SET pizza_name = ?," +
+		"        pizza_crust = ?," +
+		"        pizza_sauce = ?," +
+		"        pizza_recipe = ?" +
+		"    WHERE pizza_id = ?;";
+
+	private static final String find_str =
+		"SELECT pizza_id," +
+		"       pizza_crust," +
+		"       pizza_sauce" +
+		"    FROM pizza" +
+		"    WHERE pizza_recipe = ?" +
+		"      AND pizza_name IS ?;";
+
+	private static final String query_str =
+		"SELECT pizza_id," +
+		"       pizza_name," +
+		"       pizza_crust," +
+		"       pizza_sauce" +
+		"    FROM pizza" +
+		"    WHERE pizza_id = ?;";
+
+	private static final String query_all_str =
+		"SELECT pizza_id," +
+		"       pizza_name," +
+		"       pizza_crust," +
+		"       pizza_sauce" +
+		"    FROM pizza;";
+
+	private static final String insert_pizza_cheese_str =
+		"INSERT INTO" +
+		"    pizza_cheese (pizza_id," +
+		"                  cheese_id)" +
+		"    VALUES (?, ?);";
+
+	private static final String insert_pizza_topping_str =
+		"INSERT INTO" +
+		"    pizza_topping (pizza_id," +
+		"                   topping_id)" +
+		"    VALUES (?, ?);";
+
+	/*
+	 * Only ingredient IDs are read here; the ingredients themselves come
+	 * from the ingredient catalog.
+	 */
+	private static final String query_pizza_cheese_str =
+		"SELECT cheese_id" +
+		"    FROM pizza_cheese" +
+		"    WHERE pizza_id = ?;";
+
+	private static final String query_pizza_topping_str =
+		"SELECT topping_id" +
+		"    FROM pizza_topping" +
+		"    WHERE pizza_id = ?;";
+
+	private static final String query_all_pizza_cheese_str =
+		"SELECT pizza_id," +
+		"       cheese_id" +
+		"    FROM pizza_cheese;";
+
+	private static final String query_all_pizza_topping_str =
+		"SELECT pizza_id," +
+		"       topping_id" +
+		"    FROM pizza_topping;";
+
+	/* Completed with Database.placeholders for each batch. */
+	private static final String query_batch_str =
+		"SELECT pizza_id," +
+		"       pizza_name," +
+		"       pizza_crust," +
+		"       pizza_sauce" +
+		"    FROM pizza" +
+		"    WHERE pizza_id IN ";
+
+	private static final String query_batch_pizza_cheese_str =
+		"SELECT pizza_id," +
+		"       cheese_id" +
+		"    FROM pizza_cheese" +
+		"    WHERE pizza_id IN ";
+
+	private static final String query_batch_pizza_topping_str =
+		"SELECT pizza_id," +
+		"       topping_id" +
+		"    FROM pizza_topping" +
+		"    WHERE pizza_id IN ";
+
+	private DatabaseConnection db;
+
+	public PizzaTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second points these tables'
+	 * references at ingredient.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.execute(pizza_cheese_schema);
+		stmt.execute(pizza_topping_schema);
+		stmt.execute(trigger_schema);
+
+		if (Database.columnType(conn, "pizza", "pizza_recipe") == null) {
+			addRecipes(conn);
+		}
+
+		stmt.execute(recipe_index_schema);
+		stmt.close();
+	}
+
+	public void insert(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str, Statement.RETURN_GENERATED_KEYS);
+
+		insert_stmt.setString(1, pizza.getName());
+		insert_stmt.setInt(2, pizza.getCrust().getID());
+		insert_stmt.setInt(3, pizza.getSauce().getID());
+		insert_stmt.setLong(4, recipe(pizza));
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+
+		pizza.setID(Database.generatedKey(insert_stmt));
+
+		insertCheeses(pizza);
+		insertToppings(pizza);
+	}
+
+	public void update(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement update_stmt = db.prepare(update_str);
+
+		update_stmt.setString(1, pizza.getName());
+		update_stmt.setInt(2, pizza.getCrust().getID());
+		update_stmt.setInt(3, pizza.getSauce().getID());
+		update_stmt.setLong(4, recipe(pizza));
+		update_stmt.setInt(5, pizza.getID());
+
+		update_stmt.executeUpdate();
+		update_stmt.clearParameters();
+
+		insertCheeses(pizza);
+		insertToppings(pizza);
+	}
+
+	public Pizza query(int pizza_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		Pizza pizza = new Pizza();
+
+		query_stmt.setInt(1, pizza_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+
+		pizza.setID(rset.getInt(1));
+		pizza.setName(rset.getString(2));
+		pizza.setCrust(db.getCrust(rset.getInt(3)));
+		pizza.setSauce(db.getSauce(rset.getInt(4)));
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		pizza.setCheeses(queryCheeses(pizza.getID()));
+		pizza.setToppings(queryToppings(pizza.getID()));
+
+		return pizza;
+	}
+
+	/*
+	 * Returns the ID of a stored pizza with the same name and recipe as
+	 * pizza, or 0 if there is none. Rows whose recipe hash matches are
+	 * compared in full, so a hash collision never merges two pizzas.
+	 */
+	public int find(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement find_stmt = db.prepare(find_str);
+
+		find_stmt.setLong(1, recipe(pizza));
+		find_stmt.setString(2, pizza.getName());
+
+		ArrayList<Integer> candidates = new ArrayList<Integer>();
+		ResultSet rset = find_stmt.executeQuery();
+
+		while (rset.next()) {
+			if (rset.getInt(2) == pizza.getCrust().getID()
+			    && rset.getInt(3) == pizza.getSauce().getID()) {
+				candidates.add(rset.getInt(1));
+			}
+		}
+
+		rset.close();
+		find_stmt.clearParameters();
+
+		for (int id: candidates) {
+			if (ids(queryCheeses(id)).equals(ids(pizza.getCheeses()))
+			    && ids(queryToppings(id)).equals(ids(pizza.getToppings()))) {
+				return id;
+			}
+		}
+
+		return 0;
+	}
+
+	public static long recipe(Pizza pizza)
+	{
+		return recipe(pizza.getCrust().getID(),
+		              pizza.getSauce().getID(),
+		              ids(pizza.getCheeses()),
+		              ids(pizza.getToppings()));
+	}
+
+	/*
+	 * The recipe fingerprint: a 64-bit FNV-1a hash of the crust, the
+	 * sauce and the sorted, distinct cheese and topping IDs, each set
+	 * preceded by its size so cheeses and toppings cannot run together.
+	 */
+	public static long recipe(int crust_id,
+	                          int sauce_id,
+	                          TreeSet<Integer> cheese_ids,
+	                          TreeSet<Integer> topping_ids)
+	{
+		long hash = 0xcbf29ce484222325L;
+
+		hash = fnv(hash, crust_id);
+		hash = fnv(hash, sauce_id);
+		hash = fnv(hash, cheese_ids.size());
+
+		for (int id: cheese_ids) {
+			hash = fnv(hash, id);
+		}
+
+		hash = fnv(hash, topping_ids.size());
+
+		for (int id: topping_ids) {
+			hash = fnv(hash, id);
+		}
+
+		return hash;
+	}
+
+	private static long fnv(long hash, int value)
+	{
+		for (int shift = 0; shift < 32; shift += 8) {
+			hash ^= (value >>> shift) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	static TreeSet<Integer> ids(List<? extends Ingredient> ingredients)
+	{
+		TreeSet<Integer> ids = new TreeSet<Integer>();
+
+		for (Ingredient ingredient: ingredients) {
+			ids.add(ingredient.getID());
+		}
+
+		return ids;
+	}
+
+	/*
+	 * Reads a two column link table, such as pizza_cheese, into a map
+	 * from the first column to the set of values in the second.
+	 */
+	static HashMap<Integer, TreeSet<Integer>> queryLinks(Statement stmt, String str)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		HashMap<Integer, TreeSet<Integer>> links = new HashMap<Integer, TreeSet<Integer>>();
+		ResultSet rset = stmt.executeQuery(str);
+
+		while (rset.next()) {
+			TreeSet<Integer> ids = links.get(rset.getInt(1));
+
+			if (ids == null) {
+				ids = new TreeSet<Integer>();
+				links.put(rset.getInt(1), ids);
+			}
+
+			ids.add(rset.getInt(2));
+		}
+
+		rset.close();
+
+		return links;
+	}
+
+	/*
+	 * Adds pizza_recipe to an older file and fills it in. This runs
+	 * before the ingredient catalog is loaded, so it works from IDs alone.
+	 */
+	private static void addRecipes(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		PreparedStatement set_stmt = null;
+
+		conn.setAutoCommit(false);
+
+		try {
+			stmt.execute(add_recipe_str);
+
+			HashMap<Integer, TreeSet<Integer>> cheeses = queryLinks(stmt, query_all_pizza_cheese_str);
+			HashMap<Integer, TreeSet<Integer>> toppings = queryLinks(stmt, query_all_pizza_topping_str);
+
+			set_stmt = conn.prepareStatement(set_recipe_str);
+
+			ResultSet rset = stmt.executeQuery(query_all_str);
+
+			while (rset.next()) {
+				int id = rset.getInt(1);
+				TreeSet<Integer> cheese_ids = cheeses.get(id);
+				TreeSet<Integer> topping_ids = toppings.get(id);
+
+				set_stmt.setLong(1, recipe(rset.getInt(3),
+				                           rset.getInt(4),
+				                           cheese_ids == null ? new TreeSet<Integer>() : cheese_ids,
+				                           topping_ids == null ? new TreeSet<Integer>() : topping_ids));
+				set_stmt.setInt(2, id);
+				set_stmt.addBatch();
+			}
+
+			rset.close();
+			set_stmt.executeBatch();
+
+			conn.commit();
+
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+
+		} finally {
+			conn.setAutoCommit(true);
+
+			if (set_stmt != null) {
+				set_stmt.close();
+			}
+
+			stmt.close();
+		}
+	}
+
+	/*
+	 * Looks up several pizzas at once, three IN (...) queries per
+	 * Database.batch_size IDs.
+	 */
+	public HashMap<Integer, Pizza> queryBatch(Collection<Integer> pizza_ids)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		HashMap<Integer, Pizza> pizzas = new HashMap<Integer, Pizza>();
+		ArrayList<Integer> all = new ArrayList<Integer>(pizza_ids);
+		Connection conn = db.getConnection();
+
+		for (int i = 0; i < all.size(); i += Database.batch_size) {
+			List<Integer> ids = all.subList(i, Math.min(all.size(), i + Database.batch_size));
+
+			PreparedStatement stmt = Database.prepareBatch(conn, query_batch_str, ids);
+			ResultSet rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				Pizza pizza = new Pizza();
+
+				pizza.setID(rset.getInt(1));
+				pizza.setName(rset.getString(2));
+				pizza.setCrust(db.getCrust(rset.getInt(3)));
+				pizza.setSauce(db.getSauce(rset.getInt(4)));
+
+				pizzas.put(pizza.getID(), pizza);
+			}
+
+			stmt.close();
+
+			stmt = Database.prepareBatch(conn, query_batch_pizza_cheese_str, ids);
+			rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				pizzas.get(rset.getInt(1)).addCheese(db.getCheese(rset.getInt(2)));
+			}
+
+			stmt.close();
+
+			stmt = Database.prepareBatch(conn, query_batch_pizza_topping_str, ids);
+			rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				pizzas.get(rset.getInt(1)).addTopping(db.getTopping(rset.getInt(2)));
+			}
+
+			stmt.close();
+		}
+
+		return pizzas;
+	}
+
+	public ArrayList<Pizza> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+		PreparedStatement query_all_pizza_cheese_stmt = db.prepare(query_all_pizza_cheese_str);
+		PreparedStatement query_all_pizza_topping_stmt = db.prepare(query_all_pizza_topping_str);
+
+		/*
+		 * Load the whole menu in three queries no matter how many pizzas
+		 * there are, then hook the cheeses and toppings up to their pizzas.
+		 */
+		ArrayList<Pizza> list = new ArrayList<Pizza>();
+		HashMap<Integer, Pizza> pizzas = new HashMap<Integer, Pizza>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+
+		while (rset.next()) {
+			Pizza pizza = new Pizza();
+
+			pizza.setID(rset.getInt(1));
+			pizza.setName(rset.getString(2));
+			pizza.setCrust(db.getCrust(rset.getInt(3)));
+			pizza.setSauce(db.getSauce(rset.getInt(4)));
+
+			list.add(pizza);
+			pizzas.put(pizza.getID(), pizza);
+		}
+
+		rset.close();
+
+		rset = query_all_pizza_cheese_stmt.executeQuery();
+
+		while (rset.next()) {
+			Pizza pizza = pizzas.get(rset.getInt(1));
+
+			if (pizza != null) {
+				pizza.addCheese(db.getCheese(rset.getInt(2)));
+			}
+		}
+
+		rset.close();
+
+		rset = query_all_pizza_topping_stmt.executeQuery();
+
+		while (rset.next()) {
+			Pizza pizza = pizzas.get(rset.getInt(1));
+
+			if (pizza != null) {
+				pizza.addTopping(db.getTopping(rset.getInt(2)));
+			}
+		}
+
+		rset.close();
+
+		return list;
+	}
+
+	/*
+	 * Every pizza as a MenuIndex recipe. This runs the same three queries
+	 * as queryAll but reads IDs only, so no Pizza is built.
+	 */
+	public ArrayList<MenuIndex.Recipe> queryRecipes()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+		PreparedStatement query_all_pizza_cheese_stmt = db.prepare(query_all_pizza_cheese_str);
+		PreparedStatement query_all_pizza_topping_stmt = db.prepare(query_all_pizza_topping_str);
+
+		ArrayList<MenuIndex.Recipe> list = new ArrayList<MenuIndex.Recipe>();
+		HashMap<Integer, MenuIndex.Recipe> recipes = new HashMap<Integer, MenuIndex.Recipe>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+
+		while (rset.next()) {
+			MenuIndex.Recipe recipe = new MenuIndex.Recipe(rset.getInt(1),
+			                                               rset.getString(2),
+			                                               rset.getInt(3),
+			                                               rset.getInt(4));
+
+			list.add(recipe);
+			recipes.put(recipe.id, recipe);
+		}
+
+		rset.close();
+
+		PreparedStatement[] link_stmts = { query_all_pizza_cheese_stmt, query_all_pizza_topping_stmt };
+
+		for (PreparedStatement stmt: link_stmts) {
+			rset = stmt.executeQuery();
+
+			while (rset.next()) {
+				MenuIndex.Recipe recipe = recipes.get(rset.getInt(1));
+
+				if (recipe != null) {
+					recipe.ingredients.set(rset.getInt(2));
+				}
+			}
+
+			rset.close();
+		}
+
+		return list;
+	}
+
+	private void insertCheeses(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_pizza_cheese_stmt = db.prepare(insert_pizza_cheese_str);
+
+		for (Cheese cheese: pizza.getCheeses()) {
+			insert_pizza_cheese_stmt.setInt(1, pizza.getID());
+			insert_pizza_cheese_stmt.setInt(2, cheese.getID());
+
+			insert_pizza_cheese_stmt.addBatch();
+		}
+
+		insert_pizza_cheese_stmt.executeBatch();
+		insert_pizza_cheese_stmt.clearParameters();
+	}
+
+	private void insertToppings(Pizza pizza)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_pizza_topping_stmt = db.prepare(insert_pizza_topping_str);
+
+		for (Topping topping: pizza.getToppings()) {
+			insert_pizza_topping_stmt.setInt(1, pizza.getID());
+			insert_pizza_topping_stmt.setInt(2, topping.getID());
+
+			insert_pizza_topping_stmt.addBatch();
+		}
+
+		insert_pizza_topping_stmt.executeBatch();
+		insert_pizza_topping_stmt.clearParameters();
+	}
+
+	private ArrayList<Cheese> queryCheeses(int pizza_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_pizza_cheese_stmt = db.prepare(query_pizza_cheese_str);
+
+		ArrayList<Cheese> list = new ArrayList<Cheese>();
+
+		query_pizza_cheese_stmt.setInt(1, pizza_id);
+
+		ResultSet rset = query_pizza_cheese_stmt.executeQuery();
+
+		while (rset.next()) {
+			list.add(db.getCheese(rset.getInt(1)));
+		}
+
+		rset.close();
+		query_pizza_cheese_stmt.clearParameters();
+
+		return list;
+	}
+
+	private ArrayList<Topping> queryToppings(int pizza_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_pizza_topping_stmt = db.prepare(query_pizza_topping_str);
+
+		ArrayList<Topping> list = new ArrayList<Topping>();
+
+		query_pizza_topping_stmt.setInt(1, pizza_id);
+
+		ResultSet rset = query_pizza_topping_stmt.executeQuery();
+
+		while (rset.next()) {
+			list.add(db.getTopping(rset.getInt(1)));
+		}
+
+		rset.close();
+		query_pizza_topping_stmt.clearParameters();
+
+		return list;
+	}
+}
@@ -0,0 +1,135 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+class SauceTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    sauce (sauce_id INTEGER PRIMARY KEY" +
+		"               REFERENCES ingredient(ingredient_id)" +
+		"    );";
+
+	private static final String view_schema =
+		"CREATE VIEW IF NOT EXISTS" +
+		"    sauce_view (sauce_id," +
+		"                sauce_name," +
+		"                sauce_small_cost," +
+		"                sauce_medium_cost," +
+		"                sauce_large_cost)" +
+		"    AS SELECT sauce_id," +
+		"              ingredient_name," +
+		"              ingredient_small_cost," +
+		"              ingredient_medium_cost," +
+		"              ingredient_large_cost" +
+		"           FROM sauce LEFT JOIN ingredient ON sauce_id = ingredient_id;";
+
+	/* This table's value of ingredient.ingredient_kind. */
+	static final String kind = "sauce";
+
+	private static final String query_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient.ingredient_id = ?" +
+		"      AND ingredient_kind = '" + kind + "';";
+
+	private static final String query_all_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient_kind = '" + kind + "'" +
+		"    ORDER BY ingredient.ingredient_id;";
+
+	private DatabaseConnection db;
+
+	public SauceTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second folds this table into
+	 * ingredient.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.execute(view_schema);
+		stmt.close();
+	}
+
+	public void insert(Sauce sauce)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		db.getIngredientTable().insert(sauce, kind);
+	}
+
+	public Sauce query(int sauce_id)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_stmt = db.prepare(query_str);
+
+		query_stmt.setInt(1, sauce_id);
+
+		ResultSet rset = query_stmt.executeQuery();
+		Sauce sauce = null;
+
+		while (rset.next()) {
+			if (sauce == null) {
+				sauce = new Sauce(rset);
+			}
+
+			IngredientTable.readCost(db, sauce, rset);
+		}
+
+		rset.close();
+		query_stmt.clearParameters();
+
+		if (sauce == null) {
+			throw new SQLException("No sauce with ID " + sauce_id);
+		}
+
+		return sauce;
+	}
+
+	public ArrayList<Sauce> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+
+		ArrayList<Sauce> list = new ArrayList<Sauce>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+		Sauce sauce = null;
+
+		while (rset.next()) {
+			if (sauce == null || sauce.getID() != rset.getInt(1)) {
+				sauce = new Sauce(rset);
+				list.add(sauce);
+			}
+
+			IngredientTable.readCost(db, sauce, rset);
+		}
+
+		rset.close();
+
+		return list;
+	}
+}
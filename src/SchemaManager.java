@@ -0,0 +1,335 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+/*
+ * Brings a file's schema up to date when it is opened. The schema version
+ * is kept in PRAGMA user_version, shifted left one bit; the low bit is
+ * the flag set by Database.setInitted. Files from before versioning have
+ * a user_version of 0 or 1, so they read as version 0 with their flag
+ * intact.
+ *
+ * An up-to-date file costs one PRAGMA read and no DDL. Otherwise each
+ * step past the file's version runs in order. A step writes its version
+ * in the same transaction as its DDL, so a step that fails or is
+ * interrupted leaves the file as it was, at the previous version, and
+ * runs in full on the next open. The first step is the exception: it is
+ * made of pieces that each check the schema before changing it, and is
+ * safe to repeat. Changing the schema means adding a step to the end,
+ * never editing one that has shipped.
+ */
+final class SchemaManager
+{
+	private static abstract class Step
+	{
+		/* Applies the step and sets PRAGMA user_version to user_version. */
+		abstract void apply(Connection conn, int user_version)
+			throws SQLException,
+			       SQLTimeoutException;
+	}
+
+	/*
+	 * Crusts, sauces, cheeses and toppings become rows of ingredient told
+	 * apart by ingredient_kind, in place of ID-only tables joined back to
+	 * ingredient through views. The pizza tables are rebuilt to reference
+	 * ingredient. An ingredient in none of the type tables could not be
+	 * used by any pizza, and is dropped.
+	 */
+	private static final String[] ingredient_kind_strs = {
+		"DROP VIEW IF EXISTS crust_view;",
+		"DROP VIEW IF EXISTS sauce_view;",
+		"DROP VIEW IF EXISTS cheese_view;",
+		"DROP VIEW IF EXISTS topping_view;",
+		"ALTER TABLE ingredient RENAME TO ingredient_untyped;",
+		"CREATE TABLE" +
+		"    ingredient (ingredient_id          INTEGER PRIMARY KEY," +
+		"                ingredient_kind        TEXT           NOT NULL" +
+		"                    CHECK (ingredient_kind IN ('crust', 'sauce', 'cheese', 'topping'))," +
+		"                ingredient_name        TEXT    UNIQUE NOT NULL," +
+		"                ingredient_small_cost  INTEGER        NOT NULL," +
+		"                ingredient_medium_cost INTEGER        NOT NULL," +
+		"                ingredient_large_cost  INTEGER        NOT NULL," +
+		"                CONSTRAINT ingredient_check_cost" +
+		"                    CHECK (ingredient_small_cost <= ingredient_medium_cost" +
+		"                    AND    ingredient_medium_cost <= ingredient_large_cost)" +
+		"    );",
+		"INSERT INTO" +
+		"    ingredient (ingredient_id," +
+		"                ingredient_kind," +
+		"                ingredient_name," +
+		"                ingredient_small_cost," +
+		"                ingredient_medium_cost," +
+		"                ingredient_large_cost)" +
+		"    SELECT ingredient_id," +
+		"           kind," +
+		"           ingredient_name," +
+		"           ingredient_small_cost," +
+		"           ingredient_medium_cost," +
+		"           ingredient_large_cost" +
+		"        FROM (SELECT ingredient_untyped.*," +
+		"                     CASE WHEN ingredient_id IN (SELECT crust_id FROM crust) THEN 'crust'" +
+		"                          WHEN ingredient_id IN (SELECT sauce_id FROM sauce) THEN 'sauce'" +
+		"                          WHEN ingredient_id IN (SELECT cheese_id FROM cheese) THEN 'cheese'" +
+		"                          WHEN ingredient_id IN (SELECT topping_id FROM topping) THEN 'topping'" +
+		"                     END AS kind" +
+		"                  FROM ingredient_untyped)" +
+		"        WHERE kind IS NOT NULL;",
+		"DROP TABLE ingredient_untyped;",
+
+		/*
+		 * Covers every column the type tables read, in ID order within
+		 * each kind.
+		 */
+		"CREATE INDEX" +
+		"    ingredient_by_kind ON ingredient (ingredient_kind," +
+		"                                      ingredient_id," +
+		"                                      ingredient_name," +
+		"                                      ingredient_small_cost," +
+		"                                      ingredient_medium_cost," +
+		"                                      ingredient_large_cost);",
+
+		"DROP TRIGGER IF EXISTS pizza_update_deletes;",
+		"DROP INDEX IF EXISTS pizza_by_recipe;",
+		"ALTER TABLE pizza RENAME TO pizza_typed;",
+		"CREATE TABLE" +
+		"    pizza (pizza_id     INTEGER PRIMARY KEY," +
+		"           pizza_name   TEXT," +
+		"           pizza_crust  INTEGER NOT NULL REFERENCES ingredient(ingredient_id)," +
+		"           pizza_sauce  INTEGER NOT NULL REFERENCES ingredient(ingredient_id)," +
+		"           pizza_recipe INTEGER" +
+		"    );",
+		"INSERT INTO" +
+		"    pizza (pizza_id," +
+		"           pizza_name," +
+		"           pizza_crust," +
+		"           pizza_sauce," +
+		"           pizza_recipe)" +
+		"    SELECT pizza_id," +
+		"           pizza_name," +
+		"           pizza_crust," +
+		"           pizza_sauce," +
+		"           pizza_recipe" +
+		"        FROM pizza_typed;",
+		"DROP TABLE pizza_typed;",
+		PizzaTable.recipe_index_schema,
+		PizzaTable.trigger_schema,
+
+		"ALTER TABLE pizza_cheese RENAME TO pizza_cheese_typed;",
+		"CREATE TABLE pizza_cheese (" +
+		"	pizza_id  INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"	cheese_id INTEGER NOT NULL REFERENCES ingredient(ingredient_id)," +
+		"	PRIMARY KEY (pizza_id, cheese_id)" +
+		");",
+		"INSERT INTO pizza_cheese SELECT pizza_id, cheese_id FROM pizza_cheese_typed;",
+		"DROP TABLE pizza_cheese_typed;",
+
+		"ALTER TABLE pizza_topping RENAME TO pizza_topping_typed;",
+		"CREATE TABLE pizza_topping (" +
+		"	pizza_id   INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"	topping_id INTEGER NOT NULL REFERENCES ingredient(ingredient_id)," +
+		"	PRIMARY KEY (pizza_id, topping_id)" +
+		");",
+		"INSERT INTO pizza_topping SELECT pizza_id, topping_id FROM pizza_topping_typed;",
+		"DROP TABLE pizza_topping_typed;",
+
+		"DROP TABLE crust;",
+		"DROP TABLE sauce;",
+		"DROP TABLE cheese;",
+		"DROP TABLE topping;"
+	};
+
+	/*
+	 * Sizes become rows of size, and an ingredient's costs rows of
+	 * ingredient_cost, one per size, in place of three cost columns.
+	 * order_line stores the size's ID in place of its name. The first
+	 * three IDs are small, medium and large, matching Pizza.Size.
+	 */
+	private static final String[] size_catalog_strs = {
+		"CREATE TABLE" +
+		"    size (size_id   INTEGER PRIMARY KEY," +
+		"          size_name TEXT    UNIQUE NOT NULL" +
+		"    );",
+		"INSERT INTO" +
+		"    size (size_id," +
+		"          size_name)" +
+		"    VALUES (0, 'small')," +
+		"           (1, 'medium')," +
+		"           (2, 'large');",
+
+		"CREATE TABLE" +
+		"    ingredient_cost (ingredient_id   INTEGER NOT NULL REFERENCES ingredient(ingredient_id)," +
+		"                     size_id         INTEGER NOT NULL REFERENCES size(size_id)," +
+		"                     ingredient_cost INTEGER NOT NULL," +
+		"                     PRIMARY KEY (ingredient_id, size_id)" +
+		"    ) WITHOUT ROWID;",
+		"INSERT INTO" +
+		"    ingredient_cost (ingredient_id," +
+		"                     size_id," +
+		"                     ingredient_cost)" +
+		"    SELECT ingredient_id, 0, ingredient_small_cost FROM ingredient" +
+		"    UNION ALL" +
+		"    SELECT ingredient_id, 1, ingredient_medium_cost FROM ingredient" +
+		"    UNION ALL" +
+		"    SELECT ingredient_id, 2, ingredient_large_cost FROM ingredient;",
+
+		"DROP INDEX ingredient_by_kind;",
+		"ALTER TABLE ingredient RENAME TO ingredient_costed;",
+		"CREATE TABLE" +
+		"    ingredient (ingredient_id   INTEGER PRIMARY KEY," +
+		"                ingredient_kind TEXT           NOT NULL" +
+		"                    CHECK (ingredient_kind IN ('crust', 'sauce', 'cheese', 'topping'))," +
+		"                ingredient_name TEXT    UNIQUE NOT NULL" +
+		"    );",
+		"INSERT INTO" +
+		"    ingredient (ingredient_id," +
+		"                ingredient_kind," +
+		"                ingredient_name)" +
+		"    SELECT ingredient_id," +
+		"           ingredient_kind," +
+		"           ingredient_name" +
+		"        FROM ingredient_costed;",
+		"DROP TABLE ingredient_costed;",
+		"CREATE INDEX" +
+		"    ingredient_by_kind ON ingredient (ingredient_kind," +
+		"                                      ingredient_id," +
+		"                                      ingredient_name);",
+
+		"DROP INDEX order_line_by_order;",
+		"ALTER TABLE order_line RENAME TO order_line_named;",
+		"CREATE TABLE" +
+		"    order_line (order_id   INTEGER NOT NULL," +
+		"                pizza_id   INTEGER NOT NULL," +
+		"                pizza_size INTEGER NOT NULL," +
+		"                pizza_qty  INTEGER NOT NULL," +
+		"                pizza_cost INTEGER NOT NULL," +
+		"                PRIMARY KEY (order_id, pizza_id, pizza_size)" +
+		"    );",
+		"INSERT INTO" +
+		"    order_line (order_id," +
+		"                pizza_id," +
+		"                pizza_size," +
+		"                pizza_qty," +
+		"                pizza_cost)" +
+		"    SELECT order_id," +
+		"           pizza_id," +
+		"           CASE pizza_size" +
+		"               WHEN 'small' THEN 0" +
+		"               WHEN 'medium' THEN 1" +
+		"               WHEN 'large' THEN 2" +
+		"           END," +
+		"           pizza_qty," +
+		"           pizza_cost" +
+		"        FROM order_line_named;",
+		"DROP TABLE order_line_named;",
+		OrdersTable.order_line_index_schema
+	};
+
+	private static final Step[] steps = {
+		/*
+		 * 1: every table as it was when versioning began. Files from
+		 * before then may be in any of the shapes the schema went
+		 * through, so each table checks the columns that changed and
+		 * rebuilds only what is out of date.
+		 */
+		new Step() {
+			void apply(Connection conn, int user_version)
+				throws SQLException,
+				       SQLTimeoutException
+			{
+				IngredientTable.create(conn);
+				CrustTable.create(conn);
+				SauceTable.create(conn);
+				CheeseTable.create(conn);
+				ToppingTable.create(conn);
+				PizzaTable.create(conn);
+				AddressTable.create(conn);
+				CardTable.create(conn);
+				CustomerTable.create(conn);
+				OrdersTable.create(conn);
+
+				setUserVersion(conn, user_version);
+			}
+		},
+
+		/* 2: single-table ingredients; see ingredient_kind_strs. */
+		new Step() {
+			void apply(Connection conn, int user_version)
+				throws SQLException,
+				       SQLTimeoutException
+			{
+				Database.migrate(conn, ingredient_kind_strs, user_version);
+			}
+		},
+
+		/* 3: the size catalog; see size_catalog_strs. */
+		new Step() {
+			void apply(Connection conn, int user_version)
+				throws SQLException,
+				       SQLTimeoutException
+			{
+				Database.migrate(conn, size_catalog_strs, user_version);
+			}
+		}
+	};
+
+	static final int version = steps.length;
+
+	private SchemaManager()
+	{
+	}
+
+	static void upgrade(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		int user_version = userVersion(conn);
+		int from = user_version >> 1;
+
+		if (from > version) {
+			throw new SQLException("Schema version " + from + " is newer than this build's " + version + ".");
+		}
+
+		for (int i = from; i < version; i++) {
+			steps[i].apply(conn, (i + 1) << 1 | (user_version & 1));
+		}
+	}
+
+	static boolean isInitted(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		return (userVersion(conn) & 1) != 0;
+	}
+
+	static void setInitted(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		setUserVersion(conn, userVersion(conn) | 1);
+	}
+
+	private static int userVersion(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		ResultSet rset = stmt.executeQuery("PRAGMA user_version;");
+		int user_version = rset.getInt(1);
+
+		rset.close();
+		stmt.close();
+
+		return user_version;
+	}
+
+	private static void setUserVersion(Connection conn, int user_version)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute("PRAGMA user_version = " + user_version + ";");
+		stmt.close();
+	}
+}
@@ -0,0 +1,70 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+
+/*
+ * The sizes pizzas are sold in, numbered from 0 in the order they were
+ * added. Each Database holds the ones it has loaded so far; see
+ * Database.lookupAllSizes.
+ */
+class SizeTable
+{
+	private static final String insert_str =
+		"INSERT INTO" +
+		"    size (size_id," +
+		"          size_name)" +
+		"    VALUES (?, ?);";
+
+	private static final String query_all_str =
+		"SELECT size_id," +
+		"       size_name" +
+		"    FROM size" +
+		"    ORDER BY size_id;";
+
+	private DatabaseConnection db;
+
+	public SizeTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	public void insert(int size_id, String name)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement insert_stmt = db.prepare(insert_str);
+
+		insert_stmt.setInt(1, size_id);
+		insert_stmt.setString(2, name);
+
+		insert_stmt.executeUpdate();
+		insert_stmt.clearParameters();
+	}
+
+	/* Names of all sizes, indexed by size ID. */
+	public ArrayList<String> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+
+		ArrayList<String> names = new ArrayList<String>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+
+		while (rset.next()) {
+			if (rset.getInt(1) != names.size()) {
+				rset.close();
+				throw new SQLException("Size IDs do not run from 0 without gaps.");
+			}
+
+			names.add(rset.getString(2));
+		}
+
+		rset.close();
+
+		return names;
+	}
+}
@@ -0,0 +1,234 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * An opt-in log of slow statements, on when the
+ * pizzashop.db.slow_query_ms system property is set. An execute taking
+ * at least that many milliseconds is printed with the types of its bound
+ * parameters and its query plan. The values themselves are never logged,
+ * as they include card numbers, emails and password hashes. Only the execute call itself is timed: for a query
+ * that is the time to its first row, which covers any sorting but not
+ * the rest of a plain scan.
+ *
+ * The plan of each statement is also checked when it is first prepared,
+ * and the tables' own statements all while the database opens. A
+ * plan scanning a table of at least pizzashop.db.scan_warn_rows rows is
+ * printed as a warning, as it will only get slower while the table
+ * grows. Plans are looked up once per SQL string and cached.
+ */
+class SlowQueryLog
+{
+	private static final long threshold_ms = Long.getLong("pizzashop.db.slow_query_ms", -1);
+	private static final long scan_warn_rows = Long.getLong("pizzashop.db.scan_warn_rows", 10000);
+
+	private static final String table_exists_str =
+		"SELECT 1" +
+		"    FROM sqlite_master" +
+		"    WHERE type = 'table'" +
+		"      AND name = ?;";
+
+	private long threshold_nanos;
+	private ConcurrentHashMap<String, String> plans = new ConcurrentHashMap<String, String>();
+
+	private SlowQueryLog(long threshold_ms)
+	{
+		threshold_nanos = TimeUnit.MILLISECONDS.toNanos(threshold_ms);
+	}
+
+	/* The log asked for by the system properties, or null for none. */
+	static SlowQueryLog fromProperties()
+	{
+		if (threshold_ms < 0) {
+			return null;
+		}
+
+		return new SlowQueryLog(threshold_ms);
+	}
+
+	void check(Connection conn, String sql)
+	{
+		if (plans.containsKey(sql)) {
+			return;
+		}
+
+		String plan = plan(conn, sql);
+
+		for (String step: plan.split("\n")) {
+			if (!step.startsWith("SCAN ")) {
+				continue;
+			}
+
+			String table = step.substring(5).split(" ")[0];
+			long rows = approximateRows(conn, table);
+
+			if (rows >= scan_warn_rows) {
+				print("Statement scans " + table + " (about " + rows + " rows):", sql, null, plan);
+			}
+		}
+	}
+
+	/*
+	 * Checks every SQL string the given table classes keep in their
+	 * static *_str fields. Statements are prepared on first use, so
+	 * without this most would not be checked until a caller first needed
+	 * them. The IN lists Database.prepareBatch completes are given one
+	 * placeholder.
+	 */
+	void checkAll(Connection conn, Class<?>... tables)
+	{
+		for (Class<?> table: tables) {
+			for (Field field: table.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) ||
+				    field.getType() != String.class ||
+				    !field.getName().endsWith("_str")) {
+					continue;
+				}
+
+				String sql;
+
+				try {
+					field.setAccessible(true);
+					sql = (String) field.get(null);
+
+				} catch (ReflectiveOperationException | RuntimeException e) {
+					continue;
+				}
+
+				if (sql.trim().endsWith(" IN")) {
+					sql += "(?);";
+				}
+
+				check(conn, sql);
+			}
+		}
+	}
+
+	void executed(Statement stmt, String sql, Object[] parameters, long nanos)
+	{
+		if (nanos < threshold_nanos) {
+			return;
+		}
+
+		String plan;
+
+		try {
+			plan = plan(stmt.getConnection(), sql);
+
+		} catch (SQLException e) {
+			plan = "(unavailable: " + e.getMessage() + ")";
+		}
+
+		print(String.format("Slow statement (%.1f ms):", nanos / 1e6), sql, parameters, plan);
+	}
+
+	/*
+	 * The EXPLAIN QUERY PLAN steps for sql, one per line. Only queries
+	 * and DML have a plan worth reading; other statements get none.
+	 */
+	private String plan(Connection conn, String sql)
+	{
+		String plan = plans.get(sql);
+
+		if (plan != null) {
+			return plan;
+		}
+
+		String verb = sql.trim().split("\\s+", 2)[0].toUpperCase();
+
+		if (!verb.equals("SELECT") &&
+		    !verb.equals("INSERT") &&
+		    !verb.equals("UPDATE") &&
+		    !verb.equals("DELETE") &&
+		    !verb.equals("WITH")) {
+			plans.put(sql, "");
+			return "";
+		}
+
+		StringBuilder steps = new StringBuilder();
+
+		try {
+			Statement stmt = conn.createStatement();
+			ResultSet rset = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql);
+
+			while (rset.next()) {
+				if (steps.length() > 0) {
+					steps.append('\n');
+				}
+
+				steps.append(rset.getString(4));
+			}
+
+			rset.close();
+			stmt.close();
+
+			plan = steps.toString();
+
+		} catch (SQLException e) {
+			plan = "(unavailable: " + e.getMessage() + ")";
+		}
+
+		plans.put(sql, plan);
+
+		return plan;
+	}
+
+	/* max(rowid), which is cheap and near enough to tell a large table. */
+	private static long approximateRows(Connection conn, String table)
+	{
+		try {
+			PreparedStatement exists = conn.prepareStatement(table_exists_str);
+
+			exists.setString(1, table);
+
+			boolean found = exists.executeQuery().next();
+
+			exists.close();
+
+			if (!found) {
+				return -1;
+			}
+
+			Statement stmt = conn.createStatement();
+			ResultSet rset = stmt.executeQuery("SELECT max(rowid) FROM \"" + table + "\";");
+			long rows = rset.getLong(1);
+
+			rset.close();
+			stmt.close();
+
+			return rows;
+
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	private static void print(String heading, String sql, Object[] parameters, String plan)
+	{
+		StringBuilder msg = new StringBuilder(heading);
+
+		msg.append("\n    ").append(sql.trim().replaceAll("\\s+", " "));
+
+		if (parameters != null) {
+			msg.append("\n    parameter types:");
+
+			for (Object parameter: parameters) {
+				msg.append(' ').append(parameter);
+			}
+		}
+
+		if (plan.length() > 0) {
+			for (String step: plan.split("\n")) {
+				msg.append("\n    plan: ").append(step);
+			}
+		}
+
+		System.err.println(msg);
+	}
+}
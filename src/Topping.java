@@ -15,10 +15,15 @@ public class Topping extends Ingredient
 
 	public Topping(int    id,
 	               String name,
-	               double small_cost,
-	               double medium_cost,
-	               double large_cost)
+	               long   small_cost,
+	               long   medium_cost,
+	               long   large_cost)
 	{
 		super(id, name, small_cost, medium_cost, large_cost);
 	}
+
+	public Topping(int id, String name, long[] costs)
+	{
+		super(id, name, costs);
+	}
 }
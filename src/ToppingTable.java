@@ -0,0 +1,96 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+class ToppingTable
+{
+	private static final String table_schema =
+		"CREATE TABLE IF NOT EXISTS" +
+		"    topping (topping_id INTEGER PRIMARY KEY" +
+		"                 REFERENCES ingredient(ingredient_id)" +
+		"    );";
+
+	private static final String view_schema =
+		"CREATE VIEW IF NOT EXISTS" +
+		"    topping_view (topping_id," +
+		"                  topping_name," +
+		"                  topping_small_cost," +
+		"                  topping_medium_cost," +
+		"                  topping_large_cost)" +
+		"    AS SELECT topping_id," +
+		"              ingredient_name," +
+		"              ingredient_small_cost," +
+		"              ingredient_medium_cost," +
+		"              ingredient_large_cost" +
+		"           FROM topping LEFT JOIN ingredient ON topping_id = ingredient_id;";
+
+	/* This table's value of ingredient.ingredient_kind. */
+	static final String kind = "topping";
+
+	private static final String query_all_str =
+		"SELECT ingredient.ingredient_id," +
+		"       ingredient_name," +
+		"       size_id," +
+		"       ingredient_cost" +
+		"    FROM ingredient LEFT JOIN ingredient_cost" +
+		"                        ON ingredient_cost.ingredient_id = ingredient.ingredient_id" +
+		"    WHERE ingredient_kind = '" + kind + "'" +
+		"    ORDER BY ingredient.ingredient_id;";
+
+	private DatabaseConnection db;
+
+	public ToppingTable(DatabaseConnection db)
+	{
+		this.db = db;
+	}
+
+	/*
+	 * Part of SchemaManager's first step. The second folds this table into
+	 * ingredient.
+	 */
+	static void create(Connection conn)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(table_schema);
+		stmt.execute(view_schema);
+		stmt.close();
+	}
+
+	public void insert(Topping topping)
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		db.getIngredientTable().insert(topping, kind);
+	}
+
+	public ArrayList<Topping> queryAll()
+		throws SQLException,
+		       SQLTimeoutException
+	{
+		PreparedStatement query_all_stmt = db.prepare(query_all_str);
+
+		ArrayList<Topping> list = new ArrayList<Topping>();
+
+		ResultSet rset = query_all_stmt.executeQuery();
+		Topping topping = null;
+
+		while (rset.next()) {
+			if (topping == null || topping.getID() != rset.getInt(1)) {
+				topping = new Topping(rset);
+				list.add(topping);
+			}
+
+			IngredientTable.readCost(db, topping, rset);
+		}
+
+		rset.close();
+
+		return list;
+	}
+}
@@ -0,0 +1,191 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Passwords are stored as PBKDF2 hashes, whatever they look like, and
+ * only replaced when one is set. Failed logins are counted per email;
+ * the surefire configuration keeps the hashes cheap.
+ */
+public class LoginTest
+{
+	private static final String hash_like =
+		"pbkdf2-sha256$1000$AAAAAAAAAAAAAAAAAAAAAA$AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+
+	@TempDir
+	File dir;
+
+	private Database db;
+
+	@BeforeEach
+	public void open()
+	{
+		db = new Database(new File(dir, "login.db").getPath());
+		db.open();
+	}
+
+	@AfterEach
+	public void close()
+	{
+		db.close();
+	}
+
+	@Test
+	public void passwordIsHashedOnInsert()
+		throws SQLException,
+		       InvalidLoginException
+	{
+		Customer customer = customer("bob@x.com", "secret");
+
+		db.insertCustomer(customer);
+
+		String stored = storedPassword("bob@x.com");
+
+		assertTrue(stored.startsWith("pbkdf2-sha256$1000$"));
+		assertEquals(customer.getID(), db.loginCustomer("bob@x.com", "secret").getID());
+		assertFalse(canLogin("bob@x.com", stored));
+	}
+
+	@Test
+	public void hashLikePasswordIsHashedToo()
+		throws SQLException
+	{
+		db.insertCustomer(customer("bob@x.com", hash_like));
+
+		assertNotEquals(hash_like, storedPassword("bob@x.com"));
+		assertTrue(canLogin("bob@x.com", hash_like));
+	}
+
+	@Test
+	public void updateKeepsPasswordUnlessSet()
+		throws SQLException,
+		       InvalidLoginException
+	{
+		db.insertCustomer(customer("bob@x.com", "secret"));
+
+		Customer loaded = db.loginCustomer("bob@x.com", "secret");
+		String stored = storedPassword("bob@x.com");
+
+		assertNull(loaded.getPassword());
+
+		loaded.setName("Robert");
+		db.updateCustomer(loaded);
+
+		assertEquals(stored, storedPassword("bob@x.com"));
+		assertTrue(canLogin("bob@x.com", "secret"));
+
+		loaded.setPassword("changed");
+		db.updateCustomer(loaded);
+
+		assertFalse(canLogin("bob@x.com", "secret"));
+		assertTrue(canLogin("bob@x.com", "changed"));
+	}
+
+	@Test
+	public void plainPasswordIsUpgraded()
+		throws SQLException
+	{
+		db.insertCustomer(customer("bob@x.com", "secret"));
+		execute("UPDATE customer SET customer_password = 'secret';");
+
+		assertTrue(canLogin("bob@x.com", "secret"));
+		assertTrue(storedPassword("bob@x.com").startsWith("pbkdf2-sha256$1000$"));
+		assertTrue(canLogin("bob@x.com", "secret"));
+	}
+
+	/* pizzashop.auth.failure_limit is left at its default of 5. */
+	@Test
+	public void failuresLockOnlyThatEmail()
+	{
+		Customer bob = customer("bob@x.com", "secret");
+
+		db.insertCustomer(bob);
+		db.insertCustomer(customer("amy@x.com", "secret"));
+
+		for (int i = 0; i < 5; i++) {
+			assertFalse(canLogin("bob@x.com", "guess" + i));
+		}
+
+		assertFalse(canLogin("bob@x.com", "secret"));
+		assertTrue(canLogin("amy@x.com", "secret"));
+
+		bob.setPassword(null);
+		db.updateCustomer(bob);
+
+		assertTrue(canLogin("bob@x.com", "secret"));
+	}
+
+	@Test
+	public void newCustomerNeedsPassword()
+		throws SQLException
+	{
+		Customer customer = customer("bob@x.com", null);
+
+		db.insertCustomer(customer);
+
+		assertEquals(0, customer.getID());
+		assertEquals(0, queryLong("SELECT count(*) FROM customer;"));
+	}
+
+	private boolean canLogin(String email, String password)
+	{
+		try {
+			db.loginCustomer(email, password);
+			return true;
+
+		} catch (InvalidLoginException e) {
+			return false;
+		}
+	}
+
+	private static Customer customer(String email, String password)
+	{
+		Address address = new Address(0, "1 Main", null, "Town", "GA", "30000");
+		Card card = new Card(0, "1234-5678-1234-5678", "Bob", Card.Type.CREDIT, "12/30", address);
+
+		return new Customer(0, "Bob", email, password, "(555) 555 - 5555", null, address, card);
+	}
+
+	private String storedPassword(String email)
+		throws SQLException
+	{
+		Statement stmt = db.getConnection().createStatement();
+		ResultSet rset = stmt.executeQuery("SELECT customer_password FROM customer WHERE customer_email = '" + email + "';");
+		String value = rset.getString(1);
+
+		stmt.close();
+
+		return value;
+	}
+
+	private void execute(String str)
+		throws SQLException
+	{
+		Statement stmt = db.getConnection().createStatement();
+		stmt.execute(str);
+		stmt.close();
+	}
+
+	private long queryLong(String str)
+		throws SQLException
+	{
+		Statement stmt = db.getConnection().createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		long value = rset.getLong(1);
+
+		stmt.close();
+
+		return value;
+	}
+}
@@ -0,0 +1,240 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * importOrders matches incoming rows by natural key, against what is in
+ * the file and what it has written itself, including rows others wrote
+ * between its batches. The surefire configuration sets import_batch to 2.
+ */
+public class OrderImporterTest
+{
+	@TempDir
+	File dir;
+
+	private Database db;
+
+	@BeforeEach
+	public void open()
+	{
+		db = new Database(new File(dir, "import.db").getPath());
+		db.open();
+
+		db.insertCrust(new Crust(0, "thin", 110, 220, 330));
+		db.insertSauce(new Sauce(0, "red", 1, 2, 3));
+		db.insertCheese(new Cheese(0, "mozz", 5, 6, 7));
+		db.insertTopping(new Topping(0, "pep", 100, 100, 100));
+	}
+
+	@AfterEach
+	public void close()
+	{
+		db.close();
+	}
+
+	@Test
+	public void matchesRowsByNaturalKey()
+		throws SQLException,
+		       InvalidLoginException
+	{
+		Order existing = order("bob@x.com", pizza(db));
+
+		db.insertOrder(existing);
+
+		ImportReport report = db.importOrders(imported("x", "bob@x.com", "amy@x.com", "bob@x.com", "amy@x.com", "bob@x.com").iterator());
+
+		assertTrue(report.isComplete());
+		assertEquals(5, report.getOrders());
+		assertEquals(6, queryLong("SELECT count(*) FROM orders;"));
+		assertEquals(2, queryLong("SELECT count(*) FROM customer;"));
+		assertEquals(1, queryLong("SELECT count(*) FROM address;"));
+		assertEquals(1, queryLong("SELECT count(*) FROM card;"));
+		assertEquals(1, queryLong("SELECT count(*) FROM pizza;"));
+		assertEquals(0, queryLong("SELECT count(*) FROM pragma_foreign_key_check;"));
+		assertEquals(4, db.lookupOrdersByCustomer(existing.getCustomer()).size());
+
+		assertTrue(queryString("SELECT customer_password FROM customer WHERE customer_email = 'amy@x.com';")
+		           .startsWith("pbkdf2-sha256$"));
+		assertEquals("Amy", db.loginCustomer("amy@x.com", "pw").getName());
+	}
+
+	/* Amy and pizza x are inserted through the same Database while the import waits between batches. */
+	@Test
+	public void seesRowsWrittenBetweenBatches()
+		throws SQLException
+	{
+		ImportReport report = db.importOrders(between(db));
+
+		assertTrue(report.isComplete());
+		assertWrittenOnce();
+	}
+
+	/* The same, written through another connection to the file. */
+	@Test
+	public void seesRowsWrittenByOthersBetweenBatches()
+		throws SQLException
+	{
+		Database other = new Database(new File(dir, "import.db").getPath());
+		other.open();
+
+		ImportReport report = db.importOrders(between(other));
+
+		other.close();
+
+		assertTrue(report.isComplete());
+		assertWrittenOnce();
+	}
+
+	@Test
+	public void failedBatchWritesNothing()
+		throws SQLException
+	{
+		Order order = order("amy@x.com", foreignPizza("x"));
+
+		order.getLines().get(0).getPizza().setCrust(new Crust(0, "nope", 1, 2, 3));
+
+		ImportReport report = db.importOrders(Arrays.asList(order).iterator());
+
+		assertFalse(report.isComplete());
+		assertEquals(0, report.getOrders());
+		assertEquals(0, queryLong("SELECT count(*) FROM orders;"));
+		assertEquals(0, queryLong("SELECT count(*) FROM customer;"));
+	}
+
+	private void assertWrittenOnce()
+		throws SQLException
+	{
+		assertEquals(6, queryLong("SELECT count(*) FROM orders;"));
+		assertEquals(2, queryLong("SELECT count(*) FROM customer;"));
+		assertEquals(1, queryLong("SELECT count(*) FROM customer WHERE customer_email = 'amy@x.com';"));
+		assertEquals(2, queryLong("SELECT count(*) FROM pizza;"));
+		assertEquals(4, queryLong("SELECT count(*) FROM orders WHERE order_customer =" +
+		                          "    (SELECT customer_id FROM customer WHERE customer_email = 'amy@x.com');"));
+	}
+
+	/*
+	 * A first batch of Bob's orders for pizza y, then Amy's for pizza x.
+	 * Once the first batch is committed, target inserts Amy and pizza x
+	 * itself; the first hasNext after a full batch comes after its commit.
+	 */
+	private static Iterator<Order> between(final Database target)
+	{
+		final ArrayList<Order> list = imported("y", "bob@x.com", "bob@x.com");
+
+		list.addAll(imported("x", "amy@x.com", "amy@x.com", "amy@x.com", "amy@x.com"));
+
+		final Iterator<Order> orders = list.iterator();
+
+		return new Iterator<Order>() {
+			int count;
+			boolean written;
+
+			public boolean hasNext()
+			{
+				if (count == 2 && !written) {
+					written = true;
+
+					target.insertCustomer(order("amy@x.com", null).getCustomer());
+					target.insertPizza(pizza(target));
+				}
+
+				return orders.hasNext();
+			}
+
+			public Order next()
+			{
+				count++;
+
+				return orders.next();
+			}
+		};
+	}
+
+	/* An order of pizza_name for each email, from objects with IDs that mean nothing here. */
+	private static ArrayList<Order> imported(String pizza_name, String... emails)
+	{
+		ArrayList<Order> orders = new ArrayList<Order>();
+
+		for (String email: emails) {
+			Order order = order(email, foreignPizza(pizza_name));
+
+			order.getAddress().setID(7);
+			order.getCard().setID(7);
+			order.getCustomer().setID(7);
+			orders.add(order);
+		}
+
+		return orders;
+	}
+
+	private static Order order(String email, Pizza pizza)
+	{
+		Address address = new Address(0, "1 Main", null, "Town", "GA", "30000");
+		Card card = new Card(0, "1234-5678-1234-5678", "Bob", Card.Type.CREDIT, "12/30", address);
+		String name = email.startsWith("amy") ? "Amy" : "Bob";
+		Customer customer = new Customer(0, name, email, "pw", "(555) 555 - 5555", null, address, card);
+
+		Order order = new Order(0, customer, address, card, new Date(), new ArrayList<OrderLine>());
+
+		order.getLines().add(new OrderLine(pizza, Pizza.Size.SMALL, 1, 0));
+
+		return order;
+	}
+
+	/* The pizza every order here is for, made from target's own ingredients. */
+	private static Pizza pizza(Database target)
+	{
+		return new Pizza(0, "x",
+		                 target.lookupAllCrusts().get(0),
+		                 target.lookupAllSauces().get(0),
+		                 target.lookupAllCheeses(),
+		                 target.lookupAllToppings());
+	}
+
+	/* The same recipe from another store, matched to the ingredients here by name. */
+	private static Pizza foreignPizza(String name)
+	{
+		return new Pizza(0, name,
+		                 new Crust(99, "thin", 0, 0, 0),
+		                 new Sauce(98, "red", 0, 0, 0),
+		                 Arrays.asList(new Cheese(97, "mozz", 0, 0, 0)),
+		                 Arrays.asList(new Topping(96, "pep", 0, 0, 0)));
+	}
+
+	private long queryLong(String str)
+		throws SQLException
+	{
+		Statement stmt = db.getConnection().createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		long value = rset.getLong(1);
+
+		stmt.close();
+
+		return value;
+	}
+
+	private String queryString(String str)
+		throws SQLException
+	{
+		Statement stmt = db.getConnection().createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		String value = rset.getString(1);
+
+		stmt.close();
+
+		return value;
+	}
+}
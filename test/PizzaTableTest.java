@@ -0,0 +1,132 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Pizzas with the same name and recipe are stored once, whatever order
+ * their cheeses and toppings come in, and an order's lines for the same
+ * pizza and size become one row.
+ */
+public class PizzaTableTest
+{
+	@TempDir
+	File dir;
+
+	private Database db;
+
+	private Crust crust = new Crust(0, "thin", 110, 220, 330);
+	private Sauce sauce = new Sauce(0, "red", 1, 2, 3);
+	private Cheese mozz = new Cheese(0, "mozz", 5, 6, 7);
+	private Cheese ched = new Cheese(0, "ched", 5, 6, 7);
+	private Topping pep = new Topping(0, "pep", 100, 100, 100);
+
+	@BeforeEach
+	public void open()
+	{
+		db = new Database(new File(dir, "pizza.db").getPath());
+		db.open();
+
+		db.insertCrust(crust);
+		db.insertSauce(sauce);
+		db.insertCheese(mozz);
+		db.insertCheese(ched);
+		db.insertTopping(pep);
+	}
+
+	@AfterEach
+	public void close()
+	{
+		db.close();
+	}
+
+	@Test
+	public void sameRecipeIsReused()
+		throws SQLException
+	{
+		Pizza first = new Pizza(0, "x", crust, sauce, Arrays.asList(mozz, ched), Arrays.asList(pep));
+		Pizza second = new Pizza(0, "x", crust, sauce, Arrays.asList(ched, mozz), Arrays.asList(pep));
+
+		db.insertPizza(first);
+		db.insertPizza(second);
+
+		assertNotEquals(0, first.getID());
+		assertEquals(first.getID(), second.getID());
+		assertEquals(1, queryLong(db.getConnection(), "SELECT count(*) FROM pizza;"));
+		assertEquals(1, db.lookupAllPizzas().size());
+	}
+
+	@Test
+	public void differentNameOrRecipeIsKept()
+		throws SQLException
+	{
+		Pizza pizza = new Pizza(0, "x", crust, sauce, Arrays.asList(mozz), Arrays.asList(pep));
+		Pizza renamed = new Pizza(0, "y", crust, sauce, Arrays.asList(mozz), Arrays.asList(pep));
+		Pizza plain = new Pizza(0, "x", crust, sauce, Arrays.asList(mozz), new ArrayList<Topping>());
+
+		db.insertPizza(pizza);
+		db.insertPizza(renamed);
+		db.insertPizza(plain);
+
+		assertNotEquals(pizza.getID(), renamed.getID());
+		assertNotEquals(pizza.getID(), plain.getID());
+		assertEquals(3, queryLong(db.getConnection(), "SELECT count(*) FROM pizza;"));
+	}
+
+	@Test
+	public void equalLinesAreMerged()
+		throws SQLException
+	{
+		Address address = new Address(0, "1 Main", null, "Town", "GA", "30000");
+		Card card = new Card(0, "1234-5678-1234-5678", "Bob", Card.Type.CREDIT, "12/30", address);
+		Customer customer = new Customer(0, "Bob", "bob@x.com", "pw", "(555) 555 - 5555", null, address, card);
+		Order order = new Order(0, customer, address, card, new Date(), new ArrayList<OrderLine>());
+
+		order.getLines().add(new OrderLine(custom(), Pizza.Size.SMALL, 1, 0));
+		order.getLines().add(new OrderLine(custom(), Pizza.Size.SMALL, 2, 0));
+		order.getLines().add(new OrderLine(custom(), Pizza.Size.LARGE, 1, 0));
+
+		db.insertOrder(order);
+
+		Connection conn = db.getConnection();
+
+		assertEquals(1, queryLong(conn, "SELECT count(*) FROM pizza;"));
+		assertEquals(2, queryLong(conn, "SELECT count(*) FROM order_line;"));
+		assertEquals(3, queryLong(conn, "SELECT pizza_qty FROM order_line WHERE pizza_size = 0;"));
+
+		ArrayList<Order> orders = db.lookupOrdersByCustomer(customer);
+
+		assertEquals(1, orders.size());
+		assertEquals(2, orders.get(0).getLines().size());
+		assertEquals(order.getTotalCost(), orders.get(0).getTotalCost());
+	}
+
+	/* A new object every time, as a customer building their own pizza would make. */
+	private Pizza custom()
+	{
+		return new Pizza(0, null, crust, sauce, Arrays.asList(mozz), Arrays.asList(pep));
+	}
+
+	private static long queryLong(Connection conn, String str)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		long value = rset.getLong(1);
+
+		stmt.close();
+
+		return value;
+	}
+}
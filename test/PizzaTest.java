@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * A pizza memoizes its costs and ingredient set, and must rebuild them
+ * whenever one of its own ingredients changes, however it was changed.
+ */
+public class PizzaTest
+{
+	@TempDir
+	File dir;
+
+	@Test
+	public void costFollowsIngredientEdits()
+	{
+		Crust crust = new Crust(1, "thin", 110, 220, 330);
+		Pizza pizza = pizza(crust, new Topping(4, "pep", 100, 100, 100));
+
+		assertEquals(216, pizza.getCost(Pizza.Size.SMALL));
+
+		crust.setSmallCost(5000);
+
+		assertEquals(5106, pizza.getCost(Pizza.Size.SMALL));
+		assertEquals(328, pizza.getCost(Pizza.Size.MEDIUM));
+	}
+
+	@Test
+	public void toppingSwapRebuildsCostAndIngredientSet()
+	{
+		Topping pep = new Topping(4, "pep", 100, 100, 100);
+		Topping ham = new Topping(5, "ham", 1000, 1000, 1000);
+		Pizza pizza = pizza(new Crust(1, "thin", 110, 220, 330), pep);
+
+		assertEquals(216, pizza.getCost(Pizza.Size.SMALL));
+		assertTrue(pizza.hasIngredient(pep));
+		assertFalse(pizza.hasIngredient(ham));
+
+		pizza.setToppings(Arrays.asList(ham));
+
+		assertEquals(1116, pizza.getCost(Pizza.Size.SMALL));
+		assertFalse(pizza.hasIngredient(pep));
+		assertTrue(pizza.hasIngredient(ham));
+
+		ham.setID(6);
+
+		assertFalse(pizza.hasIngredient(new Topping(5, "ham", 0, 0, 0)));
+		assertTrue(pizza.getIngredientSet().get(6));
+	}
+
+	/* Edits to ingredients the pizza does not hold leave it alone. */
+	@Test
+	public void otherIngredientsDoNotChangeCost()
+	{
+		Crust crust = new Crust(1, "thin", 110, 220, 330);
+		Crust other = new Crust(7, "deep", 110, 220, 330);
+		Pizza pizza = pizza(crust, new Topping(4, "pep", 100, 100, 100));
+
+		assertEquals(216, pizza.getCost(Pizza.Size.SMALL));
+
+		other.setSmallCost(9000);
+		other.setID(8);
+
+		assertEquals(216, pizza.getCost(Pizza.Size.SMALL));
+	}
+
+	/*
+	 * Menu pizzas are built from the frozen catalog entries. An update
+	 * goes through a copy, and the next menu read prices with it.
+	 */
+	@Test
+	public void menuFollowsUpdateIngredient()
+	{
+		Database db = new Database(new File(dir, "menu.db").getPath());
+		db.open();
+
+		Crust crust = new Crust(0, "thin", 110, 220, 330);
+		Sauce sauce = new Sauce(0, "red", 1, 2, 3);
+		Cheese mozz = new Cheese(0, "mozz", 5, 6, 7);
+		Topping pep = new Topping(0, "pep", 100, 100, 100);
+
+		db.insertCrust(crust);
+		db.insertSauce(sauce);
+		db.insertCheese(mozz);
+		db.insertTopping(pep);
+		db.insertPizza(new Pizza(0, "x", crust, sauce, Arrays.asList(mozz), Arrays.asList(pep)));
+
+		Pizza before = db.lookupAllPizzas().get(0);
+
+		assertEquals(216, before.getCost(Pizza.Size.SMALL));
+		assertTrue(before.getCrust().isFrozen());
+
+		try {
+			before.getCrust().setSmallCost(5000);
+			fail("Catalog entries should be read-only.");
+
+		} catch (UnsupportedOperationException e) {
+			/* Expected. */
+		}
+
+		Crust copy = db.lookupAllCrusts().get(0);
+
+		copy.setSmallCost(5000);
+		db.updateIngredient(copy);
+
+		assertEquals(5106, db.lookupAllPizzas().get(0).getCost(Pizza.Size.SMALL));
+		assertEquals(216, before.getCost(Pizza.Size.SMALL));
+
+		db.close();
+	}
+
+	private static Pizza pizza(Crust crust, Topping topping)
+	{
+		ArrayList<Cheese> cheeses = new ArrayList<Cheese>();
+		ArrayList<Topping> toppings = new ArrayList<Topping>();
+
+		cheeses.add(new Cheese(3, "mozz", 5, 6, 7));
+		toppings.add(topping);
+
+		return new Pizza(0, "x", crust, new Sauce(2, "red", 1, 2, 3), cheeses, toppings);
+	}
+}
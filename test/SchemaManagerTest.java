@@ -0,0 +1,334 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Upgrades files laid out as the first release wrote them, with
+ * user_version 0, REAL costs, the ingredient type tables and their views,
+ * and sizes stored by name.
+ */
+public class SchemaManagerTest
+{
+	private static final String[] baseline_strs = {
+		"CREATE TABLE ingredient (ingredient_id          INTEGER PRIMARY KEY," +
+		"                         ingredient_name        TEXT    UNIQUE NOT NULL," +
+		"                         ingredient_small_cost  REAL           NOT NULL," +
+		"                         ingredient_medium_cost REAL           NOT NULL," +
+		"                         ingredient_large_cost  REAL           NOT NULL," +
+		"                         CONSTRAINT ingredient_check_cost" +
+		"                             CHECK (ingredient_small_cost <= ingredient_medium_cost" +
+		"                             AND    ingredient_medium_cost <= ingredient_large_cost));",
+		"CREATE TABLE crust (crust_id INTEGER PRIMARY KEY REFERENCES ingredient(ingredient_id));",
+		"CREATE VIEW crust_view (crust_id, crust_name, crust_small_cost, crust_medium_cost, crust_large_cost)" +
+		"    AS SELECT crust_id, ingredient_name, ingredient_small_cost, ingredient_medium_cost, ingredient_large_cost" +
+		"           FROM crust LEFT JOIN ingredient ON crust_id = ingredient_id;",
+		"CREATE TABLE sauce (sauce_id INTEGER PRIMARY KEY REFERENCES ingredient(ingredient_id));",
+		"CREATE VIEW sauce_view (sauce_id, sauce_name, sauce_small_cost, sauce_medium_cost, sauce_large_cost)" +
+		"    AS SELECT sauce_id, ingredient_name, ingredient_small_cost, ingredient_medium_cost, ingredient_large_cost" +
+		"           FROM sauce LEFT JOIN ingredient ON sauce_id = ingredient_id;",
+		"CREATE TABLE cheese (cheese_id INTEGER PRIMARY KEY REFERENCES ingredient(ingredient_id));",
+		"CREATE VIEW cheese_view (cheese_id, cheese_name, cheese_small_cost, cheese_medium_cost, cheese_large_cost)" +
+		"    AS SELECT cheese_id, ingredient_name, ingredient_small_cost, ingredient_medium_cost, ingredient_large_cost" +
+		"           FROM cheese LEFT JOIN ingredient ON cheese_id = ingredient_id;",
+		"CREATE TABLE topping (topping_id INTEGER PRIMARY KEY REFERENCES ingredient(ingredient_id));",
+		"CREATE VIEW topping_view (topping_id, topping_name, topping_small_cost, topping_medium_cost, topping_large_cost)" +
+		"    AS SELECT topping_id, ingredient_name, ingredient_small_cost, ingredient_medium_cost, ingredient_large_cost" +
+		"           FROM topping LEFT JOIN ingredient ON topping_id = ingredient_id;",
+		"CREATE TABLE pizza (pizza_id    INTEGER PRIMARY KEY," +
+		"                    pizza_name  TEXT," +
+		"                    pizza_crust INTEGER NOT NULL REFERENCES crust(crust_id)," +
+		"                    pizza_sauce INTEGER NOT NULL REFERENCES sauce(sauce_id));",
+		"CREATE TABLE pizza_cheese (pizza_id  INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"                           cheese_id INTEGER NOT NULL REFERENCES cheese(cheese_id)," +
+		"                           PRIMARY KEY (pizza_id, cheese_id));",
+		"CREATE TABLE pizza_topping (pizza_id   INTEGER NOT NULL REFERENCES pizza(pizza_id)," +
+		"                            topping_id INTEGER NOT NULL REFERENCES topping(topping_id)," +
+		"                            PRIMARY KEY (pizza_id, topping_id));",
+		"CREATE TRIGGER pizza_update_deletes AFTER UPDATE OF pizza_name, pizza_crust, pizza_sauce ON pizza" +
+		"    BEGIN" +
+		"        DELETE FROM pizza_cheese WHERE pizza_cheese.pizza_id = OLD.pizza_id;" +
+		"        DELETE FROM pizza_topping WHERE pizza_topping.pizza_id = OLD.pizza_id;" +
+		"    END;",
+		"CREATE TABLE address (address_id    INTEGER PRIMARY KEY," +
+		"                      address_line1 TEXT NOT NULL," +
+		"                      address_line2 TEXT," +
+		"                      address_city  TEXT NOT NULL," +
+		"                      address_state TEXT NOT NULL CHECK (address_state LIKE '__')," +
+		"                      address_zip   TEXT NOT NULL CHECK (address_zip LIKE '_____'));",
+		"CREATE TABLE card (card_id              INTEGER PRIMARY KEY," +
+		"                   card_number          TEXT    NOT NULL CHECK (card_number LIKE '____-____-____-____')," +
+		"                   card_name            TEXT    NOT NULL," +
+		"                   card_type            TEXT    NOT NULL CHECK (card_type IN ('debit', 'credit'))," +
+		"                   card_expiration_date TEXT    NOT NULL CHECK (card_expiration_date LIKE '__/__')," +
+		"                   card_address         INTEGER NOT NULL REFERENCES address(address_id));",
+		"CREATE TABLE customer (customer_id       INTEGER PRIMARY KEY," +
+		"                       customer_name     TEXT           NOT NULL," +
+		"                       customer_email    TEXT    UNIQUE NOT NULL CHECK (customer_email LIKE '%@%.%')," +
+		"                       customer_password TEXT           NOT NULL," +
+		"                       customer_phone    TEXT           NOT NULL CHECK (customer_phone LIKE '(___) ___ - ____')," +
+		"                       customer_notes    TEXT," +
+		"                       customer_address  INTEGER        NOT NULL REFERENCES address(address_id)," +
+		"                       customer_card     INTEGER                 REFERENCES card(card_id));",
+		"CREATE TABLE orders (order_id       INTEGER PRIMARY KEY," +
+		"                     order_customer INTEGER NOT NULL REFERENCES customer(customer_id)," +
+		"                     order_address  INTEGER NOT NULL REFERENCES address(address_id)," +
+		"                     order_card     INTEGER NOT NULL REFERENCES card(card_id)," +
+		"                     order_datetime TEXT    NOT NULL CHECK (order_datetime LIKE '____-__-__T__:__:__%'));",
+		"CREATE TABLE order_line (order_id   INTEGER NOT NULL," +
+		"                         pizza_id   INTEGER NOT NULL," +
+		"                         pizza_size TEXT    NOT NULL CHECK (pizza_size IN ('small', 'medium', 'large'))," +
+		"                         pizza_qty  INTEGER NOT NULL," +
+		"                         pizza_cost REAL    NOT NULL," +
+		"                         PRIMARY KEY (order_id, pizza_id, pizza_size));",
+
+		"INSERT INTO ingredient VALUES (1, 'thin', 1.1, 2.2, 3.3), (2, 'red', 0.5, 0.75, 1.0), (3, 'mozz', 0.29, 0.57, 1.15);",
+		"INSERT INTO crust VALUES (1);",
+		"INSERT INTO sauce VALUES (2);",
+		"INSERT INTO cheese VALUES (3);",
+		"INSERT INTO pizza VALUES (1, 'x', 1, 2);",
+		"INSERT INTO pizza_cheese VALUES (1, 3);",
+		"INSERT INTO address VALUES (1, '1 Main', NULL, 'Town', 'GA', '30000');",
+		"INSERT INTO card VALUES (1, '1234-5678-1234-5678', 'Bob', 'credit', '12/30', 1);",
+		"INSERT INTO customer VALUES (1, 'Bob', 'bob@x.com', 'pw', '(555) 555 - 5555', NULL, 1, 1);",
+		"INSERT INTO orders VALUES (1, 1, 1, 1, '2024-05-01T12:00:00Z');",
+		"INSERT INTO order_line VALUES (1, 1, 'large', 2, 5.45);"
+	};
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void upgradesBaselineFile()
+		throws SQLException
+	{
+		Connection conn = baseline("baseline.db");
+
+		execute(conn, "PRAGMA user_version = 1;");
+
+		SchemaManager.upgrade(conn);
+
+		assertEquals(SchemaManager.version << 1 | 1, queryLong(conn, "PRAGMA user_version;"));
+		assertTrue(SchemaManager.isInitted(conn));
+		assertUpgraded(conn);
+
+		conn.close();
+	}
+
+	/*
+	 * Step 3 renames order_line aside as order_line_named, after it has
+	 * already created and filled size and ingredient_cost. A table in the
+	 * way makes it fail there, part way through.
+	 */
+	@Test
+	public void failedStepIsRolledBackAndReplayed()
+		throws SQLException
+	{
+		Connection conn = baseline("interrupted.db");
+
+		execute(conn, "CREATE TABLE order_line_named (order_id INTEGER);");
+
+		try {
+			SchemaManager.upgrade(conn);
+			fail("The upgrade should have failed at step 3.");
+
+		} catch (SQLException e) {
+			/* Expected. */
+		}
+
+		assertEquals(2 << 1, queryLong(conn, "PRAGMA user_version;"));
+		assertNull(Database.columnType(conn, "size", "size_id"));
+		assertNull(Database.columnType(conn, "ingredient_cost", "ingredient_cost"));
+		assertNotNull(Database.columnType(conn, "ingredient", "ingredient_small_cost"));
+		assertEquals("TEXT", Database.columnType(conn, "order_line", "pizza_size"));
+
+		execute(conn, "DROP TABLE order_line_named;");
+
+		SchemaManager.upgrade(conn);
+
+		assertEquals(SchemaManager.version << 1, queryLong(conn, "PRAGMA user_version;"));
+		assertUpgraded(conn);
+
+		conn.close();
+	}
+
+	/*
+	 * Cuts the connection right after each commit of an upgrade in turn,
+	 * as if the process died there, then upgrades again from a new
+	 * connection. Whichever step was cut short must either be recorded
+	 * as done or run again in full.
+	 */
+	@Test
+	public void resumesAfterCrashAtEveryCommit()
+		throws SQLException
+	{
+		for (int commits = 1; ; commits++) {
+			String name = "crash" + commits + ".db";
+			Connection conn = baseline(name);
+			boolean crashed = true;
+
+			try {
+				SchemaManager.upgrade(crashAfter(conn, commits));
+				crashed = false;
+
+			} catch (SQLException e) {
+				/* Expected while the crash comes before the last commit. */
+			}
+
+			conn.close();
+
+			conn = DriverManager.getConnection("jdbc:sqlite:" + new File(dir, name).getPath());
+
+			SchemaManager.upgrade(conn);
+
+			assertEquals(SchemaManager.version << 1, queryLong(conn, "PRAGMA user_version;"));
+			assertUpgraded(conn);
+
+			conn.close();
+
+			if (!crashed) {
+				break;
+			}
+		}
+	}
+
+	@Test
+	public void opensAfterFailedStep()
+		throws SQLException
+	{
+		Connection conn = baseline("reopened.db");
+
+		execute(conn, "CREATE TABLE order_line_named (order_id INTEGER);");
+
+		try {
+			SchemaManager.upgrade(conn);
+			fail("The upgrade should have failed at step 3.");
+
+		} catch (SQLException e) {
+			/* Expected. */
+		}
+
+		execute(conn, "DROP TABLE order_line_named;");
+		conn.close();
+
+		Database db = new Database(new File(dir, "reopened.db").getPath());
+		db.open();
+
+		ArrayList<Crust> crusts = db.lookupAllCrusts();
+
+		assertEquals(1, crusts.size());
+		assertEquals("thin", crusts.get(0).getName());
+		assertEquals(110, crusts.get(0).getSmallCost());
+		assertEquals(1, db.lookupAllPizzas().size());
+
+		db.close();
+	}
+
+	private Connection baseline(String name)
+		throws SQLException
+	{
+		Connection conn = DriverManager.getConnection("jdbc:sqlite:" + new File(dir, name).getPath());
+
+		for (String str: baseline_strs) {
+			execute(conn, str);
+		}
+
+		return conn;
+	}
+
+	/*
+	 * A view of conn that closes it right after its commits-th commit, so
+	 * whatever the caller does next fails.
+	 */
+	private static Connection crashAfter(final Connection conn, final int commits)
+	{
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+		                                           new Class<?>[] { Connection.class },
+		                                           new InvocationHandler() {
+			int count;
+
+			public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable
+			{
+				if (conn.isClosed()) {
+					throw new SQLException("Connection lost.");
+				}
+
+				try {
+					Object result = method.invoke(conn, args);
+
+					if (method.getName().equals("commit") && ++count == commits) {
+						conn.close();
+					}
+
+					return result;
+
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+
+	private static void assertUpgraded(Connection conn)
+		throws SQLException
+	{
+		assertNull(Database.columnType(conn, "crust", "crust_id"));
+		assertEquals("crust", queryString(conn, "SELECT ingredient_kind FROM ingredient WHERE ingredient_id = 1;"));
+		assertEquals("cheese", queryString(conn, "SELECT ingredient_kind FROM ingredient WHERE ingredient_id = 3;"));
+		assertEquals(330, queryLong(conn, "SELECT ingredient_cost FROM ingredient_cost WHERE ingredient_id = 1 AND size_id = 2;"));
+		assertEquals(9, queryLong(conn, "SELECT count(*) FROM ingredient_cost;"));
+		assertEquals(3, queryLong(conn, "SELECT count(*) FROM size;"));
+		assertEquals(2, queryLong(conn, "SELECT pizza_size FROM order_line;"));
+		assertEquals(545, queryLong(conn, "SELECT pizza_cost FROM order_line;"));
+		assertEquals(1, queryLong(conn, "SELECT count(*) FROM pizza_cheese WHERE cheese_id = 3;"));
+		assertEquals(0, queryLong(conn, "SELECT count(*) FROM pragma_foreign_key_check;"));
+	}
+
+	private static void execute(Connection conn, String str)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute(str);
+		stmt.close();
+	}
+
+	private static long queryLong(Connection conn, String str)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		long value = rset.getLong(1);
+
+		stmt.close();
+
+		return value;
+	}
+
+	private static String queryString(Connection conn, String str)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		ResultSet rset = stmt.executeQuery(str);
+		String value = rset.getString(1);
+
+		stmt.close();
+
+		return value;
+	}
+}